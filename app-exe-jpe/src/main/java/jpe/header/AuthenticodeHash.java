@@ -0,0 +1,133 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.header;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import jsaf.util.Checksum;
+import jsaf.util.MultiDigest;
+
+/**
+ * Computes the Authenticode digest of a PE file, as its contents are streamed from the beginning. The digest covers the
+ * whole file except for the optional header's checkSum field, the CERTIFICATE_TABLE data directory entry, and the
+ * certificate table itself (whose address is a file offset, not an RVA). Since these are exactly the parts of the file
+ * that change when it is signed, the digest is the same for the signed and unsigned versions of an image, no matter who
+ * signed it.
+ *
+ * The excluded ranges are determined from the already-parsed headers, so the bytes can be fed in a single pass, in
+ * chunks of any size.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class AuthenticodeHash {
+    private MultiDigest digest;
+    private long[] excluded;
+    private long position;
+    private int index;
+
+    /**
+     * Create an AuthenticodeHash for the file whose headers are specified.
+     *
+     * @param digest the digests to compute; typically SHA1 and/or SHA256
+     */
+    public AuthenticodeHash(ImageDOSHeader dosHeader, ImageNTHeaders ntHeader, MultiDigest digest) {
+	this.digest = digest;
+	ImageOptionalHeader optionalHeader = ntHeader.getImageOptionalHeader();
+	long optionalHeaderOffset = ImageNTHeaders.getOptionalHeaderOffset(dosHeader);
+	long checksumOffset = optionalHeaderOffset + ImageOptionalHeader.CHECKSUM_OFFSET;
+	if (optionalHeader.getNumberOfRvaAndSizes() > ImageDataDirectory.CERTIFICATE_TABLE) {
+	    long entryOffset = optionalHeaderOffset + optionalHeader.getDataDirectoryOffset() +
+		ImageDataDirectory.CERTIFICATE_TABLE * ImageDataDirectory.BUFFER_SIZE;
+	    ImageDataDirectory certificates = optionalHeader.dataDirectories[ImageDataDirectory.CERTIFICATE_TABLE];
+	    long certificatesOffset = 0xFFFFFFFFL & certificates.virtualAddress;
+	    long certificatesSize = 0xFFFFFFFFL & certificates.size;
+	    if (certificatesSize > 0 && certificatesOffset >= entryOffset + ImageDataDirectory.BUFFER_SIZE) {
+		excluded = new long[] {checksumOffset, checksumOffset + 4,
+				       entryOffset, entryOffset + ImageDataDirectory.BUFFER_SIZE,
+				       certificatesOffset, certificatesOffset + certificatesSize};
+	    } else {
+		excluded = new long[] {checksumOffset, checksumOffset + 4,
+				       entryOffset, entryOffset + ImageDataDirectory.BUFFER_SIZE};
+	    }
+	} else {
+	    excluded = new long[] {checksumOffset, checksumOffset + 4};
+	}
+    }
+
+    /**
+     * Get the number of bytes of the file that have been fed to the digests so far (including excluded bytes).
+     */
+    public long getPosition() {
+	return position;
+    }
+
+    /**
+     * Feed the next bytes of the file.
+     */
+    public void update(byte[] buff, int offset, int len) {
+	while (len > 0) {
+	    int n = next(len);
+	    if (n > 0) {
+		digest.update(buff, offset, n);
+	    } else {
+		n = -n;
+	    }
+	    position += n;
+	    offset += n;
+	    len -= n;
+	}
+    }
+
+    /**
+     * Feed the remaining contents of the buffer (which may be a direct or memory-mapped buffer), as the next bytes of the
+     * file. The position of the buffer argument is not modified.
+     */
+    public void update(ByteBuffer buff) {
+	ByteBuffer src = buff.duplicate();
+	int limit = src.limit();
+	while (src.hasRemaining()) {
+	    int n = next(src.remaining());
+	    if (n > 0) {
+		src.limit(src.position() + n);
+		digest.update(src);
+		src.limit(limit);
+	    } else {
+		n = -n;
+	    }
+	    src.position(src.position() + n);
+	    position += n;
+	}
+    }
+
+    /**
+     * Complete the digests and reset them, so that another copy of the same file can be hashed.
+     */
+    public Map<Checksum.Algorithm, byte[]> digest() {
+	position = 0;
+	index = 0;
+	return digest.digest();
+    }
+
+    // Private
+
+    /**
+     * Get the length of the run of (at most len) bytes starting at the current position that are either all hashed
+     * (indicated by a positive result), or all excluded (indicated by a negative result).
+     */
+    private int next(int len) {
+	while (index < excluded.length && excluded[index + 1] <= position) {
+	    index += 2;
+	}
+	if (index == excluded.length) {
+	    return len;
+	} else if (position < excluded[index]) {
+	    return (int)Math.min(len, excluded[index] - position);
+	} else {
+	    return -(int)Math.min(len, excluded[index + 1] - position);
+	}
+    }
+}
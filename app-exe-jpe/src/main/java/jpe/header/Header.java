@@ -3,8 +3,15 @@
 
 package jpe.header;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import jpe.intf.tree.INode;
@@ -14,9 +21,13 @@ import jpe.resource.ImageResourceDirectoryEntry;
 import jpe.resource.Types;
 import jpe.resource.version.VarFileInfo;
 import jpe.resource.version.VsVersionInfo;
+import jpe.symbol.SymbolTables;
 import jpe.util.tree.TreeHash;
 import jsaf.intf.io.IFile;
 import jsaf.intf.io.IRandomAccess;
+import jsaf.io.LittleEndian;
+import jsaf.util.Checksum;
+import jsaf.util.MultiDigest;
 
 /**
  * Provides simple access to PE file header information.
@@ -31,7 +42,108 @@ public class Header {
     private VsVersionInfo versionInfo;
     private VarFileInfo varFileInfo;
 
+    /**
+     * Resource directory state, retained so that resource type branches can be decoded on demand in lazy mode. The file
+     * (or buffer) is retained in either mode, so that the symbol tables can be decoded when they are first requested.
+     */
+    private boolean lazy;
+    private IFile file;
+    private ByteBuffer data;
+    private long rba, rva;
+    private HashSet<String> loaded;
+    private Map<Checksum.Algorithm, byte[]> digests, authenticodeDigests;
+    private Integer imageChecksum;
+    private SymbolTables symbols;
+
+    /**
+     * The digests to compute when a Header is created, all in the same pass over the contents of the file. A Digests holds
+     * only the algorithms, so once it is configured, it can be shared by any number of Headers.
+     *
+     * @since 1.1
+     */
+    public static class Digests {
+	private Checksum.Algorithm[] checksums, authenticode;
+	private boolean verify;
+
+	public Digests() {
+	    verify = false;
+	}
+
+	/**
+	 * Compute checksums of the entire file (see getChecksum). Default is none.
+	 */
+	public Digests setChecksums(Checksum.Algorithm... algorithms) {
+	    checksums = algorithms.length == 0 ? null : algorithms;
+	    return this;
+	}
+
+	/**
+	 * Compute Authenticode digests of the file (see getAuthenticodeHash). Default is none.
+	 */
+	public Digests setAuthenticode(Checksum.Algorithm... algorithms) {
+	    authenticode = algorithms.length == 0 ? null : algorithms;
+	    return this;
+	}
+
+	/**
+	 * Compute the image checksum of the file (see isChecksumValid). Default is false.
+	 */
+	public Digests setVerify(boolean verify) {
+	    this.verify = verify;
+	    return this;
+	}
+
+	boolean isEmpty() {
+	    return checksums == null && authenticode == null && !verify;
+	}
+    }
+
     public Header(IFile file) throws IllegalArgumentException, IOException {
+	this(file, false);
+    }
+
+    /**
+     * Parse the headers of a (possibly remote) PE file.
+     *
+     * @param lazy if true, only the offset of the root resource directory is recorded during parsing. A resource type
+     *             branch is decoded the first time getResource or getVersionInfo asks for it, re-opening the file. This
+     *             avoids decoding every icon, dialog and string table when only the version information is of interest.
+     *
+     * @since 1.1
+     */
+    public Header(IFile file, boolean lazy) throws IllegalArgumentException, IOException {
+	this(file, lazy, null);
+    }
+
+    /**
+     * Parse the headers of a (possibly remote) PE file, and compute the specified digests of its contents. The headers are
+     * decoded using an IRandomAccess, and then all the digests are computed in one pass over the contents, which are
+     * streamed through a fixed-size buffer.
+     *
+     * @param digests the digests to compute, or null
+     *
+     * @since 1.1
+     */
+    public Header(IFile file, boolean lazy, Digests digests) throws IllegalArgumentException, IOException {
+	parse(file, lazy);
+	if (digests != null && !digests.isEmpty()) {
+	    InputStream in = file.getInputStream();
+	    try {
+		digest(in, digests);
+	    } finally {
+		try {
+		    in.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+    }
+
+    /**
+     * Parse the headers of a file using an IRandomAccess.
+     */
+    private void parse(IFile file, boolean lazy) throws IllegalArgumentException, IOException {
+	this.lazy = lazy;
 	if (file.isFile()) {
 	    if (file.length() == 0) {
 		throw new IllegalArgumentException("Zero length: " + file.getPath());
@@ -42,17 +154,16 @@ public class Header {
 		dosHeader = new ImageDOSHeader(ra);
 		ra.seek((long)dosHeader.getELFHeaderRVA());
 		ntHeader = new ImageNTHeaders(ra);
-		resources = new TreeHash<Object>("ImageResourceDirs", "/");
-		long rba = ntHeader.getResourceBaseAddress(ImageDataDirectory.RESOURCE_TABLE);
-		if (rba == 0) {
-		    //
-		    // This means that there is no resource section in the PE file
-		    //
-		} else {
-		    ra.seek(rba);
-		    ImageResourceDirectory root = new ImageResourceDirectory(ra);
-		    long rva = ntHeader.getImageDirEntryRVA(ImageDataDirectory.RESOURCE_TABLE);
-		    traverse("", root, ra, rba, rva);
+		initResources();
+		this.file = file;
+		if (!lazy) {
+		    if (rba == 0) {
+			//
+			// This means that there is no resource section in the PE file
+			//
+		    } else {
+			load(null, ra);
+		    }
 		}
 	    } finally {
 		if (ra != null) {
@@ -67,6 +178,166 @@ public class Header {
 	}
     }
 
+    /**
+     * Parse a local file through a read-only memory mapping of its contents. All the header and resource structures
+     * are decoded in place from the mapping, so there is no per-structure I/O.  Use the IFile constructor for files
+     * that are not directly accessible from this JVM.
+     */
+    public Header(File file) throws IllegalArgumentException, IOException {
+	this(map(file), false);
+    }
+
+    /**
+     * Parse a local file through a read-only memory mapping of its contents. The mapping is retained for as long as the
+     * Header is reachable.
+     *
+     * @since 1.1
+     */
+    public Header(File file, boolean lazy) throws IllegalArgumentException, IOException {
+	this(map(file), lazy);
+    }
+
+    /**
+     * Parse a local file through a read-only memory mapping of its contents, and compute the specified digests of its
+     * contents from the same mapping.
+     *
+     * @param digests the digests to compute, or null
+     *
+     * @since 1.1
+     */
+    public Header(File file, boolean lazy, Digests digests) throws IllegalArgumentException, IOException {
+	this(map(file), lazy, digests);
+    }
+
+    /**
+     * Parse a PE file whose entire contents are available in the specified buffer. The buffer index 0 must correspond
+     * to the beginning of the file. The position of the buffer argument is not modified.
+     */
+    public Header(ByteBuffer data) throws IllegalArgumentException, IOException {
+	this(data, false);
+    }
+
+    /**
+     * Parse a PE file whose entire contents are available in the specified buffer. A reference to the buffer is retained
+     * for decoding the symbol tables (and, in lazy mode, resource branches) on demand.
+     *
+     * @since 1.1
+     */
+    public Header(ByteBuffer data, boolean lazy) throws IllegalArgumentException, IOException {
+	this(data, lazy, null);
+    }
+
+    /**
+     * Parse a PE file whose entire contents are available in the specified buffer, and compute the specified digests of
+     * the contents of the buffer (from index 0 to its limit).
+     *
+     * @param digests the digests to compute, or null
+     *
+     * @since 1.1
+     */
+    public Header(ByteBuffer data, boolean lazy, Digests digests) throws IllegalArgumentException, IOException {
+	parse(data, lazy);
+	if (digests != null && !digests.isEmpty()) {
+	    digest(data, digests);
+	}
+    }
+
+    /**
+     * Parse the headers of a file from a buffer.
+     */
+    private void parse(ByteBuffer data, boolean lazy) throws IllegalArgumentException, IOException {
+	this.lazy = lazy;
+	if (data.limit() == 0) {
+	    throw new IllegalArgumentException("Zero length buffer");
+	}
+	ByteBuffer buff = data.duplicate();
+	buff.position(0);
+	dosHeader = new ImageDOSHeader(buff);
+	LittleEndian.seek(buff, (long)dosHeader.getELFHeaderRVA());
+	ntHeader = new ImageNTHeaders(buff);
+	initResources();
+	this.data = data;
+	if (!lazy && rba != 0) {
+	    load(null, buff);
+	}
+    }
+
+    /**
+     * Get a checksum of the entire file, if it was computed when the Header was created.
+     *
+     * @return the checksum, or null if it was not computed
+     *
+     * @since 1.1
+     */
+    public byte[] getDigest(Checksum.Algorithm algorithm) {
+	return digests == null ? null : digests.get(algorithm);
+    }
+
+    /**
+     * Get a checksum of the entire file as a lower-case hex string, if it was computed when the Header was created.
+     *
+     * @return the checksum, or null if it was not computed
+     *
+     * @since 1.1
+     */
+    public String getChecksum(Checksum.Algorithm algorithm) {
+	byte[] digest = getDigest(algorithm);
+	return digest == null ? null : Checksum.toHex(digest);
+    }
+
+    /**
+     * Get the Authenticode digest of the file (i.e., the digest of the image that is signed), if it was computed when the
+     * Header was created. It does not depend on whether, or by whom, the file is signed.
+     *
+     * @return the digest, or null if it was not computed
+     *
+     * @since 1.1
+     */
+    public byte[] getAuthenticodeDigest(Checksum.Algorithm algorithm) {
+	return authenticodeDigests == null ? null : authenticodeDigests.get(algorithm);
+    }
+
+    /**
+     * Get the Authenticode digest of the file as a lower-case hex string, if it was computed when the Header was created.
+     *
+     * @return the digest, or null if it was not computed
+     *
+     * @since 1.1
+     */
+    public String getAuthenticodeHash(Checksum.Algorithm algorithm) {
+	byte[] digest = getAuthenticodeDigest(algorithm);
+	return digest == null ? null : Checksum.toHex(digest);
+    }
+
+    /**
+     * Get the image checksum of the file (i.e., the value that should be stored in the optional header's checkSum
+     * field), if it was computed when the Header was created.
+     *
+     * @return the checksum, or null if it was not computed
+     *
+     * @since 1.1
+     */
+    public Integer getImageChecksum() {
+	return imageChecksum;
+    }
+
+    /**
+     * Determine whether the checkSum field of the optional header matches the image checksum of the file. A mismatch
+     * indicates that the file has been modified or truncated since it was linked.
+     *
+     * @return null if the image checksum was not computed when the Header was created, or if the checkSum field is 0
+     *         (which means that the linker did not set it, as is common for user-mode executables)
+     *
+     * @since 1.1
+     */
+    public Boolean isChecksumValid() {
+	int checksum = ntHeader.getImageOptionalHeader().getChecksum();
+	if (imageChecksum == null || checksum == 0) {
+	    return null;
+	}
+	return imageChecksum.intValue() == checksum ? Boolean.TRUE : Boolean.FALSE;
+    }
+
     public ImageDOSHeader getDOSHeader() {
 	return dosHeader;
     }
@@ -75,24 +346,207 @@ public class Header {
 	return ntHeader;
     }
 
-    public VsVersionInfo getVersionInfo() {
+    /**
+     * In lazy mode, only the RT_VERSION branch of the resource directory is decoded by this call.
+     *
+     * @throws IllegalStateException if the resource directory could not be read in lazy mode
+     */
+    public VsVersionInfo getVersionInfo() throws IllegalStateException {
+	ensureLoaded(Types.NAMES[Types.RT_VERSION]);
 	return versionInfo;
     }
 
-    public Object getResource(String path) throws NoSuchElementException {
+    /**
+     * In lazy mode, only the branch of the resource directory corresponding to the first element of the path (i.e.,
+     * the resource type) is decoded by this call.
+     *
+     * @throws IllegalStateException if the resource directory could not be read in lazy mode
+     */
+    public Object getResource(String path) throws NoSuchElementException, IllegalStateException {
+	int ptr = path.indexOf("/");
+	ensureLoaded(ptr == -1 ? path : path.substring(0, ptr));
 	return resources.getData(path);
     }
 
+    /**
+     * Get the import, delay-import and export tables of the file. They are decoded by the first call, so a Header that is
+     * only used for its resources never decodes them.
+     *
+     * @throws IllegalStateException if the file could not be read
+     *
+     * @since 1.1
+     */
+    public synchronized SymbolTables getSymbolTables() throws IllegalStateException {
+	if (symbols == null) {
+	    if (data == null) {
+		IRandomAccess ra = null;
+		try {
+		    ra = file.getRandomAccess("r");
+		    symbols = new SymbolTables(ntHeader, ra);
+		} catch (IOException e) {
+		    throw new IllegalStateException(e.getMessage(), e);
+		} finally {
+		    if (ra != null) {
+			try {
+			    ra.close();
+			} catch (IOException e) {
+			}
+		    }
+		}
+	    } else {
+		symbols = new SymbolTables(ntHeader, data);
+	    }
+	}
+	return symbols;
+    }
+
+    /**
+     * Returns true if resource branches are decoded on demand.
+     *
+     * @since 1.1
+     */
+    public boolean isLazy() {
+	return lazy;
+    }
+
     public void debugPrint(PrintStream out) {
         dosHeader.debugPrint(out);
         ntHeader.debugPrint(out);
+	ensureLoaded(null);
 	for (INode node : resources.getRoot().getChildren()) {
 	    debugPrint(0, node, out);
 	}
+	getSymbolTables().debugPrint(out);
     }
 
     // Private
 
+    private void initResources() {
+	resources = new TreeHash<Object>("ImageResourceDirs", "/");
+	loaded = new HashSet<String>();
+	rba = ntHeader.getResourceBaseAddress(ImageDataDirectory.RESOURCE_TABLE);
+	rva = ntHeader.getImageDirEntryRVA(ImageDataDirectory.RESOURCE_TABLE);
+    }
+
+    /**
+     * In lazy mode, decode the named resource type branch (or all the branches, if type is null) if that has not already
+     * been done.
+     */
+    private synchronized void ensureLoaded(String type) throws IllegalStateException {
+	if (!lazy || rba == 0 || (type != null && loaded.contains(type))) {
+	    return;
+	}
+	try {
+	    if (data == null) {
+		IRandomAccess ra = null;
+		try {
+		    ra = file.getRandomAccess("r");
+		    load(type, ra);
+		} finally {
+		    if (ra != null) {
+			try {
+			    ra.close();
+			} catch (IOException e) {
+			}
+		    }
+		}
+	    } else {
+		ByteBuffer buff = data.duplicate();
+		buff.position(0);
+		load(type, buff);
+	    }
+	} catch (IOException e) {
+	    throw new IllegalStateException(e.getMessage(), e);
+	}
+    }
+
+    /**
+     * Decode the root resource directory, and traverse the branch for the specified type (or all branches not already
+     * loaded, if type is null). When the type is one of the standard types, entries are matched by their numeric ID so
+     * that the names of the other branches are never read.
+     */
+    private void load(String type, IRandomAccess ra) throws IOException {
+	ra.seek(rba);
+	ImageResourceDirectoryEntry[] entries = new ImageResourceDirectory(ra).getChildEntries();
+	int id = typeId(type);
+	for (int i=0; i < entries.length; i++) {
+	    ImageResourceDirectoryEntry entry = entries[i];
+	    if (id != -1 && entry.getType() != id) {
+		continue;
+	    }
+	    String name = typeName(entry, entry.getName(ra, rba));
+	    if (type != null && !type.equals(name)) {
+		continue;
+	    } else if (loaded.contains(name)) {
+		continue;
+	    } else if (entry.isDir()) {
+		ra.seek(rba + entry.getOffset());
+		traverse(name + "/", new ImageResourceDirectory(ra), ra, rba, rva);
+	    } else {
+		resources.putData(name, entry.getDataEntry(ra, rba, rva));
+	    }
+	    loaded.add(name);
+	}
+	if (type != null) {
+	    loaded.add(type);
+	}
+    }
+
+    /**
+     * Decode the root resource directory from a ByteBuffer. See load(String, IRandomAccess).
+     */
+    private void load(String type, ByteBuffer buff) throws IOException {
+	LittleEndian.seek(buff, rba);
+	ImageResourceDirectoryEntry[] entries = new ImageResourceDirectory(buff).getChildEntries();
+	int id = typeId(type);
+	for (int i=0; i < entries.length; i++) {
+	    ImageResourceDirectoryEntry entry = entries[i];
+	    if (id != -1 && entry.getType() != id) {
+		continue;
+	    }
+	    String name = typeName(entry, entry.getName(buff, rba));
+	    if (type != null && !type.equals(name)) {
+		continue;
+	    } else if (loaded.contains(name)) {
+		continue;
+	    } else if (entry.isDir()) {
+		LittleEndian.seek(buff, rba + entry.getOffset());
+		traverse(name + "/", new ImageResourceDirectory(buff), buff, rba, rva);
+	    } else {
+		resources.putData(name, entry.getDataEntry(buff, rba, rva));
+	    }
+	    loaded.add(name);
+	}
+	if (type != null) {
+	    loaded.add(type);
+	}
+    }
+
+    /**
+     * Get the path name of a root-level (i.e., resource type) directory entry.
+     */
+    private static String typeName(ImageResourceDirectoryEntry entry, String name) {
+	int type = entry.getType();
+	if (entry.isDir() && type >= 0 && type < Types.NAMES.length) {
+	    return Types.NAMES[type];
+	}
+	return name;
+    }
+
+    /**
+     * Get the numeric ID of a standard resource type name, or -1.
+     */
+    private static int typeId(String type) {
+	if (type != null) {
+	    for (int i=0; i < Types.NAMES.length; i++) {
+		if (Types.NAMES[i].equals(type)) {
+		    return i;
+		}
+	    }
+	}
+	return -1;
+    }
+
     private void debugPrint(int level, INode node, PrintStream out) {
 	StringBuffer sb = new StringBuffer();
 	for (int i=0; i < level; i++) {
@@ -127,6 +581,88 @@ public class Header {
 	}
     }
 
+    /**
+     * Compute the requested digests (and image checksum) of the contents of the buffer (from index 0 to its limit).
+     */
+    private void digest(ByteBuffer data, Digests request) {
+	ByteBuffer buff = data.duplicate();
+	buff.position(0);
+	if (request.checksums != null) {
+	    MultiDigest digest = new MultiDigest(request.checksums);
+	    digest.update(buff);
+	    digests = digest.digest();
+	}
+	if (request.authenticode != null) {
+	    AuthenticodeHash hash = new AuthenticodeHash(dosHeader, ntHeader, new MultiDigest(request.authenticode));
+	    hash.update(buff);
+	    authenticodeDigests = hash.digest();
+	}
+	if (request.verify) {
+	    ImageChecksum checksum = new ImageChecksum(dosHeader);
+	    checksum.update(buff);
+	    imageChecksum = Integer.valueOf(checksum.getValue());
+	}
+    }
+
+    /**
+     * Compute the requested digests (and image checksum) of the contents of the stream, in a single pass.
+     */
+    private void digest(InputStream in, Digests request) throws IOException {
+	MultiDigest digest = request.checksums == null ? null : new MultiDigest(request.checksums);
+	AuthenticodeHash hash = null;
+	if (request.authenticode != null) {
+	    hash = new AuthenticodeHash(dosHeader, ntHeader, new MultiDigest(request.authenticode));
+	}
+	ImageChecksum checksum = request.verify ? new ImageChecksum(dosHeader) : null;
+	byte[] buff = new byte[MultiDigest.BUFFER_SIZE];
+	int len = 0;
+	while ((len = in.read(buff)) != -1) {
+	    if (digest != null) {
+		digest.update(buff, 0, len);
+	    }
+	    if (hash != null) {
+		hash.update(buff, 0, len);
+	    }
+	    if (checksum != null) {
+		checksum.update(buff, 0, len);
+	    }
+	}
+	if (digest != null) {
+	    digests = digest.digest();
+	}
+	if (hash != null) {
+	    authenticodeDigests = hash.digest();
+	}
+	if (checksum != null) {
+	    imageChecksum = Integer.valueOf(checksum.getValue());
+	}
+    }
+
+    /**
+     * Map the specified file into memory, read-only.  The channel can be closed immediately; the mapping remains valid
+     * until it is garbage-collected.
+     */
+    private static ByteBuffer map(File file) throws IllegalArgumentException, IOException {
+	if (!file.isFile()) {
+	    throw new IllegalArgumentException("Not a file: " + file.getPath());
+	}
+	long len = file.length();
+	if (len == 0) {
+	    throw new IllegalArgumentException("Zero length: " + file.getPath());
+	} else if (len > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException("Too large to map: " + file.getPath());
+	}
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, len);
+	} finally {
+	    try {
+		raf.close();
+	    } catch (IOException e) {
+	    }
+	}
+    }
+
     /**
      * Recursively load resources.  Currently the only resource type that is fully implemented is VS_VERSIONINFO.
      */
@@ -154,4 +690,32 @@ public class Header {
             }
         }
     }
+
+    /**
+     * Recursively load resources from a ByteBuffer. See traverse(String, ImageResourceDirectory, IRandomAccess, long, long).
+     */
+    private void traverse(String path, ImageResourceDirectory dir, ByteBuffer buff, long rba, long rva) throws IOException {
+	ImageResourceDirectoryEntry[] entries = dir.getChildEntries();
+	for (int i=0; i < entries.length; i++) {
+	    ImageResourceDirectoryEntry entry = entries[i];
+	    String name = entry.getName(buff, rba);
+	    if (entry.isDir()) {
+		int type = entry.getType();
+		if (path.length() == 0 && type >= 0 && type < Types.NAMES.length) {
+		    name = Types.NAMES[type];
+		}
+		LittleEndian.seek(buff, rba + entry.getOffset());
+		traverse(path + name + "/", new ImageResourceDirectory(buff), buff, rba, rva);
+	    } else {
+		ImageResourceDataEntry de = entry.getDataEntry(buff, rba, rva);
+		if (path.startsWith(Types.NAMES[Types.RT_VERSION])) {
+		    LittleEndian.seek(buff, de.getDataAddress());
+		    versionInfo = new VsVersionInfo(buff);
+		    resources.putData(path + name, versionInfo);
+		} else {
+		    resources.putData(path + name, de);
+		}
+	    }
+	}
+    }
 }
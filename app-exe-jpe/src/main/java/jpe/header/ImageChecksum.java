@@ -0,0 +1,110 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.header;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Computes the image checksum of a PE file (i.e., the value that CheckSumMappedFile computes, and that the linker stores
+ * in the optional header's checkSum field), as its contents are streamed from the beginning.
+ *
+ * The checksum is the 16-bit one's complement sum of the little-endian words of the file (with the checkSum field
+ * itself taken to be zero), plus the length of the file. Since the one's complement sum can be folded from a wider sum,
+ * the data is summed eight bytes at a time into a 64-bit accumulator, as two 32-bit words, and folded at the end.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class ImageChecksum {
+    private long checksumOffset;
+    private long position, sum;
+
+    /**
+     * Create an ImageChecksum for the file whose DOS header is specified.
+     */
+    public ImageChecksum(ImageDOSHeader dosHeader) {
+	checksumOffset = ImageNTHeaders.getOptionalHeaderOffset(dosHeader) + ImageOptionalHeader.CHECKSUM_OFFSET;
+    }
+
+    /**
+     * Feed the next bytes of the file.
+     */
+    public void update(byte[] buff, int offset, int len) {
+	update(ByteBuffer.wrap(buff, offset, len));
+    }
+
+    /**
+     * Feed the remaining contents of the buffer (which may be a direct or memory-mapped buffer), as the next bytes of the
+     * file. The position of the buffer argument is not modified.
+     */
+    public void update(ByteBuffer buff) {
+	ByteBuffer src = buff.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	int start = src.position(), end = src.limit();
+	long field = start + checksumOffset - position; // index of the checkSum field in the buffer
+	if (field < end && field + 4 > start) {
+	    int from = (int)Math.max(start, field), to = (int)Math.min(end, field + 4);
+	    add(src, start, from);
+	    position += to - from;
+	    add(src, to, end);
+	} else {
+	    add(src, start, end);
+	}
+	sum = (sum & 0xFFFFFFFFL) + (sum >>> 32);
+    }
+
+    /**
+     * Get the number of bytes of the file that have been fed so far.
+     */
+    public long getPosition() {
+	return position;
+    }
+
+    /**
+     * Get the checksum of all the bytes that have been fed so far.
+     */
+    public int getValue() {
+	long s = sum;
+	while ((s >>> 32) != 0) {
+	    s = (s & 0xFFFFFFFFL) + (s >>> 32);
+	}
+	s = (s & 0xFFFF) + (s >>> 16);
+	s += s >>> 16;
+	return (int)((s & 0xFFFF) + position);
+    }
+
+    /**
+     * Reset the checksum, so that another copy of the same file can be checked.
+     */
+    public void reset() {
+	position = 0;
+	sum = 0;
+    }
+
+    // Private
+
+    /**
+     * Add the bytes of src between the indexes from and to, which lie at the current position in the file. A word that
+     * straddles a call is split into its bytes, which are shifted into their place in the word.
+     */
+    private void add(ByteBuffer src, int from, int to) {
+	long s = sum, p = position;
+	int i = from;
+	while (i < to && (p & 3) != 0) {
+	    s += (long)(src.get(i++) & 0xFF) << ((p++ & 3) << 3);
+	}
+	int stop = i + ((to - i) & ~7);
+	p += stop - i;
+	for (; i < stop; i += 8) {
+	    long v = src.getLong(i);
+	    s += (v & 0xFFFFFFFFL) + (v >>> 32);
+	}
+	while (i < to) {
+	    s += (long)(src.get(i++) & 0xFF) << ((p++ & 3) << 3);
+	}
+	sum = s;
+	position = p;
+    }
+}
@@ -6,6 +6,7 @@ package jpe.header;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 import jsaf.intf.io.IRandomAccess;
 import jsaf.io.LittleEndian;
@@ -41,20 +42,30 @@ public class ImageDOSHeader {
     short[] e_res2;       // Reserved words
     int     e_lfanew;     // File address of new exe header
 
-    private byte[] buff;
+    private ByteBuffer buff;
 
     /**
      * Read the IMAGE_DOS_HEADER from the first 64 bytes of the InputStream.
      */
     public ImageDOSHeader(InputStream in) throws IOException {
-	buff = new byte[BUFFER_SIZE];
-	StreamTool.readFully(in, buff);
+	byte[] bytes = new byte[BUFFER_SIZE];
+	StreamTool.readFully(in, bytes);
+	buff = ByteBuffer.wrap(bytes);
 	loadFromBuffer();
     }
 
     public ImageDOSHeader(IRandomAccess ra) throws IOException {
-	buff = new byte[BUFFER_SIZE];
-	ra.readFully(buff);
+	byte[] bytes = new byte[BUFFER_SIZE];
+	ra.readFully(bytes);
+	buff = ByteBuffer.wrap(bytes);
+	loadFromBuffer();
+    }
+
+    /**
+     * Decode the IMAGE_DOS_HEADER in place from the next 64 bytes of the ByteBuffer, without copying.
+     */
+    public ImageDOSHeader(ByteBuffer data) throws IOException {
+	buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 	loadFromBuffer();
     }
 
@@ -104,8 +115,8 @@ public class ImageDOSHeader {
     // Private
 
     private void loadFromBuffer() {
-	if (buff.length != BUFFER_SIZE) {
-	    throw new IllegalArgumentException("Illegal DOS header buffer size: " + buff.length);
+	if (buff.limit() != BUFFER_SIZE) {
+	    throw new IllegalArgumentException("Illegal DOS header buffer size: " + buff.limit());
 	}
 
 	e_magic		= LittleEndian.getUShort(buff, 0);
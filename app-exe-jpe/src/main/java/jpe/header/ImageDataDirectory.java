@@ -4,6 +4,7 @@
 package jpe.header;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 import jsaf.io.LittleEndian;
 
@@ -54,6 +55,10 @@ public class ImageDataDirectory {
     int    size;
 
     public ImageDataDirectory(byte[] buff, int offset) {
+	this(ByteBuffer.wrap(buff), offset);
+    }
+
+    public ImageDataDirectory(ByteBuffer buff, int offset) {
 	virtualAddress	= LittleEndian.getUInt(buff, offset);
 	size		= LittleEndian.getUInt(buff, offset + 4);
     }
@@ -6,6 +6,7 @@ package jpe.header;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 import java.util.Date;
 
@@ -30,17 +31,24 @@ public class ImageFileHeader {
     short sizeOfOptionalHeader;
     short characteristics;
 
-    private byte[] buff;
+    private ByteBuffer buff;
 
     public ImageFileHeader(InputStream in) throws IOException {
-	buff = new byte[BUFFER_SIZE];
-	StreamTool.readFully(in, buff);
+	byte[] bytes = new byte[BUFFER_SIZE];
+	StreamTool.readFully(in, bytes);
+	buff = ByteBuffer.wrap(bytes);
 	loadFromBuffer();
     }
 
     public ImageFileHeader(IRandomAccess ra) throws IOException {
-	buff = new byte[BUFFER_SIZE];
-	ra.readFully(buff);
+	byte[] bytes = new byte[BUFFER_SIZE];
+	ra.readFully(bytes);
+	buff = ByteBuffer.wrap(bytes);
+	loadFromBuffer();
+    }
+
+    public ImageFileHeader(ByteBuffer data) throws IOException {
+	buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 	loadFromBuffer();
     }
 
@@ -60,8 +68,8 @@ public class ImageFileHeader {
     // Private
 
     private void loadFromBuffer() {
-	if (buff.length != BUFFER_SIZE) {
-	    throw new IllegalArgumentException("Illegal Image File Header buffer size: " + buff.length);
+	if (buff.limit() != BUFFER_SIZE) {
+	    throw new IllegalArgumentException("Illegal Image File Header buffer size: " + buff.limit());
 	}
 
 	machine				= LittleEndian.getUShort(buff, 0);
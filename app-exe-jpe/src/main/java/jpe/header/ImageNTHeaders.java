@@ -5,6 +5,8 @@ package jpe.header;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import jsaf.intf.io.IRandomAccess;
 import jsaf.io.LittleEndian;
@@ -22,6 +24,20 @@ public class ImageNTHeaders {
     ImageOptionalHeader optionalHeader;
     ImageSectionHeader[] sections;
 
+    /**
+     * An index of the sections by RVA: the non-empty sections sorted by virtualAddress, with the RVAs at which each one
+     * starts and ends. Null if any of the sections overlap, in which case RVAs are resolved by scanning the sections in
+     * table order.
+     */
+    private ImageSectionHeader[] sorted;
+    private int[] starts, ends;
+
+    /**
+     * The index (into sorted) of the section in which the last RVA was found. Consecutive lookups (e.g., walking an
+     * import thunk array) usually land in the same section. Races between threads only cost a binary search.
+     */
+    private int last;
+
     public ImageNTHeaders(IRandomAccess ra) throws IOException {
 	signature = LittleEndian.readUInt(ra);
 	fileHeader = new ImageFileHeader(ra);
@@ -41,6 +57,32 @@ public class ImageNTHeaders {
 	for (int i=0; i < numSections; i++) {
 	    sections[i] = new ImageSectionHeader(ra);
 	}
+	buildSectionIndex();
+    }
+
+    /**
+     * Decode the NT headers in place from the current position of the ByteBuffer.
+     */
+    public ImageNTHeaders(ByteBuffer data) throws IOException {
+	signature = LittleEndian.readUInt(data);
+	fileHeader = new ImageFileHeader(data);
+	short magic = LittleEndian.readUShort(data);
+	switch (magic) {
+	  case ImageOptionalHeader.IMAGE_NT_OPTIONAL_HDR32_MAGIC:
+	    optionalHeader = new ImageOptionalHeader32(data);
+	    break;
+
+	  case ImageOptionalHeader.IMAGE_NT_OPTIONAL_HDR64_MAGIC:
+	  default:
+	    optionalHeader = new ImageOptionalHeader64(data);
+	    break;
+	}
+	int numSections = fileHeader.numberOfSections;
+	sections = new ImageSectionHeader[numSections];
+	for (int i=0; i < numSections; i++) {
+	    sections[i] = new ImageSectionHeader(data);
+	}
+	buildSectionIndex();
     }
 
     /**
@@ -72,6 +114,13 @@ public class ImageNTHeaders {
 	return optionalHeader;
     }
 
+    /**
+     * @since 1.1
+     */
+    public int getNumberOfSections() {
+	return sections.length;
+    }
+
     public ImageSectionHeader getImageSectionHeader(int i) {
 	if (i < 0 || i > sections.length) {
 	    throw new IllegalArgumentException("Illegal NT image section header index: " + i);
@@ -97,9 +146,28 @@ public class ImageNTHeaders {
 	return optionalHeader.dataDirectories[ide].virtualAddress;
     }
 
-    // Private
+    /**
+     * Return the size of the image dir corresponding to the table, or 0 if the header does not declare that table.
+     *
+     * @param ide int from from jpe.ImageDataDirectory.[X]_TABLE constants.
+     *
+     * @since 1.1
+     */
+    public int getImageDirEntrySize(int ide) {
+	if ((0xFFFFFFFFL & optionalHeader.numberOfRvaAndSizes) <= ide) {
+	    return 0;
+	}
+	return optionalHeader.dataDirectories[ide].size;
+    }
 
-    int getOffsetFromRva(int rva) {
+    /**
+     * Return the position in the PE file corresponding to an RVA, using the section headers.
+     *
+     * @return the file offset, or 0 if the RVA does not lie within any section
+     *
+     * @since 1.1
+     */
+    public int getOffsetFromRva(int rva) {
 	ImageSectionHeader sh = getEnclosingSectionHeader(rva);
 	if (sh == null) {
 	    return 0;
@@ -108,7 +176,49 @@ public class ImageNTHeaders {
 	return rva - delta;
     }
 
+    // Private
+
+    /**
+     * Get the position in the PE file of the optional header (i.e., its magic).
+     */
+    static long getOptionalHeaderOffset(ImageDOSHeader dosHeader) {
+	return (0xFFFFFFFFL & dosHeader.getELFHeaderRVA()) + 4 + ImageFileHeader.BUFFER_SIZE;
+    }
+
     ImageSectionHeader getEnclosingSectionHeader(int rva) {
+	if (sorted == null) {
+	    return scanSectionHeaders(rva);
+	} else if (sorted.length == 0) {
+	    return null;
+	}
+	int i = last;
+	if (rva >= starts[i] && rva < ends[i]) {
+	    return sorted[i];
+	}
+
+	//
+	// Find the last section that starts at or before the RVA
+	//
+	int lo = 0;
+	for (int n = sorted.length; n > 1; ) {
+	    int half = n >>> 1;
+	    if (starts[lo + half] <= rva) {
+		lo += half;
+	    }
+	    n -= half;
+	}
+	if (rva >= starts[lo] && rva < ends[lo]) {
+	    last = lo;
+	    return sorted[lo];
+	}
+	return null;
+    }
+
+    /**
+     * Find the first section in the table that encloses the RVA. A section without a virtualSize is taken to span its
+     * sizeOfRawData.
+     */
+    private ImageSectionHeader scanSectionHeaders(int rva) {
 	for (int i=0; i < sections.length; i++) {
 	    int size = sections[i].virtualSize;
 	    if (0 == size) {
@@ -120,4 +230,40 @@ public class ImageNTHeaders {
 	}
 	return null;
     }
+
+    /**
+     * Build the index used by getEnclosingSectionHeader. Sections that cannot enclose any RVA (i.e., whose end, computed
+     * as by scanSectionHeaders, does not follow their start) are left out.
+     */
+    private void buildSectionIndex() {
+	long[] keys = new long[sections.length];
+	int n = 0;
+	for (int i=0; i < sections.length; i++) {
+	    int start = sections[i].virtualAddress;
+	    int size = sections[i].virtualSize;
+	    if (0 == size) {
+		size = sections[i].sizeOfRawData;
+	    }
+	    if (start < start + size) {
+		keys[n++] = ((long)start << 32) | i;
+	    }
+	}
+	Arrays.sort(keys, 0, n);
+	ImageSectionHeader[] sorted = new ImageSectionHeader[n];
+	starts = new int[n];
+	ends = new int[n];
+	for (int i=0; i < n; i++) {
+	    sorted[i] = sections[(int)keys[i]];
+	    starts[i] = sorted[i].virtualAddress;
+	    int size = sorted[i].virtualSize;
+	    if (0 == size) {
+		size = sorted[i].sizeOfRawData;
+	    }
+	    ends[i] = starts[i] + size;
+	    if (i > 0 && starts[i] < ends[i-1]) {
+		return; // overlapping sections
+	    }
+	}
+	this.sorted = sorted;
+    }
 }
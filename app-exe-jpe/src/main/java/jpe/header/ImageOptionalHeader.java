@@ -4,6 +4,7 @@
 package jpe.header;
 
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 /**
  * See http://msdn.microsoft.com/en-us/library/ms680339%28v=vs.85%29.aspx
@@ -15,6 +16,11 @@ public abstract class ImageOptionalHeader {
     public static final short IMAGE_NT_OPTIONAL_HDR32_MAGIC = 0x10b;
     public static final short IMAGE_NT_OPTIONAL_HDR64_MAGIC = 0x20b;
 
+    /**
+     * Offset of the checkSum field from the start of the optional header (i.e., the magic), in both formats.
+     */
+    static final int CHECKSUM_OFFSET = 64;
+
     //
     // Common to 32- and 64-bit
     //
@@ -47,16 +53,37 @@ public abstract class ImageOptionalHeader {
     int   numberOfRvaAndSizes;
     ImageDataDirectory[] dataDirectories;
 
-    byte[] buff;
+    ByteBuffer buff;
 
     public abstract void debugPrint(PrintStream out);
 
     public abstract int getBufferSize();
 
+    /**
+     * Get the preferred address of the image when it is loaded into memory.
+     *
+     * @since 1.1
+     */
+    public abstract long getImageBase();
+
     public int getChecksum() {
 	return checkSum;
     }
 
+    /**
+     * Get the number of entries in the data directory table, as declared by the header.
+     *
+     * @since 1.1
+     */
+    public int getNumberOfRvaAndSizes() {
+	return numberOfRvaAndSizes;
+    }
+
+    /**
+     * Get the offset of the data directory table from the start of the optional header (i.e., the magic).
+     */
+    abstract int getDataDirectoryOffset();
+
     void loadDataDirectories(int offset) {
 	dataDirectories = new ImageDataDirectory[ImageDataDirectory.IMAGE_NUMBEROF_DIRECTORY_ENTRIES];
 	for (int i=0; i < dataDirectories.length; i++) {
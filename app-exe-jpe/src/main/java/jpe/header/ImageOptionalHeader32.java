@@ -5,6 +5,7 @@ package jpe.header;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 import jsaf.intf.io.IRandomAccess;
 import jsaf.io.LittleEndian;
@@ -27,8 +28,14 @@ public class ImageOptionalHeader32 extends ImageOptionalHeader {
     int reserved1;
 
     public ImageOptionalHeader32(IRandomAccess ra) throws IOException {
-	buff = new byte[BUFFER_SIZE];
-	ra.readFully(buff);
+	byte[] bytes = new byte[BUFFER_SIZE];
+	ra.readFully(bytes);
+	buff = ByteBuffer.wrap(bytes);
+	loadFromBuffer();
+    }
+
+    public ImageOptionalHeader32(ByteBuffer data) throws IOException {
+	buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 	loadFromBuffer();
     }
 
@@ -36,6 +43,14 @@ public class ImageOptionalHeader32 extends ImageOptionalHeader {
 	return BUFFER_SIZE;
     }
 
+    public long getImageBase() {
+	return 0xFFFFFFFFL & imageBase;
+    }
+
+    int getDataDirectoryOffset() {
+	return 96;
+    }
+
     public void debugPrint(PrintStream out) {
 	out.println("RAW Buffer for IMAGE_OPTIONAL_HEADER32:");
 	StreamTool.hexDump(buff, out);
@@ -77,14 +92,14 @@ public class ImageOptionalHeader32 extends ImageOptionalHeader {
     // Private
 
     private void loadFromBuffer() {
-	if (buff.length != BUFFER_SIZE) {
-	    throw new IllegalArgumentException("Illegal Image Optional Header 32 buffer size: " + buff.length);
+	if (buff.limit() != BUFFER_SIZE) {
+	    throw new IllegalArgumentException("Illegal Image Optional Header 32 buffer size: " + buff.limit());
 	}
 
 	magic = IMAGE_NT_OPTIONAL_HDR32_MAGIC;
 
-	majorLinkerVersion		= (byte)(buff[0] & 0xFF);
-	minorLinkerVersion		= (byte)(buff[1] & 0xFF);
+	majorLinkerVersion		= buff.get(0);
+	minorLinkerVersion		= buff.get(1);
 	sizeOfCode			= LittleEndian.getUInt(buff, 2);
 	sizeOfInitializedData		= LittleEndian.getUInt(buff, 6);
 	sizeOfUninitializedData		= LittleEndian.getUInt(buff, 10);
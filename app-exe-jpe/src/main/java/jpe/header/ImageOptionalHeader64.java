@@ -5,6 +5,7 @@ package jpe.header;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 import jsaf.intf.io.IRandomAccess;
 import jsaf.io.LittleEndian;
@@ -30,8 +31,14 @@ public class ImageOptionalHeader64 extends ImageOptionalHeader {
     long sizeOfHeapCommit;
 
     public ImageOptionalHeader64(IRandomAccess ra) throws IOException {
-	buff = new byte[BUFFER_SIZE];
-	ra.readFully(buff);
+	byte[] bytes = new byte[BUFFER_SIZE];
+	ra.readFully(bytes);
+	buff = ByteBuffer.wrap(bytes);
+	loadFromBuffer();
+    }
+
+    public ImageOptionalHeader64(ByteBuffer data) throws IOException {
+	buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 	loadFromBuffer();
     }
 
@@ -39,6 +46,14 @@ public class ImageOptionalHeader64 extends ImageOptionalHeader {
 	return BUFFER_SIZE;
     }
 
+    public long getImageBase() {
+	return imageBase;
+    }
+
+    int getDataDirectoryOffset() {
+	return 112;
+    }
+
     public void debugPrint(PrintStream out) {
 	out.println("RAW Buffer for IMAGE_OPTIONAL_HEADER64:");
 	StreamTool.hexDump(buff, out);
@@ -79,14 +94,14 @@ public class ImageOptionalHeader64 extends ImageOptionalHeader {
     // Private
 
     private void loadFromBuffer() {
-	if (buff.length != BUFFER_SIZE) {
-	    throw new IllegalArgumentException("Illegal Image Optional Header 64 buffer size: " + buff.length);
+	if (buff.limit() != BUFFER_SIZE) {
+	    throw new IllegalArgumentException("Illegal Image Optional Header 64 buffer size: " + buff.limit());
 	}
 
 	magic = IMAGE_NT_OPTIONAL_HDR64_MAGIC;
 
-	majorLinkerVersion		= (byte)(buff[0] & 0xFF);
-	minorLinkerVersion		= (byte)(buff[1] & 0xFF);
+	majorLinkerVersion		= buff.get(0);
+	minorLinkerVersion		= buff.get(1);
 	sizeOfCode			= LittleEndian.getUInt(buff, 2);
 	sizeOfInitializedData		= LittleEndian.getUInt(buff, 6);
 	sizeOfUninitializedData		= LittleEndian.getUInt(buff, 10);
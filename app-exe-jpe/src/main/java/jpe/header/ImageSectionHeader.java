@@ -5,7 +5,7 @@ package jpe.header;
 
 import java.io.IOException;
 import java.io.PrintStream;
-
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
@@ -35,11 +35,17 @@ public class ImageSectionHeader {
 	short numberOfLinenumbers;
 	int characteristics;
 
-	private byte[] buff;
+	private ByteBuffer buff;
 
 	public ImageSectionHeader(IRandomAccess ra) throws IOException {
-		buff = new byte[BUFFER_SIZE];
-		ra.readFully(buff);
+		byte[] bytes = new byte[BUFFER_SIZE];
+		ra.readFully(bytes);
+		buff = ByteBuffer.wrap(bytes);
+		loadFromBuffer();
+	}
+
+	public ImageSectionHeader(ByteBuffer data) throws IOException {
+		buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 		loadFromBuffer();
 	}
 
@@ -64,17 +70,40 @@ public class ImageSectionHeader {
 		return (long) pointerToRawData;
 	}
 
+	/**
+	 * @since 1.1
+	 */
+	public int getVirtualAddress() {
+		return virtualAddress;
+	}
+
+	/**
+	 * @since 1.1
+	 */
+	public int getVirtualSize() {
+		return virtualSize;
+	}
+
+	/**
+	 * @since 1.1
+	 */
+	public int getSizeOfRawData() {
+		return sizeOfRawData;
+	}
+
 	// Private
 
 	private void loadFromBuffer() {
 		if (buff == null) {
 			throw new IllegalArgumentException("Cannot load a header from a null buffer!");
-		} else if (buff.length != BUFFER_SIZE) {
-			throw new IllegalArgumentException("Bad buffer length: " + buff.length);
+		} else if (buff.limit() != BUFFER_SIZE) {
+			throw new IllegalArgumentException("Bad buffer length: " + buff.limit());
 		}
 
 		try {
-			name = new String(buff, 0, IMAGE_SIZEOF_SHORT_NAME, Charset.forName("UTF-8"));
+			ByteBuffer shortName = buff.duplicate();
+			shortName.position(0).limit(IMAGE_SIZEOF_SHORT_NAME);
+			name = Charset.forName("UTF-8").decode(shortName).toString();
 		} catch (IllegalCharsetNameException e) {
 			e.printStackTrace();
 		} catch (UnsupportedCharsetException e) {
@@ -0,0 +1,27 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.intf;
+
+import jpe.header.Header;
+import jsaf.intf.io.IFile;
+
+/**
+ * Callback interface through which a BatchScanner delivers its results.  Methods are invoked from the scanner's worker
+ * threads as each file finishes, so implementations must be thread-safe.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+public interface IScanHandler {
+    /**
+     * Invoked when the header of a file has been parsed successfully.
+     */
+    void handle(IFile file, Header header);
+
+    /**
+     * Invoked when a file could not be retrieved or parsed.  An error affects only the file at the specified path; the
+     * scan continues with the remaining files.
+     */
+    void error(String path, Exception e);
+}
@@ -5,6 +5,7 @@ package jpe.resource;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 
 import jsaf.intf.io.IRandomAccess;
 import jsaf.io.LittleEndian;
@@ -24,15 +25,22 @@ public class ImageResourceDataEntry {
 	int reserved;
 	long address = 0;
 
-	private byte[] buff;
+	private ByteBuffer buff;
 
 	/**
 	 * @param rba the address of the beginning of the resource section of the file (resource base address).
 	 * @param rva the RVA of the resource image directory
 	 */
 	ImageResourceDataEntry(IRandomAccess ra, long rba, long rva) throws IOException {
-		buff = new byte[BUFFER_SIZE];
-		ra.readFully(buff);
+		byte[] bytes = new byte[BUFFER_SIZE];
+		ra.readFully(bytes);
+		buff = ByteBuffer.wrap(bytes);
+		loadFromBuffer();
+		address = rba + ((long) rawDataPtr) - rva;
+	}
+
+	ImageResourceDataEntry(ByteBuffer data, long rba, long rva) throws IOException {
+		buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 		loadFromBuffer();
 		address = rba + ((long) rawDataPtr) - rva;
 	}
@@ -5,7 +5,7 @@ package jpe.resource;
 
 import java.io.IOException;
 import java.io.PrintStream;
-
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import jsaf.intf.io.IRandomAccess;
@@ -28,15 +28,22 @@ public class ImageResourceDirectory {
 	short numberOfIdEntries;
 	ImageResourceDirectoryEntry[] entries;
 
-	private byte[] buff = new byte[BUFFER_SIZE];
+	private ByteBuffer buff;
 
 	public ImageResourceDirectory(IRandomAccess ra) throws IOException {
-		buff = new byte[BUFFER_SIZE];
-		ra.readFully(buff);
+		byte[] bytes = new byte[BUFFER_SIZE];
+		ra.readFully(bytes);
+		buff = ByteBuffer.wrap(bytes);
 		loadFromBuffer();
 		entries = getChildren(ra);
 	}
 
+	public ImageResourceDirectory(ByteBuffer data) throws IOException {
+		buff = LittleEndian.readSlice(data, BUFFER_SIZE);
+		loadFromBuffer();
+		entries = getChildren(data);
+	}
+
 	public int numEntries() {
 		return numberOfNamedEntries + numberOfIdEntries;
 	}
@@ -92,4 +99,13 @@ public class ImageResourceDirectory {
 		}
 		return entries;
 	}
+
+	ImageResourceDirectoryEntry[] getChildren(ByteBuffer data) throws IOException {
+		int size = numEntries();
+		ImageResourceDirectoryEntry[] entries = new ImageResourceDirectoryEntry[size];
+		for (int i = 0; i < size; i++) {
+			entries[i] = new ImageResourceDirectoryEntry(data);
+		}
+		return entries;
+	}
 }
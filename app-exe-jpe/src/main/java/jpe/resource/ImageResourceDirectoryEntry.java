@@ -5,10 +5,8 @@ package jpe.resource;
 
 import java.io.IOException;
 import java.io.PrintStream;
-
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.nio.charset.IllegalCharsetNameException;
-import java.nio.charset.UnsupportedCharsetException;
 
 import jsaf.intf.io.IRandomAccess;
 import jsaf.io.LittleEndian;
@@ -25,6 +23,11 @@ public class ImageResourceDirectoryEntry {
 	public static final int IMAGE_RESOURCE_DATA_IS_DIRECTORY = 0x80000000;
 	public static final int IMAGE_RESOURCE_NAME_IS_STRING = 0x80000000;
 
+	/**
+	 * The encoding of an IMAGE_RESOURCE_DIR_STRING_U name.
+	 */
+	private static final Charset UTF16LE = Charset.forName("UTF-16LE");
+
 	/**
 	 * This field contains either an integer ID or a pointer to a structure that contains a string name. If the high bit
 	 * (0x80000000) is zero, this field is interpreted as an integer ID. If the high bit is nonzero, the lower 31 bits are an
@@ -44,11 +47,17 @@ public class ImageResourceDirectoryEntry {
 	 */
 	int dataOffset;
 
-	private byte[] buff;
+	private ByteBuffer buff;
 
 	public ImageResourceDirectoryEntry(IRandomAccess ra) throws IOException {
-		buff = new byte[BUFFER_SIZE];
-		ra.readFully(buff);
+		byte[] bytes = new byte[BUFFER_SIZE];
+		ra.readFully(bytes);
+		buff = ByteBuffer.wrap(bytes);
+		loadFromBuffer();
+	}
+
+	public ImageResourceDirectoryEntry(ByteBuffer data) throws IOException {
+		buff = LittleEndian.readSlice(data, BUFFER_SIZE);
 		loadFromBuffer();
 	}
 
@@ -92,6 +101,14 @@ public class ImageResourceDirectoryEntry {
 		return null;
 	}
 
+	public ImageResourceDataEntry getDataEntry(ByteBuffer data, long rba, long rva) throws IOException {
+		if (hasDataEntry()) {
+			LittleEndian.seek(data, rba + (long) getOffset());
+			return new ImageResourceDataEntry(data, rba, rva);
+		}
+		return null;
+	}
+
 	public int getType() {
 		return name;
 	}
@@ -108,27 +125,32 @@ public class ImageResourceDirectoryEntry {
 			//
 			int offset = name & OFFSET_MASK;
 			ra.seek((long) (resourceBaseAddress + offset));
-			int len = (int) LittleEndian.readUShort(ra);
-			byte[] buff = new byte[(len * 2)]; // UTF-8 chars are 16 bits = 2 bytes
-			for (int i = 0; i < buff.length; i++) {
-				buff[i] = (byte) ra.read();
-			}
-			try {
-				return new String(buff, Charset.forName("UTF-8"));
-			} catch (UnsupportedCharsetException e) {
-				e.printStackTrace();
-			} catch (IllegalCharsetNameException e) {
-				e.printStackTrace();
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			}
+			int len = LittleEndian.readUShort(ra) & 0xFFFF;
+			byte[] buff = new byte[(len * 2)]; // UTF-16 chars are 16 bits = 2 bytes
+			ra.readFully(buff);
+			return new String(buff, UTF16LE);
 		}
 		//
-		// High bit is 0, or there was a bizarre Charset error.
+		// High bit is 0
 		//
 		return LittleEndian.toHexString(name);
 	}
 
+	/**
+	 * Same as getName(IRandomAccess, long), but decodes the name string directly from the ByteBuffer. The buffer's
+	 * position is not changed.
+	 */
+	public String getName(ByteBuffer data, long resourceBaseAddress) throws IOException {
+		if (0 != (name & IMAGE_RESOURCE_NAME_IS_STRING)) {
+			int offset = name & OFFSET_MASK;
+			ByteBuffer str = data.duplicate();
+			LittleEndian.seek(str, resourceBaseAddress + offset);
+			int len = LittleEndian.readUShort(str) & 0xFFFF;
+			return UTF16LE.decode(LittleEndian.readSlice(str, len * 2)).toString();
+		}
+		return LittleEndian.toHexString(name);
+	}
+
 	// Private
 
 	private void loadFromBuffer() {
@@ -0,0 +1,405 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.resource.version;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jpe.header.Header;
+import jsaf.JSAFSystem;
+import jsaf.intf.io.IFile;
+import jsaf.util.Checksum;
+
+/**
+ * A persistent cache of the version information extracted from PE files. Entries are keyed by path, and are valid for as
+ * long as the length and last-modified time of the file are unchanged (and, optionally, its checksum). A valid entry
+ * allows the file to be skipped entirely; the file is only parsed on a miss.
+ *
+ * The cache is held in memory while in use, and written to a compact binary file by save(). Entries are evicted in
+ * least-recently-used order when the cache is full, and entries that have not been used for longer than the maximum age
+ * are dropped when the cache is loaded or saved.
+ *
+ * Instances are thread-safe.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+public class VersionInfoCache {
+	public static final String DEFAULT_FILENAME = "jpe-versioninfo.cache";
+	public static final int DEFAULT_MAX_ENTRIES = 100000;
+	public static final long DEFAULT_MAX_AGE = 30L * 24L * 60L * 60L * 1000L; // 30 days
+
+	private static final int MAGIC = 0x4A504556; // "JPEV"
+	private static final short FORMAT_VERSION = 1;
+	private static final byte NO_ALGORITHM = -1;
+
+	private File file;
+	private int maxEntries;
+	private long maxAge;
+	private Checksum.Algorithm algorithm;
+	private LinkedHashMap<String, Entry> entries;
+	private long hits, misses, evictions;
+
+	/**
+	 * Open the default cache file in the jSAF data directory, without checksum validation.
+	 */
+	public VersionInfoCache() {
+		this(new File(JSAFSystem.getDataDirectory(), DEFAULT_FILENAME), DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE, null);
+	}
+
+	/**
+	 * Open a cache file. If the file does not exist, or cannot be read, the cache starts out empty.
+	 *
+	 * @param maxEntries the maximum number of entries to retain
+	 * @param maxAge     entries unused for longer than this many milliseconds are discarded
+	 * @param algorithm  if not null, a cached entry is only used if the checksum of the file (computed using this
+	 *                   algorithm) is also unchanged. This requires reading the entire file, but not parsing it.
+	 */
+	public VersionInfoCache(File file, int maxEntries, long maxAge, Checksum.Algorithm algorithm) {
+		this.file = file;
+		this.maxEntries = maxEntries;
+		this.maxAge = maxAge;
+		this.algorithm = algorithm;
+		//
+		// Within the anonymous class, the simple name Entry refers to the inherited Map.Entry.
+		//
+		entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<String, VersionInfoCache.Entry> eldest) {
+				if (size() > VersionInfoCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		if (file.isFile()) {
+			try {
+				load();
+			} catch (IOException e) {
+				entries.clear();
+			}
+		}
+	}
+
+	/**
+	 * Get the version information for the specified file, from the cache if possible. Otherwise, the file is parsed and
+	 * the result is added to the cache.
+	 *
+	 * @throws IllegalArgumentException if the file is not a valid PE file
+	 */
+	public Entry get(IFile f) throws IllegalArgumentException, IOException {
+		String path = f.getPath();
+		long length = f.length();
+		Date lm = f.getLastModified();
+		long mtime = lm == null ? 0L : lm.getTime();
+		byte[] digest = null;
+		Entry entry = null;
+		synchronized (this) {
+			entry = entries.get(path);
+		}
+		if (entry != null && entry.length == length && entry.mtime == mtime && (lm != null || algorithm != null)) {
+			if (algorithm == null) {
+				hit(entry);
+				return entry;
+			} else if (entry.algorithm == (byte) algorithm.ordinal()) {
+				digest = Checksum.createChecksum(f.getInputStream(), algorithm);
+				if (Arrays.equals(digest, entry.digest)) {
+					hit(entry);
+					return entry;
+				}
+			}
+		}
+
+		synchronized (this) {
+			misses++;
+		}
+		if (algorithm != null && digest == null) {
+			digest = Checksum.createChecksum(f.getInputStream(), algorithm);
+		}
+		entry = new Entry(length, mtime, algorithm, digest, new Header(f, true).getVersionInfo());
+		if (lm != null || algorithm != null) {
+			synchronized (this) {
+				entries.put(path, entry);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Remove the entry for the specified path, if any.
+	 */
+	public synchronized void remove(String path) {
+		entries.remove(path);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Get the number of entries that have been removed to enforce the maximum size or age.
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Write the cache to its file. The file is replaced atomically, so a concurrent reader never sees a partial cache.
+	 */
+	public synchronized void save() throws IOException {
+		expire();
+		File dir = file.getParentFile();
+		if (dir != null && !dir.exists()) {
+			dir.mkdirs();
+		}
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			//
+			// Entries are serialized individually, so that one containing a string too long for writeUTF, or more string
+			// tables or strings than the format can count, can be skipped.
+			//
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			ByteArrayOutputStream record = new ByteArrayOutputStream();
+			int count = 0;
+			for (Map.Entry<String, Entry> me : entries.entrySet()) {
+				record.reset();
+				try {
+					DataOutputStream rout = new DataOutputStream(record);
+					rout.writeUTF(me.getKey());
+					me.getValue().write(rout);
+					rout.flush();
+					record.writeTo(data);
+					count++;
+				} catch (UTFDataFormatException e) {
+					// skip
+				} catch (IllegalArgumentException e) {
+					// skip
+				}
+			}
+			out.writeInt(MAGIC);
+			out.writeShort(FORMAT_VERSION);
+			out.writeInt(count);
+			data.writeTo(out);
+		} finally {
+			if (out != null) {
+				out.close();
+			}
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				throw new IOException("Unable to replace " + file.getPath());
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "VersionInfoCache: size=" + entries.size() + ", hits=" + hits + ", misses=" + misses +
+				", evictions=" + evictions;
+	}
+
+	/**
+	 * The cached version information of a single file.
+	 */
+	public static class Entry {
+		long length, mtime, lastUsed;
+		byte algorithm;
+		byte[] digest;
+		byte[] fixedFileInfo;
+		String defaultTranslation;
+		Hashtable<String, Hashtable<String, String>> stringTables;
+
+		Entry(long length, long mtime, Checksum.Algorithm alg, byte[] digest, VsVersionInfo info) {
+			this.length = length;
+			this.mtime = mtime;
+			this.digest = digest;
+			lastUsed = System.currentTimeMillis();
+			algorithm = digest == null ? NO_ALGORITHM : (byte) alg.ordinal();
+			stringTables = new Hashtable<String, Hashtable<String, String>>();
+			if (info != null) {
+				if (info.getValue() != null) {
+					fixedFileInfo = info.getValue().getBuffer();
+				}
+				defaultTranslation = info.getDefaultTranslation();
+				stringTables.putAll(info.stringTables);
+			}
+		}
+
+		Entry(DataInputStream in) throws IOException {
+			length = in.readLong();
+			mtime = in.readLong();
+			lastUsed = in.readLong();
+			algorithm = in.readByte();
+			if (algorithm != NO_ALGORITHM) {
+				digest = new byte[in.readUnsignedByte()];
+				in.readFully(digest);
+			}
+			if (in.readBoolean()) {
+				fixedFileInfo = new byte[VsFixedFileInfo.BUFFER_SIZE];
+				in.readFully(fixedFileInfo);
+			}
+			if (in.readBoolean()) {
+				defaultTranslation = in.readUTF();
+			}
+			int numTables = in.readUnsignedShort();
+			stringTables = new Hashtable<String, Hashtable<String, String>>();
+			for (int i = 0; i < numTables; i++) {
+				String key = in.readUTF();
+				int numStrings = in.readUnsignedShort();
+				Hashtable<String, String> table = new Hashtable<String, String>();
+				for (int j = 0; j < numStrings; j++) {
+					String name = in.readUTF();
+					table.put(name, in.readUTF());
+				}
+				stringTables.put(key, table);
+			}
+		}
+
+		/**
+		 * Returns true if the file has a VS_VERSIONINFO resource.
+		 */
+		public boolean hasVersionInfo() {
+			return defaultTranslation != null;
+		}
+
+		/**
+		 * Returns null if the file has no VS_FIXEDFILEINFO.
+		 */
+		public VsFixedFileInfo getValue() {
+			if (fixedFileInfo == null) {
+				return null;
+			}
+			try {
+				return new VsFixedFileInfo(fixedFileInfo);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Returns null if the file has no version information.
+		 */
+		public String getDefaultTranslation() {
+			return defaultTranslation;
+		}
+
+		public Hashtable<String, String> getStringTable(String key) {
+			return stringTables.get(key.toLowerCase());
+		}
+
+		// Private
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeLong(length);
+			out.writeLong(mtime);
+			out.writeLong(lastUsed);
+			out.writeByte(digest == null ? NO_ALGORITHM : algorithm);
+			if (digest != null) {
+				out.writeByte(digest.length);
+				out.write(digest);
+			}
+			out.writeBoolean(fixedFileInfo != null);
+			if (fixedFileInfo != null) {
+				out.write(fixedFileInfo);
+			}
+			out.writeBoolean(defaultTranslation != null);
+			if (defaultTranslation != null) {
+				out.writeUTF(defaultTranslation);
+			}
+			writeCount(out, stringTables.size());
+			for (Map.Entry<String, Hashtable<String, String>> table : stringTables.entrySet()) {
+				out.writeUTF(table.getKey());
+				writeCount(out, table.getValue().size());
+				for (Map.Entry<String, String> string : table.getValue().entrySet()) {
+					out.writeUTF(string.getKey());
+					out.writeUTF(string.getValue());
+				}
+			}
+		}
+	}
+
+	// Private
+
+	private synchronized void hit(Entry entry) {
+		entry.lastUsed = System.currentTimeMillis();
+		hits++;
+	}
+
+	/**
+	 * Write a count as an unsigned short.
+	 *
+	 * @throws IllegalArgumentException if the count does not fit
+	 */
+	private static void writeCount(DataOutputStream out, int count) throws IllegalArgumentException, IOException {
+		if (count > 0xFFFF) {
+			throw new IllegalArgumentException("Count too large: " + count);
+		}
+		out.writeShort(count);
+	}
+
+	private void load() throws IOException {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readShort() != FORMAT_VERSION) {
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				entries.put(path, new Entry(in));
+			}
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+		expire();
+	}
+
+	/**
+	 * Discard entries that have not been used within the maximum age.
+	 */
+	private void expire() {
+		long cutoff = System.currentTimeMillis() - maxAge;
+		Iterator<Entry> iter = entries.values().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().lastUsed < cutoff) {
+				iter.remove();
+				evictions++;
+			}
+		}
+	}
+}
@@ -101,6 +101,13 @@ public class VsFixedFileInfo {
 
     // Private
 
+    /**
+     * Get the raw structure, for VersionInfoCache.
+     */
+    byte[] getBuffer() {
+	return buff;
+    }
+
     void loadFromBuffer() {
 	signature		= LittleEndian.getUInt(buff, 0);
 	strucVersion		= LittleEndian.getUInt(buff, 4);
@@ -5,6 +5,7 @@ package jpe.resource.version;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.Hashtable;
 
 import jsaf.intf.io.IRandomAccess;
@@ -62,27 +63,7 @@ public class VsVersionInfo {
 			byte[] childBuff = new byte[childLength - 2];
 			int fileOffset = (int) ra.getFilePointer();
 			ra.readFully(childBuff);
-			short childValueLength = LittleEndian.getUShort(childBuff, 0);
-			short childType = LittleEndian.getUShort(childBuff, 2);
-			String childKey = LittleEndian.getSzUTF16LEString(childBuff, 4, -1);
-			if (StringFileInfo.KEY.equals(childKey)) {
-				sfi = new StringFileInfo(childLength, childValueLength, childType, childBuff, fileOffset);
-				for (StringTable st : sfi.getChildren()) {
-					String key = st.getKey().toLowerCase();
-					Hashtable<String, String> table = new Hashtable<String, String>();
-					for (StringStructure string : st.getChildren()) {
-						table.put(string.getKey().trim(), string.getValue().trim());
-					}
-					if (defaultLangAndCodepage == null) {
-						defaultLangAndCodepage = key;
-					}
-					stringTables.put(key, table);
-				}
-			} else if (VarFileInfo.KEY.equals(childKey)) {
-				vfi = new VarFileInfo(childLength, childValueLength, childType, childBuff, fileOffset);
-			} else {
-				throw new IOException("Unknown VS_VERSION_INFO key: " + childKey);
-			}
+			loadChild(childLength, childBuff, fileOffset);
 		}
 
 		/*
@@ -99,6 +80,38 @@ public class VsVersionInfo {
 		*/
 	}
 
+	/**
+	 * Decode the VS_VERSIONINFO structure starting at the current position of the ByteBuffer, whose index must
+	 * correspond to the file offset (for 32-bit alignment).
+	 */
+	public VsVersionInfo(ByteBuffer data) throws IOException {
+		length = LittleEndian.readUShort(data);
+		valueLength = LittleEndian.readUShort(data);
+		type = LittleEndian.readUShort(data);
+		key = LittleEndian.readSzUTF16LEString(data);
+		padding1 = LittleEndian.read32BitAlignPadding(data);
+		if (valueLength > 0) {
+			//
+			// Copy the value, so that a retained VsVersionInfo never pins the (possibly mapped) buffer.
+			//
+			byte[] buff = new byte[valueLength];
+			LittleEndian.readSlice(data, valueLength).get(buff);
+			value = new VsFixedFileInfo(buff);
+		}
+		padding2 = LittleEndian.read32BitAlignPadding(data);
+		stringTables = new Hashtable<String, Hashtable<String, String>>();
+		for (int i = 0; i < 2; i++) {
+			short childLength = LittleEndian.readUShort(data);
+			if (childLength == 0) {
+				break;
+			}
+			byte[] childBuff = new byte[childLength - 2];
+			int fileOffset = data.position();
+			LittleEndian.readSlice(data, childBuff.length).get(childBuff);
+			loadChild(childLength, childBuff, fileOffset);
+		}
+	}
+
 	public void debugPrint(PrintStream out, int level) {
 		StringBuffer sb = new StringBuffer();
 		for (int i = 0; i < level; i++) {
@@ -174,4 +187,33 @@ public class VsVersionInfo {
 	public Hashtable<String, String> getStringTable(String key) {
 		return stringTables.get(key.toLowerCase());
 	}
+
+	// Private
+
+	/**
+	 * Load a StringFileInfo or VarFileInfo child structure.
+	 */
+	private void loadChild(short childLength, byte[] childBuff, int fileOffset) throws IOException {
+		short childValueLength = LittleEndian.getUShort(childBuff, 0);
+		short childType = LittleEndian.getUShort(childBuff, 2);
+		String childKey = LittleEndian.getSzUTF16LEString(childBuff, 4, -1);
+		if (StringFileInfo.KEY.equals(childKey)) {
+			sfi = new StringFileInfo(childLength, childValueLength, childType, childBuff, fileOffset);
+			for (StringTable st : sfi.getChildren()) {
+				String key = st.getKey().toLowerCase();
+				Hashtable<String, String> table = new Hashtable<String, String>();
+				for (StringStructure string : st.getChildren()) {
+					table.put(string.getKey().trim(), string.getValue().trim());
+				}
+				if (defaultLangAndCodepage == null) {
+					defaultLangAndCodepage = key;
+				}
+				stringTables.put(key, table);
+			}
+		} else if (VarFileInfo.KEY.equals(childKey)) {
+			vfi = new VarFileInfo(childLength, childValueLength, childType, childBuff, fileOffset);
+		} else {
+			throw new IOException("Unknown VS_VERSION_INFO key: " + childKey);
+		}
+	}
 }
@@ -0,0 +1,322 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.scan;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import jpe.header.Header;
+import jpe.intf.IScanHandler;
+import jsaf.intf.io.IFile;
+import jsaf.intf.io.IFilesystem;
+import jsaf.intf.util.ISearchable;
+import jsaf.intf.util.IStreamingSearchable;
+import jsaf.util.Checksum;
+
+/**
+ * Parses the headers of many PE files concurrently, using a fixed pool of worker threads.
+ *
+ * Results are delivered to an IScanHandler as each file finishes. The number of files that have been queued but not yet
+ * completed is bounded; once that limit is reached, the thread calling scan blocks until a worker frees a slot. Memory
+ * use therefore stays flat no matter how many files are fed into a scan.
+ *
+ * A BatchScanner may be shared by several threads, each running its own scan. Call shutdown when it is no longer needed.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+public class BatchScanner {
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger(0);
+
+    private ExecutorService pool;
+    private int threads, capacity;
+    private boolean lazy;
+    private Header.Digests digests = new Header.Digests();
+
+    /**
+     * Create a scanner with one worker thread per available processor, and a queue depth of four files per thread.
+     */
+    public BatchScanner() {
+	this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchScanner(int threads) {
+	this(threads, 4 * threads);
+    }
+
+    /**
+     * @param threads  the number of worker threads
+     * @param capacity the maximum number of files per scan that can be waiting for, or undergoing, parsing
+     */
+    public BatchScanner(int threads, int capacity) throws IllegalArgumentException {
+	if (threads < 1) {
+	    throw new IllegalArgumentException(Integer.toString(threads));
+	} else if (capacity < threads) {
+	    throw new IllegalArgumentException(Integer.toString(capacity));
+	}
+	this.threads = threads;
+	this.capacity = capacity;
+	pool = Executors.newFixedThreadPool(threads, new WorkerFactory());
+    }
+
+    /**
+     * Set whether the headers should be parsed in lazy mode (see Header(IFile, boolean)). Default is false.
+     */
+    public void setLazy(boolean lazy) {
+	this.lazy = lazy;
+    }
+
+    /**
+     * Set the checksums to compute for every file, in the same pass over its contents as the parsing of its headers (see
+     * Header.getChecksum). Default is none.
+     *
+     * @since 1.1
+     */
+    public void setDigests(Checksum.Algorithm... algorithms) {
+	digests.setChecksums(algorithms);
+    }
+
+    /**
+     * Set the Authenticode digests to compute for every file, in the same pass over its contents as the parsing of its
+     * headers (see Header.getAuthenticodeHash). Default is none.
+     *
+     * @since 1.1
+     */
+    public void setAuthenticodeDigests(Checksum.Algorithm... algorithms) {
+	digests.setAuthenticode(algorithms);
+    }
+
+    /**
+     * Set whether to compute the image checksum of every file, in the same pass over its contents as the parsing of its
+     * headers (see Header.isChecksumValid). Default is false.
+     *
+     * @since 1.1
+     */
+    public void setVerifyChecksum(boolean verify) {
+	digests.setVerify(verify);
+    }
+
+    public int getThreadCount() {
+	return threads;
+    }
+
+    /**
+     * Scan every file at or beneath the specified directory whose name matches the filter. Symbolic links are not followed.
+     *
+     * @param filter a pattern for file names to scan, or null to scan every file
+     */
+    public void scan(IFile dir, Pattern filter, IScanHandler handler) throws InterruptedException {
+	Batch batch = new Batch(handler);
+	LinkedList<IFile> stack = new LinkedList<IFile>();
+	stack.add(dir);
+	while (!stack.isEmpty()) {
+	    IFile f = stack.removeLast();
+	    try {
+		if (f.isDirectory()) {
+		    if (f == dir || !f.isLink()) {
+			IFile[] children = f.listFiles();
+			for (int i=children.length - 1; i >= 0; i--) {
+			    stack.add(children[i]);
+			}
+		    }
+		} else if (f.isFile() && (filter == null || filter.matcher(f.getName()).find())) {
+		    batch.submit(f);
+		}
+	    } catch (IOException e) {
+		handler.error(f.getPath(), e);
+	    }
+	}
+	batch.await();
+    }
+
+    /**
+     * Scan all the files in the result of the specified search. If the searcher is an IStreamingSearchable, parsing begins
+     * with the first search result, rather than after the search is complete. The search delivers results on its own
+     * threads (possibly fork-join workers), which block while the scan is at capacity.
+     */
+    public void scan(ISearchable<IFile> searcher, List<ISearchable.ICondition> conditions, IScanHandler handler)
+		throws Exception {
+
+	if (searcher instanceof IStreamingSearchable) {
+	    final Batch batch = new Batch(handler);
+	    final AtomicReference<InterruptedException> interrupted = new AtomicReference<InterruptedException>();
+	    ((IStreamingSearchable<IFile>)searcher).search(conditions, new IStreamingSearchable.IResultHandler<IFile>() {
+		public boolean handle(IFile file) {
+		    try {
+			batch.submit(file);
+			return true;
+		    } catch (InterruptedException e) {
+			interrupted.compareAndSet(null, e);
+			return false;
+		    }
+		}
+	    });
+	    batch.await();
+	    if (interrupted.get() != null) {
+		throw interrupted.get();
+	    }
+	} else {
+	    scan(searcher.search(conditions), handler);
+	}
+    }
+
+    /**
+     * Scan the specified files.
+     */
+    public void scan(Collection<IFile> files, IScanHandler handler) throws InterruptedException {
+	Batch batch = new Batch(handler);
+	for (IFile f : files) {
+	    batch.submit(f);
+	}
+	batch.await();
+    }
+
+    /**
+     * Scan the files at the specified paths. Paths are resolved to IFiles by the workers, so a path that cannot be
+     * retrieved is reported to the handler like any other per-file error.
+     */
+    public void scan(IFilesystem fs, String[] paths, IScanHandler handler) throws InterruptedException {
+	Batch batch = new Batch(handler);
+	for (String path : paths) {
+	    batch.submit(fs, path);
+	}
+	batch.await();
+    }
+
+    /**
+     * Stop the worker threads. Scans in progress are allowed to complete.
+     */
+    public void shutdown() {
+	pool.shutdown();
+    }
+
+    /**
+     * Stop the worker threads, waiting up to the specified time for scans in progress to complete.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+	pool.shutdown();
+	return pool.awaitTermination(timeout, unit);
+    }
+
+    // Private
+
+    /**
+     * The state of a single scan. Each queued or running file holds one permit.
+     */
+    class Batch {
+	private IScanHandler handler;
+	private Semaphore slots;
+
+	Batch(IScanHandler handler) {
+	    this.handler = handler;
+	    slots = new Semaphore(capacity);
+	}
+
+	void submit(IFile file) throws InterruptedException {
+	    ForkJoinPool.managedBlock(new SlotBlocker());
+	    execute(new Task(file, null, null));
+	}
+
+	void submit(IFilesystem fs, String path) throws InterruptedException {
+	    ForkJoinPool.managedBlock(new SlotBlocker());
+	    execute(new Task(null, fs, path));
+	}
+
+	/**
+	 * Block until every file submitted to the batch has been handled.
+	 */
+	void await() throws InterruptedException {
+	    slots.acquire(capacity);
+	    slots.release(capacity);
+	}
+
+	private void execute(Task task) {
+	    try {
+		pool.execute(task);
+	    } catch (RuntimeException e) {
+		slots.release();
+		throw e;
+	    }
+	}
+
+	/**
+	 * Acquires one permit. Blocking through ForkJoinPool.managedBlock lets a fork-join pool whose worker is submitting
+	 * files (e.g., a NativeFileSearcher delivering results) compensate for the blocked worker; on any other thread, it
+	 * is the same as acquiring the permit directly.
+	 */
+	class SlotBlocker implements ForkJoinPool.ManagedBlocker {
+	    private boolean acquired = false;
+
+	    public boolean block() throws InterruptedException {
+		if (!acquired) {
+		    slots.acquire();
+		    acquired = true;
+		}
+		return true;
+	    }
+
+	    public boolean isReleasable() {
+		if (!acquired) {
+		    acquired = slots.tryAcquire();
+		}
+		return acquired;
+	    }
+	}
+
+	class Task implements Runnable {
+	    private IFile file;
+	    private IFilesystem fs;
+	    private String path;
+
+	    Task(IFile file, IFilesystem fs, String path) {
+		this.file = file;
+		this.fs = fs;
+		this.path = path;
+	    }
+
+	    public void run() {
+		try {
+		    if (file == null) {
+			file = fs.getFile(path);
+		    } else {
+			path = file.getPath();
+		    }
+		    Header header = new Header(file, lazy, digests);
+		    handler.handle(file, header);
+		} catch (Exception e) {
+		    handler.error(path, e);
+		} finally {
+		    slots.release();
+		}
+	    }
+	}
+    }
+
+    class WorkerFactory implements ThreadFactory {
+	private int pid;
+	private AtomicInteger counter;
+
+	WorkerFactory() {
+	    pid = POOL_COUNTER.incrementAndGet();
+	    counter = new AtomicInteger(0);
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread t = new Thread(r, "BatchScanner-" + pid + "-" + counter.incrementAndGet());
+	    t.setDaemon(true);
+	    return t;
+	}
+    }
+}
@@ -0,0 +1,161 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.symbol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import jpe.header.ImageNTHeaders;
+import jsaf.intf.io.IRandomAccess;
+import jsaf.io.LittleEndian;
+
+/**
+ * Random access to the contents of a PE file by RVA, either through an IRandomAccess, or in place from a ByteBuffer.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+abstract class ImageData {
+    /**
+     * The maximum length of a module or symbol name. Decorated C++ names can be long, but not this long.
+     */
+    static final int MAX_NAME = 4096;
+
+    private ImageNTHeaders ntHeader;
+
+    ImageData(ImageNTHeaders ntHeader) {
+	this.ntHeader = ntHeader;
+    }
+
+    /**
+     * Get the file offset of an RVA.
+     *
+     * @throws EOFException if the RVA does not lie within a section of the file
+     */
+    long offset(int rva) throws IOException {
+	int offset = rva == 0 ? 0 : ntHeader.getOffsetFromRva(rva);
+	if (offset <= 0) {
+	    throw new EOFException(LittleEndian.toHexString(rva));
+	}
+	return offset;
+    }
+
+    /**
+     * Read len bytes at the specified RVA. Use LittleEndian.getUInt etc. to decode the buffer.
+     *
+     * @throws EOFException if the end of the file is reached first
+     */
+    ByteBuffer read(int rva, int len) throws IOException {
+	ByteBuffer buff = get(offset(rva), len);
+	if (buff.limit() < len) {
+	    throw new EOFException(LittleEndian.toHexString(rva));
+	}
+	return buff;
+    }
+
+    /**
+     * Read up to len bytes at the specified RVA; fewer if the end of the file is reached.
+     */
+    ByteBuffer readUpTo(int rva, int len) throws IOException {
+	return get(offset(rva), len);
+    }
+
+    /**
+     * Read the null-terminated (ANSI) name at the specified RVA, from the SymbolPool.
+     *
+     * @throws EOFException if the name is not terminated within MAX_NAME bytes
+     */
+    String readName(int rva) throws IOException {
+	return getName(offset(rva));
+    }
+
+    /**
+     * Get up to len bytes at the specified file offset.
+     */
+    abstract ByteBuffer get(long offset, int len) throws IOException;
+
+    /**
+     * Get the null-terminated name at the specified file offset.
+     */
+    abstract String getName(long offset) throws IOException;
+
+    /**
+     * ImageData backed by a ByteBuffer, whose index 0 corresponds to the beginning of the file.
+     */
+    static class Buffered extends ImageData {
+	private ByteBuffer data;
+
+	Buffered(ImageNTHeaders ntHeader, ByteBuffer data) {
+	    super(ntHeader);
+	    this.data = data;
+	}
+
+	ByteBuffer get(long offset, int len) throws IOException {
+	    ByteBuffer buff = data.duplicate();
+	    LittleEndian.seek(buff, offset);
+	    return LittleEndian.readSlice(buff, Math.min(len, buff.remaining()));
+	}
+
+	String getName(long offset) throws IOException {
+	    int start = (int)offset;
+	    int end = (int)Math.min((long)data.limit(), offset + MAX_NAME);
+	    for (int i=start; i < end; i++) {
+		if (data.get(i) == 0) {
+		    return SymbolPool.intern(data, start, i - start);
+		}
+	    }
+	    throw new EOFException(LittleEndian.toHexString(offset));
+	}
+    }
+
+    /**
+     * ImageData backed by an IRandomAccess.
+     */
+    static class Seekable extends ImageData {
+	private IRandomAccess ra;
+	private byte[] name;
+
+	Seekable(ImageNTHeaders ntHeader, IRandomAccess ra) {
+	    super(ntHeader);
+	    this.ra = ra;
+	    name = new byte[256];
+	}
+
+	ByteBuffer get(long offset, int len) throws IOException {
+	    byte[] bytes = new byte[len];
+	    ra.seek(offset);
+	    int total = 0, n = 0;
+	    while (total < len && (n = ra.read(bytes, total, len - total)) != -1) {
+		total += n;
+	    }
+	    return ByteBuffer.wrap(bytes, 0, total).slice();
+	}
+
+	String getName(long offset) throws IOException {
+	    ra.seek(offset);
+	    int len = 0;
+	    while (true) {
+		int n = ra.read(name, len, name.length - len);
+		if (n == -1) {
+		    throw new EOFException(LittleEndian.toHexString(offset));
+		}
+		for (int i=len; i < len + n; i++) {
+		    if (name[i] == 0) {
+			return SymbolPool.intern(name, 0, i);
+		    }
+		}
+		len += n;
+		if (len == name.length) {
+		    if (len >= MAX_NAME) {
+			throw new EOFException(LittleEndian.toHexString(offset));
+		    }
+		    byte[] temp = new byte[name.length * 2];
+		    System.arraycopy(name, 0, temp, 0, len);
+		    name = temp;
+		}
+	    }
+	}
+    }
+}
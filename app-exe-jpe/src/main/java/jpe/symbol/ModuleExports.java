@@ -0,0 +1,92 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.symbol;
+
+import java.io.PrintStream;
+
+import jsaf.io.LittleEndian;
+
+/**
+ * The functions exported by a PE file, decoded from its IMAGE_EXPORT_DIRECTORY, in ordinal order. All the names come
+ * from the SymbolPool.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class ModuleExports {
+    private String module;
+    private int[] ordinals, addresses;
+    private String[] names, forwarders;
+
+    /**
+     * @param forwarders the forwarder string of each forwarded export, null for other exports; null if none of the
+     *                   exports is forwarded
+     */
+    ModuleExports(String module, int[] ordinals, int[] addresses, String[] names, String[] forwarders) {
+	this.module = module;
+	this.ordinals = ordinals;
+	this.addresses = addresses;
+	this.names = names;
+	this.forwarders = forwarders;
+    }
+
+    /**
+     * Get the name of the module, as recorded in its export directory (e.g., "KERNEL32.dll").
+     */
+    public String getModule() {
+	return module;
+    }
+
+    /**
+     * Get the number of exported functions.
+     */
+    public int size() {
+	return ordinals.length;
+    }
+
+    public int getOrdinal(int i) {
+	return ordinals[i];
+    }
+
+    /**
+     * Get the RVA of the function at the specified index (for a forwarded export, the RVA of the forwarder string).
+     */
+    public int getAddress(int i) {
+	return addresses[i];
+    }
+
+    /**
+     * Get the name of the function at the specified index.
+     *
+     * @return the name, or null if the function is only exported by ordinal
+     */
+    public String getName(int i) {
+	return names[i];
+    }
+
+    /**
+     * Get the forwarder of the function at the specified index (e.g., "NTDLL.RtlAllocateHeap").
+     *
+     * @return the forwarder, or null if the function is not forwarded to another module
+     */
+    public String getForwarder(int i) {
+	return forwarders == null ? null : forwarders[i];
+    }
+
+    public void debugPrint(PrintStream out) {
+	out.println("Exports: " + module);
+	for (int i=0; i < ordinals.length; i++) {
+	    StringBuffer sb = new StringBuffer("  ").append(ordinals[i]);
+	    sb.append(" ").append(LittleEndian.toHexString(addresses[i]));
+	    if (names[i] != null) {
+		sb.append(" ").append(names[i]);
+	    }
+	    if (getForwarder(i) != null) {
+		sb.append(" -> ").append(getForwarder(i));
+	    }
+	    out.println(sb.toString());
+	}
+    }
+}
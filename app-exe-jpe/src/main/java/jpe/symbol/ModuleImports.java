@@ -0,0 +1,91 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.symbol;
+
+import java.io.PrintStream;
+
+/**
+ * The functions that a PE file imports from one module (DLL), decoded from an IMAGE_IMPORT_DESCRIPTOR or an
+ * IMAGE_DELAYLOAD_DESCRIPTOR. All the names come from the SymbolPool.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class ModuleImports {
+    private String module;
+    private boolean delayed;
+    private String[] names;
+    private int[] ordinals;
+
+    /**
+     * @param ordinals the ordinal of each function that is imported by ordinal, or -1 for functions imported by name;
+     *                 null if all the functions are imported by name
+     */
+    ModuleImports(String module, boolean delayed, String[] names, int[] ordinals) {
+	this.module = module;
+	this.delayed = delayed;
+	this.names = names;
+	this.ordinals = ordinals;
+    }
+
+    /**
+     * Get the name of the module, as it appears in the file (e.g., "KERNEL32.dll").
+     */
+    public String getModule() {
+	return module;
+    }
+
+    /**
+     * Returns true if the module is delay-loaded.
+     */
+    public boolean isDelayed() {
+	return delayed;
+    }
+
+    /**
+     * Get the number of functions imported from the module.
+     */
+    public int size() {
+	return names.length;
+    }
+
+    /**
+     * Get the name of the function at the specified index.
+     *
+     * @return the name, or null if the function is imported by ordinal
+     */
+    public String getName(int i) {
+	return names[i];
+    }
+
+    /**
+     * Get the ordinal of the function at the specified index.
+     *
+     * @return the ordinal, or -1 if the function is imported by name
+     */
+    public int getOrdinal(int i) {
+	return ordinals == null ? -1 : ordinals[i];
+    }
+
+    /**
+     * Get the name of the function at the specified index. A function imported by ordinal from ws2_32.dll, wsock32.dll
+     * or oleaut32.dll is named from the standard ordinal table of the module; any other is named "ord" followed by its
+     * ordinal.
+     */
+    public String getSymbol(int i) {
+	if (names[i] == null) {
+	    String name = OrdinalNames.lookup(module, ordinals[i]);
+	    return name == null ? "ord" + ordinals[i] : name;
+	}
+	return names[i];
+    }
+
+    public void debugPrint(PrintStream out) {
+	out.println((delayed ? "Delay-import: " : "Import: ") + module);
+	for (int i=0; i < names.length; i++) {
+	    out.println("  " + getSymbol(i));
+	}
+    }
+}
@@ -0,0 +1,132 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.symbol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A global pool of the names of modules and symbols found in import and export tables. Every table decoded in the JVM
+ * refers to the same String instance for the same name, so a name that is imported by many files (such as CreateFileW)
+ * is only held once.
+ *
+ * Names are looked up directly from the bytes of the file (each byte being taken as an ISO-8859-1 character), using the
+ * same hash as String.hashCode, so looking up a name that is already in the pool creates no garbage. Lookups of pooled
+ * names do not lock; only the insertion of a new name is synchronized.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class SymbolPool {
+    /**
+     * The maximum number of names held by the pool. Once it is full, names that are not already pooled are returned as
+     * new (un-pooled) Strings, so a stream of garbage names from malformed files cannot grow the pool without limit.
+     */
+    public static final int MAX_ENTRIES = 1 << 20;
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    /**
+     * An open-addressed hash table, kept at most half full. A table is never modified after it has been replaced, and
+     * String instances are immutable, so readers can probe whichever table they see without locking.
+     */
+    private static volatile String[] table = new String[INITIAL_CAPACITY];
+    private static int count = 0;
+
+    /**
+     * Get the pooled String for the specified bytes.
+     */
+    public static String intern(byte[] buff, int offset, int len) {
+	return intern(ByteBuffer.wrap(buff), offset, len);
+    }
+
+    /**
+     * Get the pooled String for the bytes at the specified absolute index of the buffer. The position of the buffer is
+     * not modified.
+     */
+    public static String intern(ByteBuffer buff, int offset, int len) {
+	int hash = 0;
+	for (int i=0; i < len; i++) {
+	    hash = 31 * hash + (buff.get(offset + i) & 0xFF);
+	}
+	String s = find(table, buff, offset, len, hash);
+	if (s == null) {
+	    s = insert(buff, offset, len, hash);
+	}
+	return s;
+    }
+
+    /**
+     * Get the number of names in the pool.
+     */
+    public static synchronized int size() {
+	return count;
+    }
+
+    // Private
+
+    private static synchronized String insert(ByteBuffer buff, int offset, int len, int hash) {
+	String[] t = table;
+	String s = find(t, buff, offset, len, hash);
+	if (s == null) {
+	    char[] chars = new char[len];
+	    for (int i=0; i < len; i++) {
+		chars[i] = (char)(buff.get(offset + i) & 0xFF);
+	    }
+	    s = new String(chars);
+	    if (count < MAX_ENTRIES) {
+		if (2 * (count + 1) > t.length) {
+		    String[] temp = new String[t.length * 2];
+		    for (int i=0; i < t.length; i++) {
+			if (t[i] != null) {
+			    put(temp, t[i]);
+			}
+		    }
+		    t = temp;
+		}
+		put(t, s);
+		count++;
+		table = t;
+	    }
+	}
+	return s;
+    }
+
+    private static void put(String[] t, String s) {
+	int mask = t.length - 1;
+	int i = spread(s.hashCode()) & mask;
+	while (t[i] != null) {
+	    i = (i + 1) & mask;
+	}
+	t[i] = s;
+    }
+
+    private static String find(String[] t, ByteBuffer buff, int offset, int len, int hash) {
+	int mask = t.length - 1;
+	for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+	    String s = t[i];
+	    if (s == null) {
+		return null;
+	    } else if (s.hashCode() == hash && s.length() == len && matches(s, buff, offset)) {
+		return s;
+	    }
+	}
+    }
+
+    private static boolean matches(String s, ByteBuffer buff, int offset) {
+	for (int i=0; i < s.length(); i++) {
+	    if (s.charAt(i) != (char)(buff.get(offset + i) & 0xFF)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Mix the high bits of a String hash into the low bits used to index the table.
+     */
+    private static int spread(int hash) {
+	return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,370 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.symbol;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import jpe.header.ImageDataDirectory;
+import jpe.header.ImageNTHeaders;
+import jpe.header.ImageOptionalHeader64;
+import jsaf.intf.io.IRandomAccess;
+import jsaf.io.LittleEndian;
+import jsaf.util.Checksum;
+
+/**
+ * The import, delay-import and export tables of a PE file. The tables are located through the data directories of the
+ * NT headers, and decoded using their section headers to map RVAs to file offsets. All the module and symbol names are
+ * taken from the SymbolPool.
+ *
+ * Decoding never fails because of a malformed table: decoding of that table simply stops, retaining whatever entries
+ * were decoded before the problem was encountered (see isComplete).
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class SymbolTables {
+    /**
+     * The maximum number of modules decoded from an import or delay-import table.
+     */
+    public static final int MAX_MODULES = 4096;
+
+    /**
+     * The maximum number of functions decoded for an imported module, or from an export table.
+     */
+    public static final int MAX_FUNCTIONS = 65536;
+
+    static final int IMPORT_DESCRIPTOR_SIZE	= 20;
+    static final int DELAYLOAD_DESCRIPTOR_SIZE	= 32;
+    static final int EXPORT_DIRECTORY_SIZE	= 40;
+
+    /**
+     * IMAGE_DELAYLOAD_DESCRIPTOR attribute indicating that its addresses are RVAs. Otherwise (in files produced by very
+     * old linkers), they are virtual addresses.
+     */
+    static final int DLOAD_ATTR_RVA = 0x1;
+
+    /**
+     * The number of thunks read at once.
+     */
+    private static final int THUNK_BLOCK = 64;
+
+    private ImageData image;
+    private boolean wide, complete;
+    private long imageBase;
+    private List<ModuleImports> imports, delayImports;
+    private ModuleExports exports;
+    private String importHash;
+
+    /**
+     * Decode the tables of a file using an IRandomAccess.
+     */
+    public SymbolTables(ImageNTHeaders ntHeader, IRandomAccess ra) {
+	this(ntHeader, new ImageData.Seekable(ntHeader, ra));
+    }
+
+    /**
+     * Decode the tables of a file whose entire contents are available in the specified buffer. The buffer index 0 must
+     * correspond to the beginning of the file. The position of the buffer argument is not modified.
+     */
+    public SymbolTables(ImageNTHeaders ntHeader, ByteBuffer data) {
+	this(ntHeader, new ImageData.Buffered(ntHeader, data));
+    }
+
+    /**
+     * Returns false if any of the tables was malformed, or exceeded MAX_MODULES or MAX_FUNCTIONS, so that some of its
+     * entries could not be decoded.
+     */
+    public boolean isComplete() {
+	return complete;
+    }
+
+    /**
+     * Get the modules imported by the file, in the order of its import table (not including delay-loaded modules).
+     */
+    public List<ModuleImports> getImports() {
+	return imports;
+    }
+
+    /**
+     * Get the modules that the file delay-loads, in the order of its delay-import table.
+     */
+    public List<ModuleImports> getDelayImports() {
+	return delayImports;
+    }
+
+    /**
+     * Get the exports of the file.
+     *
+     * @return the exports, or null if the file has no export table
+     */
+    public ModuleExports getExports() {
+	return exports;
+    }
+
+    /**
+     * Get the import hash ("imphash") of the file: the MD5 checksum of the comma-separated list of its imports, in
+     * table order, each written in lower-case as module.function (see ModuleImports.getSymbol, which names the ordinals
+     * of ws2_32, wsock32 and oleaut32 as other implementations do). The extension of a module name is omitted if it is
+     * .dll, .ocx or .sys. Delay-loaded modules are not included.
+     *
+     * @return the hash as a lower-case hex string, or null if the file has no imports
+     */
+    public synchronized String getImportHash() {
+	if (importHash == null && imports.size() > 0) {
+	    StringBuffer sb = new StringBuffer();
+	    for (ModuleImports module : imports) {
+		String name = module.getModule().toLowerCase();
+		int ptr = name.lastIndexOf(".");
+		if (ptr != -1) {
+		    String ext = name.substring(ptr + 1);
+		    if (ext.equals("dll") || ext.equals("ocx") || ext.equals("sys")) {
+			name = name.substring(0, ptr);
+		    }
+		}
+		for (int i=0; i < module.size(); i++) {
+		    if (sb.length() > 0) {
+			sb.append(",");
+		    }
+		    sb.append(name).append(".").append(module.getSymbol(i).toLowerCase());
+		}
+	    }
+	    try {
+		importHash = Checksum.getChecksum(sb.toString().getBytes("ISO-8859-1"), Checksum.Algorithm.MD5);
+	    } catch (UnsupportedEncodingException e) {
+		throw new RuntimeException(e);
+	    }
+	}
+	return importHash;
+    }
+
+    public void debugPrint(PrintStream out) {
+	for (ModuleImports module : imports) {
+	    module.debugPrint(out);
+	}
+	for (ModuleImports module : delayImports) {
+	    module.debugPrint(out);
+	}
+	if (exports != null) {
+	    exports.debugPrint(out);
+	}
+	out.println("Import hash: " + getImportHash());
+    }
+
+    // Private
+
+    private SymbolTables(ImageNTHeaders ntHeader, ImageData image) {
+	this.image = image;
+	wide = ntHeader.getImageOptionalHeader() instanceof ImageOptionalHeader64;
+	imageBase = ntHeader.getImageOptionalHeader().getImageBase();
+	complete = true;
+
+	List<ModuleImports> modules = new ArrayList<ModuleImports>();
+	int rva = ntHeader.getImageDirEntryRVA(ImageDataDirectory.IMPORT_TABLE);
+	if (rva != 0 && ntHeader.getImageDirEntrySize(ImageDataDirectory.IMPORT_TABLE) != 0) {
+	    try {
+		readImports(rva, modules);
+	    } catch (IOException e) {
+		complete = false;
+	    }
+	}
+	imports = Collections.unmodifiableList(modules);
+
+	modules = new ArrayList<ModuleImports>();
+	rva = ntHeader.getImageDirEntryRVA(ImageDataDirectory.DELAY_IMPORT_DESCRIPTOR_TABLE);
+	if (rva != 0 && ntHeader.getImageDirEntrySize(ImageDataDirectory.DELAY_IMPORT_DESCRIPTOR_TABLE) != 0) {
+	    try {
+		readDelayImports(rva, modules);
+	    } catch (IOException e) {
+		complete = false;
+	    }
+	}
+	delayImports = Collections.unmodifiableList(modules);
+
+	rva = ntHeader.getImageDirEntryRVA(ImageDataDirectory.EXPORT_TABLE);
+	int size = ntHeader.getImageDirEntrySize(ImageDataDirectory.EXPORT_TABLE);
+	if (rva != 0 && size != 0) {
+	    try {
+		exports = readExports(rva, size);
+	    } catch (IOException e) {
+		complete = false;
+	    }
+	}
+	this.image = null;
+    }
+
+    /**
+     * Decode the IMAGE_IMPORT_DESCRIPTOR array at the specified RVA, which is terminated by a null descriptor.
+     */
+    private void readImports(int rva, List<ModuleImports> modules) throws IOException {
+	for (int n=0; n < MAX_MODULES; n++) {
+	    ByteBuffer buff = image.read(rva, IMPORT_DESCRIPTOR_SIZE);
+	    int originalFirstThunk = LittleEndian.getUInt(buff, 0);
+	    int name = LittleEndian.getUInt(buff, 12);
+	    int firstThunk = LittleEndian.getUInt(buff, 16);
+	    if (originalFirstThunk == 0 && name == 0 && firstThunk == 0) {
+		return;
+	    }
+	    //
+	    // The import name table is missing from some old files, in which case the (unbound) IAT has the same contents.
+	    //
+	    int thunks = originalFirstThunk == 0 ? firstThunk : originalFirstThunk;
+	    modules.add(readModule(image.readName(name), false, thunks));
+	    rva += IMPORT_DESCRIPTOR_SIZE;
+	}
+	complete = false;
+    }
+
+    /**
+     * Decode the IMAGE_DELAYLOAD_DESCRIPTOR array at the specified RVA, which is terminated by a null descriptor.
+     */
+    private void readDelayImports(int rva, List<ModuleImports> modules) throws IOException {
+	for (int n=0; n < MAX_MODULES; n++) {
+	    ByteBuffer buff = image.read(rva, DELAYLOAD_DESCRIPTOR_SIZE);
+	    int attributes = LittleEndian.getUInt(buff, 0);
+	    int name = LittleEndian.getUInt(buff, 4);
+	    int nameTable = LittleEndian.getUInt(buff, 16);
+	    if (name == 0) {
+		return;
+	    }
+	    if ((attributes & DLOAD_ATTR_RVA) == 0) {
+		name = (int)((0xFFFFFFFFL & name) - imageBase);
+		nameTable = (int)((0xFFFFFFFFL & nameTable) - imageBase);
+	    }
+	    modules.add(readModule(image.readName(name), true, nameTable));
+	    rva += DELAYLOAD_DESCRIPTOR_SIZE;
+	}
+	complete = false;
+    }
+
+    /**
+     * Decode the null-terminated array of thunks (IMAGE_THUNK_DATA32 or IMAGE_THUNK_DATA64) at the specified RVA, each of
+     * which is either an ordinal or the RVA of an IMAGE_IMPORT_BY_NAME structure.
+     */
+    private ModuleImports readModule(String module, boolean delayed, int rva) throws IOException {
+	List<String> names = new ArrayList<String>();
+	int[] ordinals = null;
+	int size = wide ? 8 : 4;
+	while (true) {
+	    ByteBuffer buff = image.readUpTo(rva, size * THUNK_BLOCK);
+	    int count = buff.limit() / size;
+	    if (count == 0) {
+		throw new IOException(module);
+	    }
+	    for (int i=0; i < count; i++) {
+		long thunk = wide ? LittleEndian.getULong(buff, i * size) : 0xFFFFFFFFL & LittleEndian.getUInt(buff, i * size);
+		if (thunk == 0) {
+		    return newModuleImports(module, delayed, names, ordinals);
+		} else if (names.size() == MAX_FUNCTIONS) {
+		    complete = false;
+		    return newModuleImports(module, delayed, names, ordinals);
+		}
+		boolean byOrdinal = wide ? thunk < 0 : (thunk & 0x80000000L) != 0;
+		if (byOrdinal) {
+		    if (ordinals == null || ordinals.length == names.size()) {
+			ordinals = resize(ordinals, Math.max(16, names.size() * 2));
+		    }
+		    ordinals[names.size()] = (int)(thunk & 0xFFFF);
+		    names.add(null);
+		} else {
+		    //
+		    // Skip the hint that precedes the name
+		    //
+		    names.add(image.readName((int)(thunk & 0x7FFFFFFF) + 2));
+		}
+	    }
+	    rva += count * size;
+	}
+    }
+
+    private static ModuleImports newModuleImports(String module, boolean delayed, List<String> names, int[] ordinals) {
+	if (ordinals != null) {
+	    ordinals = resize(ordinals, names.size());
+	}
+	return new ModuleImports(module, delayed, names.toArray(new String[names.size()]), ordinals);
+    }
+
+    /**
+     * Copy an array of ordinals into an array of the specified length, filling any new elements with -1.
+     */
+    private static int[] resize(int[] ordinals, int length) {
+	int[] temp = new int[length];
+	Arrays.fill(temp, -1);
+	if (ordinals != null) {
+	    System.arraycopy(ordinals, 0, temp, 0, Math.min(length, ordinals.length));
+	}
+	return temp;
+    }
+
+    /**
+     * Decode the IMAGE_EXPORT_DIRECTORY at the specified RVA, and the arrays to which it refers. An export whose address
+     * lies within the export directory is a forwarder.
+     */
+    private ModuleExports readExports(int rva, int size) throws IOException {
+	ByteBuffer buff = image.read(rva, EXPORT_DIRECTORY_SIZE);
+	int name = LittleEndian.getUInt(buff, 12);
+	int base = LittleEndian.getUInt(buff, 16);
+	long numberOfFunctions = 0xFFFFFFFFL & LittleEndian.getUInt(buff, 20);
+	long numberOfNames = 0xFFFFFFFFL & LittleEndian.getUInt(buff, 24);
+	int addressOfFunctions = LittleEndian.getUInt(buff, 28);
+	int addressOfNames = LittleEndian.getUInt(buff, 32);
+	int addressOfNameOrdinals = LittleEndian.getUInt(buff, 36);
+	if (numberOfFunctions > MAX_FUNCTIONS) {
+	    numberOfFunctions = MAX_FUNCTIONS;
+	    complete = false;
+	}
+	if (numberOfNames > MAX_FUNCTIONS) {
+	    numberOfNames = MAX_FUNCTIONS;
+	    complete = false;
+	}
+	String module = name == 0 ? null : image.readName(name);
+	int numFunctions = (int)numberOfFunctions, numNames = (int)numberOfNames;
+
+	String[] namesByIndex = new String[numFunctions];
+	if (numNames > 0) {
+	    ByteBuffer names = image.read(addressOfNames, numNames * 4);
+	    ByteBuffer nameOrdinals = image.read(addressOfNameOrdinals, numNames * 2);
+	    for (int i=0; i < numNames; i++) {
+		int index = 0xFFFF & LittleEndian.getUShort(nameOrdinals, i * 2);
+		if (index < numFunctions) {
+		    namesByIndex[index] = image.readName(LittleEndian.getUInt(names, i * 4));
+		}
+	    }
+	}
+
+	ByteBuffer functions = numFunctions == 0 ? null : image.read(addressOfFunctions, numFunctions * 4);
+	int count = 0;
+	for (int i=0; i < numFunctions; i++) {
+	    if (LittleEndian.getUInt(functions, i * 4) != 0) {
+		count++;
+	    }
+	}
+	int[] ordinals = new int[count], addresses = new int[count];
+	String[] names = new String[count], forwarders = null;
+	for (int i=0, j=0; i < numFunctions; i++) {
+	    int address = LittleEndian.getUInt(functions, i * 4);
+	    if (address == 0) {
+		continue;
+	    }
+	    ordinals[j] = base + i;
+	    addresses[j] = address;
+	    names[j] = namesByIndex[i];
+	    if ((0xFFFFFFFFL & (address - rva)) < (0xFFFFFFFFL & size)) {
+		if (forwarders == null) {
+		    forwarders = new String[count];
+		}
+		forwarders[j] = image.readName(address);
+	    }
+	    j++;
+	}
+	return new ModuleExports(module, ordinals, addresses, names, forwarders);
+    }
+}
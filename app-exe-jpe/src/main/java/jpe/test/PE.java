@@ -64,7 +64,7 @@ public class PE {
 	 * Read the Portable Execution format header information and extract data from it.
 	 */
 	public void readPEHeader(IFile file) throws Exception {
-		Header header = new Header(file);
+		Header header = new Header(file, false, new Header.Digests().setVerify(true));
 		ImageOptionalHeader ioh = header.getNTHeader().getImageOptionalHeader();
 		if (ioh instanceof ImageOptionalHeader32) {
 			System.out.println("   Instruction Set: 32-bit");
@@ -77,7 +77,14 @@ public class PE {
 		//
 		// Get the MS Checksum from the NT headers
 		//
-		System.out.println("       MS Checksum: " + ioh.getChecksum());
+		Boolean valid = header.isChecksumValid();
+		if (valid == null) {
+			System.out.println("       MS Checksum: " + ioh.getChecksum());
+		} else if (valid.booleanValue()) {
+			System.out.println("       MS Checksum: " + ioh.getChecksum() + " (valid)");
+		} else {
+			System.out.println("       MS Checksum: " + ioh.getChecksum() + " (INVALID, computed " + header.getImageChecksum() + ")");
+		}
 
 		//
 		// Get the version information string table, in the default language
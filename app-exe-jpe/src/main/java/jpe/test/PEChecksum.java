@@ -0,0 +1,134 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import jpe.header.Header;
+import jpe.header.ImageChecksum;
+
+/**
+ * Throughput benchmark for the PE image checksum. For each size from 1MB up to the maximum (growing 16-fold per step),
+ * a file is generated from the headers of a template PE file followed by random data, and its checksum is computed
+ * through a memory mapping, both by ImageChecksum and by a reference implementation of the word-at-a-time algorithm.
+ * The time taken to parse the file's headers with and without checksum verification is also reported.
+ *
+ * Usage: PEChecksum template.exe [maxMB] [iterations]
+ */
+public class PEChecksum {
+    public static void main(String[] argv) throws Exception {
+	File template = new File(argv[0]);
+	int maxMB = argv.length > 1 ? Integer.parseInt(argv[1]) : 256;
+	int iterations = argv.length > 2 ? Integer.parseInt(argv[2]) : 5;
+	Header header = new Header(template);
+
+	for (long size = 1L << 20; ; size <<= 4) {
+	    size = Math.min(size, Math.min((long)maxMB << 20, Integer.MAX_VALUE));
+	    File f = generate(template, size);
+	    try {
+		ByteBuffer data = map(f);
+		long best = Long.MAX_VALUE, bestRef = Long.MAX_VALUE, bestParse = Long.MAX_VALUE;
+		long bestVerify = Long.MAX_VALUE;
+		int value = 0, ref = 0;
+		for (int n=0; n < iterations; n++) {
+		    long start = System.nanoTime();
+		    ImageChecksum checksum = new ImageChecksum(header.getDOSHeader());
+		    checksum.update(data);
+		    value = checksum.getValue();
+		    long computed = System.nanoTime();
+		    ref = reference(data, header);
+		    long referenced = System.nanoTime();
+		    new Header(f, false);
+		    long parsed = System.nanoTime();
+		    new Header(f, false, new Header.Digests().setVerify(true));
+		    long verified = System.nanoTime();
+		    best = Math.min(best, computed - start);
+		    bestRef = Math.min(bestRef, referenced - computed);
+		    bestParse = Math.min(bestParse, parsed - referenced);
+		    bestVerify = Math.min(bestVerify, verified - parsed);
+		}
+		System.out.println((size >> 20) + "MB: checksum " + Integer.toHexString(value) +
+				   (value == ref ? "" : " (MISMATCH: reference " + Integer.toHexString(ref) + ")"));
+		System.out.println("  ImageChecksum " + rate(size, best) + ", reference " + rate(size, bestRef) +
+				   "; parse " + bestParse / 1000 + "us, parse+verify " + bestVerify / 1000 + "us");
+	    } finally {
+		f.delete();
+	    }
+	    if (size >= ((long)maxMB << 20) || size >= Integer.MAX_VALUE) {
+		break;
+	    }
+	}
+	System.exit(0);
+    }
+
+    private static String rate(long bytes, long nanos) {
+	return (bytes * 1000L / Math.max(1L, nanos)) + "MB/s";
+    }
+
+    /**
+     * Sum the file one 16-bit word at a time, folding the carry after every word, as CheckSumMappedFile does.
+     */
+    private static int reference(ByteBuffer data, Header header) {
+	ByteBuffer buff = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	int offset = header.getDOSHeader().getELFHeaderRVA() + 4 + 20 + 64; // signature, file header, checkSum offset
+	int len = buff.limit();
+	long sum = 0;
+	for (int i=0; i + 1 < len; i += 2) {
+	    if (i == offset || i == offset + 2) {
+		continue;
+	    }
+	    sum += buff.getShort(i) & 0xFFFF;
+	    sum = (sum & 0xFFFF) + (sum >>> 16);
+	}
+	if ((len & 1) == 1) {
+	    sum += buff.get(len - 1) & 0xFF;
+	    sum = (sum & 0xFFFF) + (sum >>> 16);
+	}
+	return (int)(sum + len);
+    }
+
+    /**
+     * Create a temporary file of the specified size, consisting of the template file followed by random data.
+     */
+    private static File generate(File template, long size) throws IOException {
+	File f = File.createTempFile("pechecksum", ".exe");
+	f.deleteOnExit();
+	RandomAccessFile in = new RandomAccessFile(template, "r");
+	FileOutputStream out = new FileOutputStream(f);
+	try {
+	    byte[] buff = new byte[(int)Math.min(in.length(), size)];
+	    in.readFully(buff);
+	    out.write(buff);
+	    long remaining = size - buff.length;
+	    byte[] noise = new byte[1024 * 1024 + 3];
+	    Random random = new Random(size);
+	    while (remaining > 0) {
+		random.nextBytes(noise);
+		int len = (int)Math.min(noise.length, remaining);
+		out.write(noise, 0, len);
+		remaining -= len;
+	    }
+	} finally {
+	    in.close();
+	    out.close();
+	}
+	return f;
+    }
+
+    private static ByteBuffer map(File f) throws IOException {
+	RandomAccessFile raf = new RandomAccessFile(f, "r");
+	try {
+	    return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+	} finally {
+	    raf.close();
+	}
+    }
+}
@@ -0,0 +1,172 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import jpe.header.Header;
+import jpe.header.ImageNTHeaders;
+import jpe.header.ImageSectionHeader;
+
+/**
+ * Benchmark for the resolution of RVAs to file offsets. A synthetic PE file with many sections (as produced by some
+ * packers and obfuscators) is generated, and RVAs are resolved both by ImageNTHeaders.getOffsetFromRva and by a linear
+ * scan of the section table, first in runs of consecutive RVAs within a section (like walking an import thunk array),
+ * then at random. Any PE files given on the command line are benchmarked the same way.
+ *
+ * Usage: RvaLookup [sections] [lookups] [iterations] [file ...]
+ */
+public class RvaLookup {
+    public static void main(String[] argv) throws Exception {
+	int sections = argv.length > 0 ? Integer.parseInt(argv[0]) : 96;
+	int lookups = argv.length > 1 ? Integer.parseInt(argv[1]) : 1000000;
+	int iterations = argv.length > 2 ? Integer.parseInt(argv[2]) : 10;
+
+	ByteBuffer data = generate(sections);
+	data.position(data.getInt(0x3C));
+	benchmark(sections + " synthetic sections", new ImageNTHeaders(data), lookups, iterations);
+	for (int i=3; i < argv.length; i++) {
+	    Header header = new Header(new File(argv[i]), true);
+	    benchmark(argv[i], header.getNTHeader(), lookups, iterations);
+	}
+	System.exit(0);
+    }
+
+    private static void benchmark(String name, ImageNTHeaders nt, int lookups, int iterations) {
+	System.out.println(name + " (" + nt.getNumberOfSections() + " sections):");
+	Random random = new Random(lookups);
+	benchmark("  sequential", nt, sequential(nt, lookups, random), iterations);
+	benchmark("  random", nt, random(nt, lookups, random), iterations);
+    }
+
+    private static void benchmark(String label, ImageNTHeaders nt, int[] rvas, int iterations) {
+	long best = Long.MAX_VALUE, bestRef = Long.MAX_VALUE;
+	int sum = 0, refSum = 0;
+	for (int n=0; n < iterations; n++) {
+	    long start = System.nanoTime();
+	    sum = 0;
+	    for (int i=0; i < rvas.length; i++) {
+		sum += nt.getOffsetFromRva(rvas[i]);
+	    }
+	    long indexed = System.nanoTime();
+	    refSum = 0;
+	    for (int i=0; i < rvas.length; i++) {
+		refSum += reference(nt, rvas[i]);
+	    }
+	    long scanned = System.nanoTime();
+	    best = Math.min(best, indexed - start);
+	    bestRef = Math.min(bestRef, scanned - indexed);
+	}
+	for (int i=0; i < rvas.length; i++) {
+	    if (nt.getOffsetFromRva(rvas[i]) != reference(nt, rvas[i])) {
+		System.out.println(label + ": MISMATCH at RVA " + Integer.toHexString(rvas[i]));
+		return;
+	    }
+	}
+	System.out.println(label + ": getOffsetFromRva " + rate(rvas.length, best) + ", linear scan " +
+			   rate(rvas.length, bestRef) + (sum == refSum ? "" : " (MISMATCH)"));
+    }
+
+    private static String rate(int lookups, long nanos) {
+	return ((double)(nanos * 10 / lookups) / 10) + "ns/lookup";
+    }
+
+    /**
+     * Resolve an RVA by scanning the section table in order, as ImageNTHeaders did before it was indexed.
+     */
+    private static int reference(ImageNTHeaders nt, int rva) {
+	for (int i=0; i < nt.getNumberOfSections(); i++) {
+	    ImageSectionHeader sh = nt.getImageSectionHeader(i);
+	    int size = sh.getVirtualSize();
+	    if (0 == size) {
+		size = sh.getSizeOfRawData();
+	    }
+	    if (rva >= sh.getVirtualAddress() && rva < sh.getVirtualAddress() + size) {
+		return rva - (sh.getVirtualAddress() - (int)sh.getRawDataPosition());
+	    }
+	}
+	return 0;
+    }
+
+    /**
+     * Runs of 64 consecutive DWORD RVAs, each starting at a random point of a random section.
+     */
+    private static int[] sequential(ImageNTHeaders nt, int lookups, Random random) {
+	int[] rvas = new int[lookups];
+	for (int i=0; i < lookups; ) {
+	    ImageSectionHeader sh = nt.getImageSectionHeader(random.nextInt(nt.getNumberOfSections()));
+	    int size = Math.max(1, sh.getVirtualSize() == 0 ? sh.getSizeOfRawData() : sh.getVirtualSize());
+	    int rva = sh.getVirtualAddress() + random.nextInt(size);
+	    for (int j=0; j < 64 && i < lookups; j++) {
+		rvas[i++] = rva + 4 * j;
+	    }
+	}
+	return rvas;
+    }
+
+    /**
+     * RVAs spread uniformly over the image, including the headers and any gaps between the sections.
+     */
+    private static int[] random(ImageNTHeaders nt, int lookups, Random random) {
+	int end = 0;
+	for (int i=0; i < nt.getNumberOfSections(); i++) {
+	    ImageSectionHeader sh = nt.getImageSectionHeader(i);
+	    int size = sh.getVirtualSize() == 0 ? sh.getSizeOfRawData() : sh.getVirtualSize();
+	    end = Math.max(end, sh.getVirtualAddress() + size);
+	}
+	int[] rvas = new int[lookups];
+	for (int i=0; i < lookups; i++) {
+	    rvas[i] = random.nextInt(Math.max(1, end));
+	}
+	return rvas;
+    }
+
+    /**
+     * Generate the headers of a 32-bit PE file with the specified number of sections, of random sizes, laid out in the
+     * order of their RVAs but listed in the section table in a random order. One section in eight has no virtualSize.
+     */
+    private static ByteBuffer generate(int sections) {
+	int ntOffset = 0x80;
+	int tableOffset = ntOffset + 4 + 20 + 224;
+	ByteBuffer buff = ByteBuffer.allocate(tableOffset + 40 * sections).order(ByteOrder.LITTLE_ENDIAN);
+	buff.putShort(0, (short)0x5A4D);		// MZ
+	buff.putInt(0x3C, ntOffset);			// e_lfanew
+	buff.putInt(ntOffset, 0x4550);			// PE\0\0
+	buff.putShort(ntOffset + 4, (short)0x14C);	// i386
+	buff.putShort(ntOffset + 6, (short)sections);
+	buff.putShort(ntOffset + 20, (short)224);	// sizeOfOptionalHeader
+	buff.putShort(ntOffset + 24, (short)0x10B);	// IMAGE_NT_OPTIONAL_HDR32_MAGIC
+	buff.putInt(ntOffset + 24 + 92, 16);		// numberOfRvaAndSizes
+
+	Random random = new Random(sections);
+	int[] order = new int[sections];
+	for (int i=0; i < sections; i++) {
+	    order[i] = i;
+	}
+	for (int i=sections - 1; i > 0; i--) {
+	    int j = random.nextInt(i + 1);
+	    int temp = order[i];
+	    order[i] = order[j];
+	    order[j] = temp;
+	}
+	int rva = 0x1000, raw = 0x400;
+	for (int i=0; i < sections; i++) {
+	    int pages = 1 + random.nextInt(16);
+	    int rawSize = 0x200 * (1 + random.nextInt(8 * pages));
+	    int offset = tableOffset + 40 * order[i];
+	    buff.put(offset, (byte)'.');
+	    buff.put(offset + 1, (byte)('a' + i % 26));
+	    buff.putInt(offset + 8, random.nextInt(8) == 0 ? 0 : pages * 0x1000 - random.nextInt(0x1000));
+	    buff.putInt(offset + 12, rva);
+	    buff.putInt(offset + 16, rawSize);
+	    buff.putInt(offset + 20, raw);
+	    rva += pages * 0x1000;
+	    raw += rawSize;
+	}
+	return buff;
+    }
+}
@@ -0,0 +1,64 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the AGPL 3.0 license available at http://www.joval.org/agpl_v3.txt
+
+package jpe.test;
+
+import java.io.File;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import jpe.header.Header;
+import jpe.intf.IScanHandler;
+import jpe.resource.version.VsVersionInfo;
+import jpe.scan.BatchScanner;
+import jsaf.intf.io.IFile;
+import jsaf.intf.system.ISession;
+import jsaf.provider.unix.system.UnixSession;
+
+/**
+ * Batch scanning usage example. Prints the product version of every PE file beneath a directory.
+ *
+ * Usage: Scan dir [threads]
+ */
+public class Scan {
+    public static void main(String[] argv) throws Exception {
+	ISession session = new UnixSession(new File(System.getProperty("user.home")));
+	if (session.connect()) {
+	    BatchScanner scanner = null;
+	    if (argv.length > 1) {
+		scanner = new BatchScanner(Integer.parseInt(argv[1]));
+	    } else {
+		scanner = new BatchScanner();
+	    }
+	    scanner.setLazy(true);
+	    final AtomicInteger ok = new AtomicInteger(0), failed = new AtomicInteger(0);
+	    long start = System.currentTimeMillis();
+	    IFile dir = session.getFilesystem().getFile(argv[0]);
+	    scanner.scan(dir, Pattern.compile("(?i)\\.(exe|dll|sys|ocx)$"), new IScanHandler() {
+		public void handle(IFile file, Header header) {
+		    ok.incrementAndGet();
+		    String version = null;
+		    VsVersionInfo versionInfo = header.getVersionInfo();
+		    if (versionInfo != null) {
+			Hashtable<String, String> stringTable = versionInfo.getStringTable(VsVersionInfo.LANGID_KEY);
+			if (stringTable != null) {
+			    version = stringTable.get("ProductVersion");
+			}
+		    }
+		    System.out.println(file.getPath() + ": " + version);
+		}
+
+		public void error(String path, Exception e) {
+		    failed.incrementAndGet();
+		    System.out.println(path + ": " + e.getMessage());
+		}
+	    });
+	    long elapsed = System.currentTimeMillis() - start;
+	    System.out.println("Parsed " + ok.get() + " files, " + failed.get() + " errors, in " + elapsed + "ms using " +
+			       scanner.getThreadCount() + " threads");
+	    scanner.shutdown();
+	    session.dispose();
+	}
+    }
+}
@@ -6,15 +6,23 @@ package jsaf;
 import java.io.File;
 import java.util.Timer;
 
+import jsaf.util.Scheduler;
+
 /**
  * This class is used to retrieve JSAF-wide resources, like the location of the JSAF workspace directory, and the
- * JSAF event system timer.
+ * JSAF task scheduler.
  *
  * @author David A. Solin
  * @version %I% %G%
  */
 public class JSAFSystem {
+    /**
+     * The number of threads used by the shared Scheduler.
+     */
+    private static final int SCHEDULER_THREADS = Math.min(4, Math.max(2, Runtime.getRuntime().availableProcessors()));
+
     private static Timer timer;
+    private static Scheduler scheduler;
     private static File dataDir = null;
 
     static {
@@ -32,13 +40,29 @@ public class JSAFSystem {
 	    File homeDir = new File(System.getProperty("user.home"));
 	    dataDir = new File(homeDir, ".jSAF");
 	}
-	timer = new Timer("jSAF system timer", true);
+	scheduler = new Scheduler("jSAF scheduler", SCHEDULER_THREADS);
     }
 
     /**
-     * Retrieve the daemon Timer used for scheduled jSAF tasks.
+     * Retrieve the shared Scheduler used for timed jSAF tasks, such as timeouts and progress monitors.
+     *
+     * @since 1.1
      */
-    public static Timer getTimer() {
+    public static Scheduler getScheduler() {
+	return scheduler;
+    }
+
+    /**
+     * Retrieve a daemon Timer. jSAF itself no longer schedules any tasks on this Timer, which is created the first time
+     * it is requested.
+     *
+     * @deprecated use getScheduler() instead
+     */
+    @Deprecated
+    public static synchronized Timer getTimer() {
+	if (timer == null) {
+	    timer = new Timer("jSAF system timer", true);
+	}
 	return timer;
     }
 
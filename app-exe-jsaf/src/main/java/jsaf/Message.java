@@ -41,9 +41,13 @@ public enum Message {
     ERROR_EXCEPTION,
     ERROR_FACTORY_CLASS,
     ERROR_FACTORY_INITIALIZER,
+    ERROR_FS_CACHE_LOCKED,
+    ERROR_FS_CACHE_TTL,
     ERROR_FS_LSTAT,
     ERROR_FS_SEARCH,
+    ERROR_FS_SEARCH_ENTRY,
     ERROR_FS_SEARCH_LINE,
+    ERROR_FS_SEARCH_LOOP,
     ERROR_GROUP_SUBGROUP,
     ERROR_GROUP_USER,
     ERROR_IO,
@@ -59,6 +63,8 @@ public enum Message {
     ERROR_PROCESS_RUNNING,
     ERROR_PROCESS_STOPPED,
     ERROR_PROTOCOL,
+    ERROR_SERIALIZER_STRING,
+    ERROR_SERIALIZER_VERSION,
     ERROR_SESSION_CREDENTIAL_PASSWORD,
     ERROR_SESSION_INTEGRITY,
     ERROR_UNIX_FLAVOR,
@@ -98,6 +104,8 @@ public enum Message {
     STATUS_PROCESS_RETRY,
     STATUS_PROCESS_START,
     STATUS_SESSION_DISPOSE,
+    STATUS_SHELL_WORKER_EXIT,
+    STATUS_SHELL_WORKER_SPAWN,
     STATUS_UPN_CONVERT,
     STATUS_WINDOWS_BITNESS,
     STATUS_WINREG_VALINSTANCE,
@@ -27,6 +27,58 @@ public interface IFilesystem extends ILoggable {
      */
     String PROP_CACHE_JDBM = "fs.cache.useJDBM";
 
+    /**
+     * Property governing whether a JDBM-backed filesystem cache should persist between sessions (true), or be discarded
+     * when the session is disposed (false). Has no effect unless PROP_CACHE_JDBM is true and PROP_CACHE_TTL is positive,
+     * so that entries carried over from an earlier session eventually expire. If the persistent cache for the host is
+     * already open in another process, a temporary cache is used instead.
+     *
+     * @since 1.1
+     */
+    String PROP_CACHE_PERSISTENT = "fs.cache.persistent";
+
+    /**
+     * Property specifying the maximum age (in milliseconds) of an entry in the filesystem cache (memory-backed, or
+     * persistent JDBM-backed). Older entries are discarded and re-fetched. If unset (or 0), entries never expire.
+     *
+     * @since 1.1
+     */
+    String PROP_CACHE_TTL = "fs.cache.ttl";
+
+    /**
+     * Property specifying the maximum number of files, and also the maximum number of search results, held in a
+     * memory-backed filesystem cache. The least-recently-used entries are evicted first. If unset, the default is 250000.
+     * Set to a negative value for no limit.
+     *
+     * @since 1.1
+     */
+    String PROP_CACHE_MAX_ENTRIES = "fs.cache.maxEntries";
+
+    /**
+     * Property specifying the approximate memory budget (in bytes) of each memory-backed filesystem cache. If unset
+     * (or 0), only the entry limit applies.
+     *
+     * @since 1.1
+     */
+    String PROP_CACHE_MAX_MEMORY = "fs.cache.maxMemory";
+
+    /**
+     * Property governing whether writes to a JDBM-backed filesystem cache are staged in memory and applied to disk in
+     * batches by a background thread (true), or applied synchronously (false). Has no effect unless PROP_CACHE_JDBM is
+     * true.
+     *
+     * @since 1.1
+     */
+    String PROP_CACHE_WRITE_BEHIND = "fs.cache.writeBehind";
+
+    /**
+     * Property governing the page size (in bytes) of the read buffer used by IRandomAccess instances opened in mode "r".
+     * If unset, the default is 4096. Set to a negative value to disable buffering.
+     *
+     * @since 1.1
+     */
+    String PROP_RA_PAGE_SIZE = "fs.randomAccess.pageSize";
+
     /**
      * Condition field for a type (i.e., file/directory/link).
      *
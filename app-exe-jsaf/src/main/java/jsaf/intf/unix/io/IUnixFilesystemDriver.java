@@ -57,6 +57,15 @@ public interface IUnixFilesystemDriver extends ILoggable {
      */
     public String getStatCommand(String path);
 
+    /**
+     * Returns a command that reads paths from stdin, one per line, and whose output can be fed into the nextFileInfo
+     * method, to return file information for each of the paths. However many paths are supplied, the command runs only a
+     * few processes (splitting them among invocations as xargs sees fit). At least one path must be supplied.
+     *
+     * @since 1.1
+     */
+    public String getStatCommand();
+
     /**
      * Generate a UnixFileInfo based on the output from the Stat command.  The lines iterator may contain output
      * representing one or more stat commands, but this method is expected to retrieve only the very next FileInfo.
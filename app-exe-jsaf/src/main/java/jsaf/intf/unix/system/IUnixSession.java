@@ -29,6 +29,15 @@ public interface IUnixSession extends ISession {
      */
     String PROP_SUDO_READ_MAXLEN = "elevate.read.maxlen";
 
+    /**
+     * Property indicating the maximum number of persistent shell processes used to run commands, which saves starting a
+     * new process for every command. Commands issued while all the workers are busy run in new processes, as do all
+     * commands when this property is negative.
+     *
+     * @since 1.1
+     */
+    String PROP_SHELL_WORKERS = "shell.workers";
+
     /**
      * Root username.
      *
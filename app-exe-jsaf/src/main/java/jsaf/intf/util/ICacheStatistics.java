@@ -0,0 +1,41 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.intf.util;
+
+/**
+ * An interface for reporting the effectiveness of a cache.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public interface ICacheStatistics {
+    /**
+     * The number of lookups that found a live entry.
+     *
+     * @since 1.1
+     */
+    long getHits();
+
+    /**
+     * The number of lookups that did not find a live entry.
+     *
+     * @since 1.1
+     */
+    long getMisses();
+
+    /**
+     * The number of entries removed by the cache to enforce its size, memory or age limits.
+     *
+     * @since 1.1
+     */
+    long getEvictions();
+
+    /**
+     * The number of entries currently in the cache.
+     *
+     * @since 1.1
+     */
+    int size();
+}
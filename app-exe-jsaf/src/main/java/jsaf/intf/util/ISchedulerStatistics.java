@@ -0,0 +1,48 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.intf.util;
+
+/**
+ * An interface for reporting the load on a task scheduler.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public interface ISchedulerStatistics {
+    /**
+     * The number of tasks currently waiting in the scheduler's queue.
+     *
+     * @since 1.1
+     */
+    int getQueueDepth();
+
+    /**
+     * The number of tasks that were cancelled before they ran.
+     *
+     * @since 1.1
+     */
+    long getCancelledTasks();
+
+    /**
+     * The number of task executions that began more than LATE_THRESHOLD milliseconds after they were due.
+     *
+     * @since 1.1
+     */
+    long getLateFirings();
+
+    /**
+     * The greatest delay, in milliseconds, between the time a task was due and the time it began to run.
+     *
+     * @since 1.1
+     */
+    long getMaxLateness();
+
+    /**
+     * The number of milliseconds past its due time, after which a task execution is counted as late.
+     *
+     * @since 1.1
+     */
+    long LATE_THRESHOLD = 1000L;
+}
@@ -0,0 +1,46 @@
+// Copyright (C) 2012 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.intf.util;
+
+import java.util.List;
+
+/**
+ * An ISearchable that can deliver its results one at a time, as they are found, rather than all at once in a Collection.
+ * The memory required by a streaming search does not depend on the number of results, and processing of the first result
+ * can begin while the search is still under way.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public interface IStreamingSearchable<T> extends ISearchable<T> {
+    /**
+     * Recursively search for elements matching the given conditions, passing each one to the handler as it is found.
+     * The method returns when the search is complete, or when the handler has cancelled it.
+     *
+     * @param conditions a list of search conditions.
+     *
+     * @return true if the search ran to completion, false if it was cancelled by the handler
+     *
+     * @since 1.1
+     */
+    boolean search(List<ICondition> conditions, IResultHandler<T> handler) throws Exception;
+
+    /**
+     * An interface for receiving the results of a streaming search. The handler is never invoked concurrently by the
+     * same search.
+     *
+     * @since 1.1
+     */
+    public interface IResultHandler<T> {
+	/**
+	 * Handle a search result.
+	 *
+	 * @return true to continue the search, or false to cancel it
+	 *
+	 * @since 1.1
+	 */
+	boolean handle(T result);
+    }
+}
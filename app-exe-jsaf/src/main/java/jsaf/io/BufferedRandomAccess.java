@@ -0,0 +1,205 @@
+// Copyright (c) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+import jsaf.Message;
+import jsaf.intf.io.IRandomAccess;
+
+/**
+ * An IRandomAccess decorator that reads the underlying IRandomAccess one page at a time.  Single-byte and small reads
+ * are served from the current page, and seeking within the page does not discard it, so byte-at-a-time decoders (like
+ * LittleEndian.readSzUTF16LEString) do not incur one underlying read per byte.
+ *
+ * Pages are aligned on multiples of the page size.  Reads of a page or more that miss the current page bypass the buffer.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class BufferedRandomAccess implements IRandomAccess {
+    /**
+     * The page size used when none is specified, in bytes.
+     *
+     * @since 1.1
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    private IRandomAccess ra;
+    private byte[] page;
+    private long pageStart;
+    private int pageLen;
+    private long pos;
+    private long hits, misses, bytesRead;
+
+    /**
+     * Create a buffered IRandomAccess using the default page size.
+     *
+     * @since 1.1
+     */
+    public BufferedRandomAccess(IRandomAccess ra) throws IOException {
+	this(ra, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Create a buffered IRandomAccess.
+     *
+     * @param pageSize the size of the read-ahead window, in bytes
+     *
+     * @since 1.1
+     */
+    public BufferedRandomAccess(IRandomAccess ra, int pageSize) throws IllegalArgumentException, IOException {
+	if (pageSize <= 0) {
+	    throw new IllegalArgumentException(Integer.toString(pageSize));
+	}
+	this.ra = ra;
+	page = new byte[pageSize];
+	pageStart = 0;
+	pageLen = 0;
+	pos = ra.getFilePointer();
+	hits = 0;
+	misses = 0;
+	bytesRead = 0;
+    }
+
+    /**
+     * Get the number of read operations that were served from the current page.
+     *
+     * @since 1.1
+     */
+    public long getHits() {
+	return hits;
+    }
+
+    /**
+     * Get the number of read operations that required reading from the underlying IRandomAccess.
+     *
+     * @since 1.1
+     */
+    public long getMisses() {
+	return misses;
+    }
+
+    /**
+     * Get the total number of bytes read from the underlying IRandomAccess.
+     *
+     * @since 1.1
+     */
+    public long getBytesRead() {
+	return bytesRead;
+    }
+
+    @Override
+    public String toString() {
+	StringBuffer sb = new StringBuffer("BufferedRandomAccess: pageSize=").append(page.length);
+	sb.append(", hits=").append(hits).append(", misses=").append(misses).append(", bytesRead=").append(bytesRead);
+	return sb.toString();
+    }
+
+    // Implement IRandomAccess
+
+    public void readFully(byte[] buff) throws IOException {
+	int offset = 0;
+	while (offset < buff.length) {
+	    int len = read(buff, offset, buff.length - offset);
+	    if (len == -1) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	    }
+	    offset += len;
+	}
+    }
+
+    public void close() throws IOException {
+	page = null;
+	pageLen = 0;
+	ra.close();
+    }
+
+    public void seek(long pos) throws IOException {
+	if (pos < 0) {
+	    throw new IOException(Long.toString(pos));
+	}
+	this.pos = pos;
+    }
+
+    public int read() throws IOException {
+	if (inPage(pos)) {
+	    hits++;
+	} else {
+	    misses++;
+	    if (!fill(pos)) {
+		return -1;
+	    }
+	}
+	return page[(int)(pos++ - pageStart)] & 0xFF;
+    }
+
+    public int read(byte[] buff) throws IOException {
+	return read(buff, 0, buff.length);
+    }
+
+    public int read(byte[] buff, int offset, int len) throws IOException {
+	if (len == 0) {
+	    return 0;
+	}
+	if (inPage(pos)) {
+	    hits++;
+	} else if (len >= page.length) {
+	    //
+	    // Large reads go directly to the underlying IRandomAccess, leaving the current page intact.
+	    //
+	    misses++;
+	    ra.seek(pos);
+	    int n = ra.read(buff, offset, len);
+	    if (n > 0) {
+		bytesRead += n;
+		pos += n;
+	    }
+	    return n;
+	} else {
+	    misses++;
+	    if (!fill(pos)) {
+		return -1;
+	    }
+	}
+	int n = Math.min(len, (int)(pageStart + pageLen - pos));
+	System.arraycopy(page, (int)(pos - pageStart), buff, offset, n);
+	pos += n;
+	return n;
+    }
+
+    public long length() throws IOException {
+	return ra.length();
+    }
+
+    public long getFilePointer() throws IOException {
+	return pos;
+    }
+
+    // Private
+
+    private boolean inPage(long offset) {
+	return offset >= pageStart && offset < pageStart + pageLen;
+    }
+
+    /**
+     * Read the page containing the specified offset.  Returns false if the offset is at or beyond the end of the file.
+     */
+    private boolean fill(long offset) throws IOException {
+	pageStart = offset - (offset % page.length);
+	pageLen = 0;
+	ra.seek(pageStart);
+	while (pageLen < page.length) {
+	    int n = ra.read(page, pageLen, page.length - pageLen);
+	    if (n <= 0) {
+		break;
+	    }
+	    pageLen += n;
+	    bytesRead += n;
+	}
+	return inPage(offset);
+    }
+}
@@ -7,6 +7,7 @@ import java.io.EOFException;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import jsaf.intf.io.IRandomAccess;
 
@@ -101,6 +102,27 @@ public class LittleEndian {
 	return (short)((buff[offset] & 0xFF) | ((buff[offset + 1] & 0xFF) << 8));
     }
 
+    /**
+     * Get an unsigned 2-byte short from an absolute index in a ByteBuffer, irrespective of the buffer's byte order.
+     *
+     * @since 1.1
+     */
+    public static final short getUShort(ByteBuffer buff, int offset) {
+	return (short)((buff.get(offset) & 0xFF) | ((buff.get(offset + 1) & 0xFF) << 8));
+    }
+
+    /**
+     * Read an unsigned 2-byte short from the current position of a ByteBuffer.
+     *
+     * @since 1.1
+     */
+    public static final short readUShort(ByteBuffer buff) throws IOException {
+	checkRemaining(buff, 2);
+	short s = getUShort(buff, buff.position());
+	buff.position(buff.position() + 2);
+	return s;
+    }
+
     /**
      * Read a signed 2-byte short.
      *
@@ -163,6 +185,30 @@ public class LittleEndian {
 		((buff[offset + 3] & 0xFF) << 24);
     }
 
+    /**
+     * Get an unsigned 4-byte int from an absolute index in a ByteBuffer, irrespective of the buffer's byte order.
+     *
+     * @since 1.1
+     */
+    public static final int getUInt(ByteBuffer buff, int offset) {
+	return  (buff.get(offset) & 0xFF)             |
+		((buff.get(offset + 1) & 0xFF) << 8)  |
+		((buff.get(offset + 2) & 0xFF) << 16) |
+		((buff.get(offset + 3) & 0xFF) << 24);
+    }
+
+    /**
+     * Read an unsigned 4-byte int from the current position of a ByteBuffer.
+     *
+     * @since 1.1
+     */
+    public static final int readUInt(ByteBuffer buff) throws IOException {
+	checkRemaining(buff, 4);
+	int i = getUInt(buff, buff.position());
+	buff.position(buff.position() + 4);
+	return i;
+    }
+
     /**
      * Read a signed 4-byte int (AKA DWORD).
      *
@@ -234,6 +280,13 @@ public class LittleEndian {
 	return (long)getUInt(buff, offset) + (((long)getUInt(buff, offset + 4)) << 32);
     }
 
+    /**
+     * @since 1.1
+     */
+    public static final long getULong(ByteBuffer buff, int offset) {
+	return (long)getUInt(buff, offset) + (((long)getUInt(buff, offset + 4)) << 32);
+    }
+
     /**
      * Read a signed 8-byte Long.
      *
@@ -342,6 +395,56 @@ public class LittleEndian {
 	return getSzUTF16LEString(buff, 0, len);
     }
 
+    /**
+     * Read a null-terminated UTF16LE string from the current position of a ByteBuffer, leaving the position just past
+     * the terminating null.
+     *
+     * @since 1.1
+     */
+    public static final String readSzUTF16LEString(ByteBuffer buff) throws IOException {
+	int start = buff.position();
+	int end = start;
+	while (true) {
+	    if (end + 2 > buff.limit()) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	    } else if (buff.get(end) == 0 && buff.get(end + 1) == 0) {
+		break; // Reached the null!
+	    }
+	    end += 2;
+	}
+	ByteBuffer str = buff.duplicate();
+	str.limit(end);
+	buff.position(end + 2);
+	return StringTools.UTF16LE.decode(str).toString();
+    }
+
+    /**
+     * Return a view of the next len bytes of the ByteBuffer, and advance its position past them. No data is copied.
+     *
+     * @since 1.1
+     */
+    public static final ByteBuffer readSlice(ByteBuffer buff, int len) throws IOException {
+	checkRemaining(buff, len);
+	ByteBuffer slice = buff.slice();
+	slice.limit(len);
+	buff.position(buff.position() + len);
+	return slice;
+    }
+
+    /**
+     * Set the position of a ByteBuffer, using a file-style long offset.
+     *
+     * @throws EOFException if the position lies beyond the end of the buffer
+     *
+     * @since 1.1
+     */
+    public static final void seek(ByteBuffer buff, long pos) throws IOException {
+	if (pos < 0 || pos > buff.limit()) {
+	    throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	}
+	buff.position((int)pos);
+    }
+
     /**
      * Get a byte[] padding to 32-bit align within the buffer from the offset.
      *
@@ -384,4 +487,29 @@ public class LittleEndian {
 	ra.readFully(buff);
 	return buff;
     }
+
+    /**
+     * Create a buffer and read into it in order to align the position of a ByteBuffer to a 32-bit alignment.
+     *
+     * @since 1.1
+     */
+    public static final byte[] read32BitAlignPadding(ByteBuffer buff) throws IOException {
+	int mod = buff.position() % 4;
+	int paddingLen = 0;
+	if (mod > 0) {
+	    paddingLen = 4 - mod;
+	}
+	checkRemaining(buff, paddingLen);
+	byte[] padding = new byte[paddingLen];
+	buff.get(padding);
+	return padding;
+    }
+
+    // Private
+
+    private static void checkRemaining(ByteBuffer buff, int len) throws EOFException {
+	if (buff.remaining() < len) {
+	    throw new EOFException(Message.getMessage(Message.ERROR_EOF));
+	}
+    }
 }
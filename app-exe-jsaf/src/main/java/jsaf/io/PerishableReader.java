@@ -15,10 +15,10 @@ import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.cal10n.LocLogger;
 
@@ -33,6 +33,9 @@ import jsaf.util.StringTools;
  * expire.  Instances are periodically checked to see if they've been blocking on a read operation beyond the set expiration
  * timeout.  In that event, the underlying stream is closed so that the blocking Thread can continue.
  *
+ * All the armed instances are checked by a single shared watchdog task, which runs every WATCHDOG_INTERVAL milliseconds.
+ * A successful read merely records the time of the activity, so the read path does not touch the timer.
+ *
  * @author David A. Solin
  * @version %I% %G%
  */
@@ -57,14 +60,21 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
 	return reader;
     }
 
+    /**
+     * The size of the read-ahead buffer.
+     */
+    static final int BUFFER_SIZE = 8192;
+
     protected InputStream in;
     protected boolean isEOF;
     protected Buffer buffer;
     protected LocLogger logger;
 
-    private boolean closed, expired;
-    private long timeout;
-    private TimerTask task;
+    private boolean closed;
+    private volatile boolean expired;
+    private AtomicBoolean armed = new AtomicBoolean(false);
+    private volatile long timeout, lastActivity;
+    private volatile Thread reader;
     private StackTraceElement[] trace;
 
     // Implement ILoggable
@@ -94,7 +104,7 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
 
     @Override
     public synchronized int available() throws IOException {
-	return in.available();
+	return (buffer.len - buffer.pos) + (isEOF ? 0 : in.available());
     }
 
     @Override
@@ -125,36 +135,38 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
     }
 
     public synchronized String readLine(Charset charset) throws IOException {
-	ByteArrayOutputStream buff = new ByteArrayOutputStream();
-	String result = null;
-	int ch = 0;
-	while(result == null && (ch = read()) != -1) {
-	    switch(ch) {
-	      case '\n':
-		result = new String(buff.toByteArray(), charset);
-		break;
-
-	      case '\r':
-		setCheckpoint(1);
-		if (read() != '\n') {
-		    restoreCheckpoint();
+	Chunks line = null;
+	while (buffer.hasNext() || fill()) {
+	    int start = buffer.pos;
+	    int end = buffer.indexOf('\n', '\r');
+	    if (end == -1) {
+		if (line == null) {
+		    line = new Chunks();
 		}
-		result = new String(buff.toByteArray(), charset);
-		break;
-
-	      default:
-		buff.write((byte)ch);
-		break;
+		line.append(buffer.buff, start, buffer.len - start);
+		buffer.pos = buffer.len;
+	    } else {
+		String result = null;
+		if (line == null) {
+		    result = new String(buffer.buff, start, end - start, charset);
+		} else {
+		    line.append(buffer.buff, start, end - start);
+		    result = line.toString(charset);
+		}
+		buffer.pos = end + 1;
+		if (buffer.buff[end] == '\r' && (buffer.hasNext() || fill()) && buffer.buff[buffer.pos] == '\n') {
+		    buffer.pos++;
+		}
+		return result;
 	    }
 	}
-	if (result == null) {
-	    defuse();
-	    isEOF = true;
-	    if (buff.size() > 0) {
-		result = new String(buff.toByteArray(), charset);
-	    }
+	defuse();
+	isEOF = true;
+	if (line == null || line.size() == 0) {
+	    return null;
+	} else {
+	    return line.toString(charset);
 	}
-	return result;
     }
 
     public synchronized void readFully(byte[] buff) throws IOException {
@@ -162,16 +174,15 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
     }
 
     public synchronized void readFully(byte[] buff, int offset, int len) throws IOException {
-	int end = offset + len;
-	for (int i=offset; i < end; i++) {
-	    int ch = read();
-	    if (ch == -1) {
+	while (len > 0) {
+	    int n = read(buff, offset, len);
+	    if (n == -1) {
 		defuse();
 		isEOF = true;
 		throw new EOFException(Message.getMessage(Message.ERROR_EOS));
-	    } else {
-		buff[i] = (byte)(ch & 0xFF);
 	    }
+	    offset += n;
+	    len -= n;
 	}
     }
 
@@ -209,29 +220,34 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
     }
 
     public synchronized byte[] readUntil(int delim) throws IOException {
-	int ch=0, len=0;
-	byte[] buff = new byte[512];
-	while((ch = read()) != -1 && ch != delim) {
-	    if (len == buff.length) {
-		byte[] old = buff;
-		buff = new byte[old.length + 512];
-		for (int i=0; i < old.length; i++) {
-		    buff[i] = old[i];
+	Chunks out = null;
+	while (buffer.hasNext() || fill()) {
+	    int start = buffer.pos;
+	    int end = buffer.indexOf(delim, delim);
+	    if (end == -1) {
+		if (out == null) {
+		    out = new Chunks();
+		}
+		out.append(buffer.buff, start, buffer.len - start);
+		buffer.pos = buffer.len;
+	    } else {
+		buffer.pos = end + 1;
+		if (out == null) {
+		    byte[] result = new byte[end - start];
+		    System.arraycopy(buffer.buff, start, result, 0, result.length);
+		    return result;
+		} else {
+		    out.append(buffer.buff, start, end - start);
+		    return out.toByteArray();
 		}
-		old = null;
 	    }
-	    buff[len++] = (byte)(ch & 0xFF);
 	}
-	if (ch == -1 && len == 0) {
+	if (out == null || out.size() == 0) {
 	    defuse();
 	    isEOF = true;
 	    return null;
 	} else {
-	    byte[] result = new byte[len];
-	    for (int i=0; i < len; i++) {
-		result[i] = buff[i];
-	    }
-	    return result;
+	    return out.toByteArray();
 	}
     }
 
@@ -242,48 +258,47 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
 
     @Override
     public synchronized int read(byte[] buff, int offset, int len) throws IOException {
-	int bytesRead = 0;
-	while (buffer.hasNext() && offset < buff.length) {
-	    buff[offset++] = buffer.next();
-	    bytesRead++;
+	if (len == 0) {
+	    return 0;
 	}
-	bytesRead += in.read(buff, offset, len);
-	int end = offset + bytesRead;
-	for (int i=offset; buffer.hasCapacity() && i < end; i++) {
-	    buffer.add((byte)(i & 0xFF));
+	if (!buffer.hasNext()) {
+	    if (len >= buffer.buff.length && !buffer.isMarked()) {
+		//
+		// Large reads bypass the buffer when there is no checkpoint to preserve.
+		//
+		int n = isEOF ? -1 : in.read(buff, offset, len);
+		if (n == -1) {
+		    defuse();
+		    isEOF = true;
+		} else {
+		    resetTimer();
+		}
+		return n;
+	    } else if (!fill()) {
+		return -1;
+	    }
 	}
-	resetTimer();
-	return bytesRead;
+	int n = Math.min(len, buffer.len - buffer.pos);
+	System.arraycopy(buffer.buff, buffer.pos, buff, offset, n);
+	buffer.pos += n;
+	return n;
     }
 
     @Override
     public synchronized int read() throws IOException {
-	int i = -1;
-	if (buffer.hasNext()) {
-	    i = (int)buffer.next();
-	} else if (!isEOF) {
-	    i = in.read();
-	    if (buffer.hasCapacity()) {
-		buffer.add((byte)(i & 0xFF));
-	    } else {
-		buffer.clear(); // buffer overflow
-	    }
-	}
-	if (i == -1) {
-	    defuse();
-	    isEOF = true;
+	if (buffer.hasNext() || fill()) {
+	    return buffer.next() & 0xFF;
 	} else {
-	    resetTimer();
+	    return -1;
 	}
-	return i;
     }
 
     public synchronized void setCheckpoint(int readAheadLimit) {
-	buffer.init(readAheadLimit);
+	buffer.mark(readAheadLimit);
     }
 
     public synchronized void restoreCheckpoint() throws IOException {
-	if (buffer.isEmpty()) {
+	if (!buffer.isMarked()) {
 	    throw new IOException("empty buffer");
 	}
 	buffer.reset();
@@ -291,7 +306,7 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
 
     // Implement IPerishable
 
-    public synchronized boolean checkExpired() {
+    public boolean checkExpired() {
 	return expired;
     }
 
@@ -305,22 +320,29 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
     }
 
     /**
-     * Kill the scheduled interrupt task and purge it from the timer.
+     * Stop monitoring the reader for expiration.
      */
-    public synchronized void defuse() {
-	if (task != null) {
-	    task.cancel();
-	    task = null;
+    public void defuse() {
+	if (armed.compareAndSet(true, false)) {
+	    WATCHDOG.remove(this);
 	}
-	JSAFSystem.getTimer().purge();
     }
 
     // Protected
 
-    protected synchronized void resetTimer() {
-	defuse();
-	task = new InterruptTask(Thread.currentThread());
-	JSAFSystem.getTimer().schedule(task, timeout);
+    /**
+     * Restart the expiration clock, and arrange for the current thread to be interrupted if it expires. This is called
+     * after every successful read, so it only allocates or locks when the reader is not already being monitored.
+     */
+    protected void resetTimer() {
+	lastActivity = System.currentTimeMillis();
+	Thread current = Thread.currentThread();
+	if (reader != current) {
+	    reader = current;
+	}
+	if (!armed.get() && armed.compareAndSet(false, true)) {
+	    WATCHDOG.add(this);
+	}
     }
 
     // Private
@@ -341,153 +363,261 @@ public class PerishableReader extends InputStream implements IReader, IPerishabl
 	    isEOF = false;
 	    closed = false;
 	    expired = false;
-	    buffer = new Buffer(0);
+	    buffer = new Buffer(BUFFER_SIZE);
 	    logger = Message.getLogger();
 	}
 	setTimeout(timeout);
 	resetTimer();
     }
 
-    class InterruptTask extends TimerTask {
-	Thread t;
+    /**
+     * The interval, in milliseconds, at which the watchdog checks for expired readers.
+     */
+    static final long WATCHDOG_INTERVAL = 100L;
+
+    private static final Watchdog WATCHDOG = new Watchdog();
+
+    /**
+     * Returns true if the reader has been inactive for longer than its timeout.
+     */
+    boolean isOverdue(long now) {
+	return now - lastActivity > timeout;
+    }
+
+    /**
+     * Called by the watchdog when the reader appears to have been inactive for longer than its timeout. The watchdog must
+     * first win the reader's disarming, and the reader must still be overdue afterwards; if a read completed in the
+     * meantime, the reader is re-armed instead of expired.
+     */
+    void expire() {
+	if (!armed.compareAndSet(true, false)) {
+	    return; // defused
+	} else if (!isOverdue(System.currentTimeMillis())) {
+	    armed.compareAndSet(false, true);
+	    return;
+	}
+	WATCHDOG.remove(this);
+	Thread t = reader;
+	if (isEOF) {
+	    try {
+		close();
+	    } catch (IOException e) {
+	    }
+	} else if (!closed && t != null && t.isAlive()) {
+	    expired = true;
+	    t.interrupt();
+
+	    //
+	    // These can be a pain to debug, so we log the stack trace documenting the history of this reader.
+	    //
+	    StringBuffer sb = new StringBuffer();
+	    for (int i=0; i < trace.length; i++) {
+		sb.append(StringTools.LOCAL_CR);
+		if (i > 0) {
+		    sb.append("    at ");
+		}
+		sb.append(trace[i].getClassName()).append(".").append(trace[i].getMethodName());
+		if (i > 0) {
+		    sb.append(" ").append(trace[i].getFileName()).append(", line: ").append(trace[i].getLineNumber());
+		}
+	    }
+	    logger.debug(Message.WARNING_PERISHABLEIO_INTERRUPT, sb.toString());
+	}
+    }
+
+    /**
+     * A single periodic task that checks all the armed readers, replacing a timer task per reader per read.
+     */
+    static class Watchdog implements Runnable {
+	private Set<PerishableReader> readers;
+	private boolean scheduled;
+
+	Watchdog() {
+	    readers = Collections.newSetFromMap(new ConcurrentHashMap<PerishableReader, Boolean>());
+	    scheduled = false;
+	}
+
+	void add(PerishableReader reader) {
+	    readers.add(reader);
+	    if (!scheduled) {
+		schedule();
+	    }
+	}
 
-	InterruptTask(Thread t) {
-	    this.t = t;
+	/**
+	 * Stop checking a reader that has been disarmed. If the reader is re-armed concurrently (whose add may have preceded
+	 * this removal), it is put back.
+	 */
+	void remove(PerishableReader reader) {
+	    readers.remove(reader);
+	    if (reader.armed.get()) {
+		readers.add(reader);
+	    }
 	}
 
+	/**
+	 * An exception thrown by a periodic task would cancel all its future runs (and thereby the timeouts of every reader),
+	 * so any exception expiring a reader is logged, and the check moves on to the next reader.
+	 */
 	public void run() {
-	    if (PerishableReader.this.isEOF) {
+	    long now = System.currentTimeMillis();
+	    for (PerishableReader reader : readers) {
 		try {
-		    PerishableReader.this.close();
-		} catch (IOException e) {
-		}
-	    } else if (!closed && t.isAlive()) {
-		t.interrupt();
-		PerishableReader.this.expired = true;
-
-		//
-		// These can be a pain to debug, so we log the stack trace documenting the history of this reader.
-		//
-		StringBuffer sb = new StringBuffer();
-		for (int i=0; i < trace.length; i++) {
-		    sb.append(StringTools.LOCAL_CR);
-		    if (i > 0) {
-			sb.append("    at ");
+		    if (reader.armed.get() && reader.isOverdue(now)) {
+			reader.expire();
 		    }
-		    sb.append(trace[i].getClassName()).append(".").append(trace[i].getMethodName());
-		    if (i > 0) {
-			sb.append(" ").append(trace[i].getFileName()).append(", line: ").append(trace[i].getLineNumber());
+		} catch (RuntimeException e) {
+		    try {
+			reader.logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+		    } catch (RuntimeException e2) {
 		    }
 		}
-		logger.debug(Message.WARNING_PERISHABLEIO_INTERRUPT, sb.toString());
 	    }
-	    JSAFSystem.getTimer().purge();
+	}
+
+	// Private
+
+	private synchronized void schedule() {
+	    if (!scheduled) {
+		JSAFSystem.getScheduler().schedule(this, WATCHDOG_INTERVAL, WATCHDOG_INTERVAL);
+		scheduled = true;
+	    }
 	}
     }
 
-    protected class Buffer {
-	byte[] buff = null;
+    /**
+     * Read more data from the stream into the buffer. Returns false at the end of the stream.
+     */
+    private boolean fill() throws IOException {
+	if (isEOF) {
+	    return false;
+	}
+	int n = buffer.fill(in);
+	if (n == -1) {
+	    defuse();
+	    isEOF = true;
+	    return false;
+	} else {
+	    resetTimer();
+	    return true;
+	}
+    }
+
+    /**
+     * The read-ahead buffer. Data between the checkpoint (markPos) and the read position is retained, so that the reader
+     * can be rewound to the checkpoint, as long as no more than markLimit bytes have been read since it was set.
+     */
+    protected static class Buffer {
+	byte[] buff;
 	int pos = 0;
 	int len = 0;
-	int resetPos = 0;
+	int markPos = -1;
+	int markLimit = 0;
 
-	public Buffer(int size) {
-	    init(size);
+	Buffer(int size) {
+	    buff = new byte[size];
 	}
 
 	@Override
 	public String toString() {
-	    if (buff == null) {
-		return "Buffer empty";
-	    }
-	    return "Buffer size: " + buff.length + " pos: " + pos + " len: " + len +
+	    return "Buffer size: " + buff.length + " pos: " + pos + " len: " + len + " mark: " + markPos +
 		 " Ahead: \"" + new String(buff, pos, len - pos) + "\"" + " hasNext: " + hasNext();
 	}
 
-	void init(int size) {
-	    if (hasNext()) {
-		//
-		// If the stream is already reading from inside the buffer, then don't lose the buffered data.
-		//
-		if (pos + size > len) {
-		    byte[] temp = buff;
-		    buff = new byte[size + pos];
-		    len = len - pos;
-		    System.arraycopy(temp, pos, buff, 0, len);
-		    pos = 0;
-		    resetPos = 0;
-		}
-	    } else {
-		buff = new byte[size];
-		len = 0;
-		pos = 0;
-		resetPos = 0;
-	    }
+	boolean hasNext() {
+	    return pos < len;
 	}
 
-	public boolean isEmpty() {
-	    return buff == null;
+	byte next() {
+	    return buff[pos++];
 	}
 
-	public void clear() throws IllegalStateException {
-	    if (hasNext()) {
-		throw new IllegalStateException(Integer.toString(len - pos));
-	    } else if (buff != null) {
-		buff = null;
-	    }
+	boolean isMarked() {
+	    return markPos >= 0;
 	}
 
-	public void reset() {
-	    pos = resetPos;
+	void mark(int limit) {
+	    markPos = pos;
+	    markLimit = limit;
 	}
 
-	public boolean hasNext() {
-	    return buff != null && pos < len;
+	void reset() {
+	    pos = markPos;
 	}
 
-	public byte next() throws NoSuchElementException {
-	    if (hasNext()) {
-		return buff[pos++];
-	    } else {
-		throw new NoSuchElementException();
+	/**
+	 * Find the first occurrence of either byte in the unread part of the buffer. Returns -1 if neither is present.
+	 */
+	int indexOf(int b1, int b2) {
+	    byte c1 = (byte)b1, c2 = (byte)b2;
+	    for (int i=pos; i < len; i++) {
+		byte b = buff[i];
+		if (b == c1 || b == c2) {
+		    return i;
+		}
+	    }
+	    return -1;
+	}
+
+	/**
+	 * Read from the stream into the buffer, which must be fully consumed. Returns the number of bytes read, or -1.
+	 */
+	int fill(InputStream in) throws IOException {
+	    if (markPos < 0) {
+		pos = 0;
+	    } else if (pos >= buff.length) {
+		if (markPos > 0) {
+		    int keep = pos - markPos;
+		    System.arraycopy(buff, markPos, buff, 0, keep);
+		    pos = keep;
+		    markPos = 0;
+		} else if (buff.length >= markLimit) {
+		    markPos = -1; // read past the limit, so the checkpoint is lost
+		    pos = 0;
+		} else {
+		    byte[] temp = new byte[Math.min(buff.length * 2, Math.max(markLimit, buff.length + 1))];
+		    System.arraycopy(buff, 0, temp, 0, pos);
+		    buff = temp;
+		}
 	    }
+	    len = pos;
+	    int n = in.read(buff, pos, buff.length - pos);
+	    if (n > 0) {
+		len += n;
+	    }
+	    return n == 0 ? -1 : n;
 	}
+    }
 
-	public boolean hasCapacity() {
-	    return buff != null && len < buff.length;
+    /**
+     * Accumulates the bytes of a result that spans several buffer fills.
+     */
+    static class Chunks {
+	private byte[] data = new byte[256];
+	private int size = 0;
+
+	void append(byte[] b, int offset, int length) {
+	    if (size + length > data.length) {
+		byte[] temp = new byte[Math.max(data.length * 2, size + length)];
+		System.arraycopy(data, 0, temp, 0, size);
+		data = temp;
+	    }
+	    System.arraycopy(b, offset, data, size, length);
+	    size += length;
 	}
 
-	public void add(int ch) {
-	    add((byte)(ch & 0xFF));
+	int size() {
+	    return size;
 	}
 
-	public void add(byte b) {
-	    if (hasNext()) {
-		//
-		// A delayed add: insert the byte before the active part of the buffer
-		//
-		if (!hasCapacity()) {
-		    init(buff.length + 1);
-		}
-		int ahead = len - pos;
-		for (int i=len; i > pos; i--) {
-		    buff[i] = buff[i-1];
-		}
-		len++;
-		buff[pos++] = b;
-	    } else if (hasCapacity()) {
-		buff[len++] = b;
-		pos = len;
-	    } else {
-		clear();
-	    }
+	byte[] toByteArray() {
+	    byte[] result = new byte[size];
+	    System.arraycopy(data, 0, result, 0, size);
+	    return result;
 	}
 
-	public void add(byte[] bytes, int offset, int length) {
-	    int end = Math.min(bytes.length, (offset + length));
-	    for (int i=offset; i < end; i++) {
-		add(bytes[i]);
-	    }
+	String toString(Charset charset) {
+	    return new String(data, 0, size, charset);
 	}
     }
 }
@@ -10,6 +10,7 @@ import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashSet;
 import java.util.Vector;
@@ -52,6 +53,17 @@ public class StreamTool {
 	}
     }
 
+    /**
+     * Dump the remaining contents of a ByteBuffer, without disturbing its position.
+     *
+     * @since 1.1
+     */
+    public static final void hexDump(ByteBuffer buff, PrintStream out) {
+	byte[] bytes = new byte[buff.remaining()];
+	buff.duplicate().get(bytes);
+	hexDump(bytes, out);
+    }
+
     /**
      * Read from the stream until the buffer is full.
      *
@@ -11,17 +11,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.security.AccessControlException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -29,11 +33,14 @@ import jdbm.RecordManager;
 import jdbm.RecordManagerFactory;
 import jdbm.RecordManagerOptions;
 import jdbm.btree.BTree;
+import jdbm.helper.ByteArraySerializer;
+import jdbm.helper.DefaultSerializer;
 import jdbm.helper.Serializer;
 import jdbm.helper.StringComparator;
 import jdbm.helper.Tuple;
 import jdbm.helper.TupleBrowser;
 import jsaf.Message;
+import jsaf.io.BufferedRandomAccess;
 import jsaf.intf.io.IFile;
 import jsaf.intf.io.IFileEx;
 import jsaf.intf.io.IFileMetadata;
@@ -42,7 +49,9 @@ import jsaf.intf.io.IRandomAccess;
 import jsaf.intf.system.IEnvironment;
 import jsaf.intf.system.ISession;
 import jsaf.intf.unix.system.IUnixSession;
+import jsaf.intf.util.ICacheStatistics;
 import jsaf.intf.util.IProperty;
+import jsaf.util.BoundedCache;
 import jsaf.util.StringTools;
 
 import org.slf4j.cal10n.LocLogger;
@@ -62,6 +71,28 @@ public abstract class AbstractFilesystem implements IFilesystem {
 	 */
 	public static int MAX_GUESSES = 100;
 
+	/**
+	 * File name prefix for persistent JDBM cache files in the session workspace.
+	 */
+	private static final String PERSISTENT_PREFIX = "persist_";
+
+	/**
+	 * File name prefix for the lock file held by the process that has a persistent JDBM cache open. (It must not begin
+	 * with the dbkey of the cache, or it would be deleted along with the cache files.)
+	 */
+	private static final String LOCK_PREFIX = "lock_";
+
+	/**
+	 * The lock files held by this JVM. A file lock is held on behalf of the whole JVM, and closing any channel to the
+	 * file can release it, so a lock file must never be opened twice.
+	 */
+	private static final Set<String> LOCKED = new HashSet<String>();
+
+	/**
+	 * Record manager name of the tree in a persistent JDBM cache.
+	 */
+	private static final String TREE_NAME = "tree";
+
 	protected boolean autoExpand = true;
 	protected IProperty props;
 	protected ISession session;
@@ -80,17 +111,20 @@ public abstract class AbstractFilesystem implements IFilesystem {
 		env = session.getEnvironment();
 
 		if (session.getProperties().getBooleanProperty(IFilesystem.PROP_CACHE_JDBM)) {
+			if (props.getBooleanProperty(IFilesystem.PROP_CACHE_PERSISTENT)) {
+				createPersistentCaches(dbkey);
+			}
 			try {
-				fscache = new JDBMCache<IFile>(dbkey + "_files", 10000, getFileSerializer(this));
-				searchcache = new JDBMCache<String[]>(dbkey + "_searches", 5, null);
+				if (fscache == null) {
+					fscache = new JDBMCache<IFile>(dbkey + "_files", 10000, getFileSerializer(this));
+					searchcache = new JDBMCache<String[]>(dbkey + "_searches", 5, null);
+				}
 			} catch (IOException e) {
 				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
-				fscache = new HashMap<String, IFile>();
-				searchcache = new HashMap<String, String[]>();
+				createMemoryCaches();
 			}
 		} else {
-			fscache = new HashMap<String, IFile>();
-			searchcache = new HashMap<String, String[]>();
+			createMemoryCaches();
 		}
 	}
 
@@ -279,6 +313,24 @@ public abstract class AbstractFilesystem implements IFilesystem {
 		return searchcache;
 	}
 
+	/**
+	 * Get statistics for the file cache, or null if the cache is JDBM-backed.
+	 *
+	 * @since 1.1
+	 */
+	public ICacheStatistics getFileCacheStatistics() {
+		return fscache instanceof ICacheStatistics ? (ICacheStatistics) fscache : null;
+	}
+
+	/**
+	 * Get statistics for the search cache, or null if the cache is JDBM-backed.
+	 *
+	 * @since 1.1
+	 */
+	public ICacheStatistics getSearchCacheStatistics() {
+		return searchcache instanceof ICacheStatistics ? (ICacheStatistics) searchcache : null;
+	}
+
 	protected IFile createFileFromInfo(IFileMetadata info, IFile.Flags flags) {
 		return new DefaultFile(info, flags);
 	}
@@ -376,43 +428,131 @@ public abstract class AbstractFilesystem implements IFilesystem {
 
 	/**
 	 * A JDBM-backed implementation of the cache Map.
+	 *
+	 * Values are stored in the tree as byte arrays, each consisting of the time at which the entry was stored followed by
+	 * the serialized value, so that the presence of a key can be determined without deserializing its value. (A BTree
+	 * persists its own value serializer using Java serialization, which would lose the serializer's reference to this
+	 * filesystem.) In persistent mode, the record manager and its tree are re-opened by name from the files left in the
+	 * workspace by a previous session, and are not deleted on dispose.
+	 *
+	 * In write-behind mode (see IFilesystem.PROP_CACHE_WRITE_BEHIND), puts and removes are staged in memory, and a
+	 * background thread applies them to the tree in sorted batches, each followed by a commit. Reads consult the staged
+	 * changes first.
 	 */
 	public class JDBMCache<T> implements Map<String, T> {
+		/**
+		 * The maximum number of staged changes, beyond which puts wait for the writer to catch up.
+		 */
+		static final int MAX_STAGED = 20000;
+
+		/**
+		 * The maximum interval between batches, in milliseconds.
+		 */
+		static final long FLUSH_INTERVAL = 1000L;
+
+		/**
+		 * The number of changes applied to the tree in each acquisition of the tree lock, so that reads are not held up
+		 * for the duration of a whole batch.
+		 */
+		static final int APPLY_CHUNK = 500;
+
+		/**
+		 * Staged value marking a removed key.
+		 */
+		private final Object REMOVED = new Object();
+
 		private RecordManager recman;
 		private String dbkey;
 		private BTree tree;
-		private BTree index;
 		private int writes = 0;
 		private int commitThreshold = 1000;
+		private boolean persistent = false;
+		private long ttl = 0;
+		private Serializer serializer;
+		private Object treeLock = new Object();
+		private Map<String, Object> staging, flushing;
+		private Writer writer;
+		private String lockPath;
+		private RandomAccessFile lockFile;
+		private FileLock lock;
 
 		JDBMCache(String dbkey, int commitThreshold, Serializer serializer) throws IOException {
 			this.dbkey = dbkey;
 			this.commitThreshold = commitThreshold;
+			this.serializer = serializer == null ? DefaultSerializer.INSTANCE : serializer;
 			cleanFiles();
-			String basename = new File(session.getWorkspace(), dbkey).toString();
-			Properties props = new Properties();
-			props.setProperty(RecordManagerOptions.CACHE_TYPE, RecordManagerOptions.NORMAL_CACHE);
-			props.setProperty(RecordManagerOptions.DISABLE_TRANSACTIONS, "true");
-			recman = RecordManagerFactory.createRecordManager(basename, props);
-			tree = BTree.createInstance(recman, new StringComparator(), null, serializer);
-			index = BTree.createInstance(recman, new StringComparator());
+			open();
+			startWriter();
+		}
+
+		/**
+		 * Create a persistent cache.
+		 *
+		 * @param ttl the maximum age of an entry, in milliseconds, or 0 for no expiration
+		 */
+		JDBMCache(String dbkey, int commitThreshold, Serializer serializer, long ttl) throws IOException {
+			this.dbkey = dbkey;
+			this.commitThreshold = commitThreshold;
+			this.serializer = serializer == null ? DefaultSerializer.INSTANCE : serializer;
+			this.ttl = ttl;
+			persistent = true;
+			lock();
+			try {
+				try {
+					open();
+				} catch (IOException e) {
+					//
+					// The files may have been left in an inconsistent state, e.g., by a crash. Start over.
+					//
+					logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+					try {
+						recman.close();
+					} catch (Exception e2) {
+					}
+					cleanFiles();
+					open();
+				}
+			} catch (IOException e) {
+				unlock();
+				throw e;
+			}
+			startWriter();
 		}
 
 		void dispose() throws IOException {
-			recman.delete(tree.getRecid());
-			recman.commit();
-			recman.close();
-			cleanFiles();
+			if (writer != null) {
+				writer.shutdown();
+			}
+			synchronized (treeLock) {
+				if (persistent) {
+					try {
+						recman.commit();
+						recman.close();
+					} finally {
+						unlock();
+					}
+				} else {
+					recman.delete(tree.getRecid());
+					recman.commit();
+					recman.close();
+					cleanFiles();
+				}
+			}
 		}
 
 		// Implement Map
 
 		public boolean containsKey(Object key) {
+			synchronized (this) {
+				Object staged = getStaged(key);
+				if (staged != null) {
+					return staged != REMOVED;
+				}
+			}
 			try {
-				//
-				// Using a separate tree for the index prevents a deserialization infinite loop.
-				//
-				return index.find(key) != null;
+				synchronized (treeLock) {
+					return findLive(key) != null;
+				}
 			} catch (IOException e) {
 				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 			}
@@ -420,12 +560,15 @@ public abstract class AbstractFilesystem implements IFilesystem {
 		}
 
 		public boolean containsValue(Object value) {
+			flush();
 			try {
-				Tuple t = new Tuple();
-				TupleBrowser iter = tree.browse();
-				while (iter.getNext(t)) {
-					if (t.getValue().equals(value)) {
-						return true;
+				synchronized (treeLock) {
+					Tuple t = new Tuple();
+					TupleBrowser iter = tree.browse();
+					while (iter.getNext(t)) {
+						if (value.equals(decode((byte[]) t.getValue()))) {
+							return true;
+						}
 					}
 				}
 			} catch (IOException e) {
@@ -435,10 +578,23 @@ public abstract class AbstractFilesystem implements IFilesystem {
 		}
 
 		public T get(Object key) {
+			synchronized (this) {
+				Object staged = getStaged(key);
+				if (staged != null) {
+					if (staged == REMOVED) {
+						return null;
+					}
+					@SuppressWarnings("unchecked")
+					T result = (T) staged;
+					return result;
+				}
+			}
 			try {
-				@SuppressWarnings("unchecked")
-				T result = (T) tree.find(key);
-				return result;
+				byte[] data = null;
+				synchronized (treeLock) {
+					data = findLive(key);
+				}
+				return decode(data);
 			} catch (IOException e) {
 				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 			}
@@ -449,13 +605,26 @@ public abstract class AbstractFilesystem implements IFilesystem {
 			return size() == 0;
 		}
 
+		/**
+		 * In write-behind mode, the previous value is only returned if it had not yet been written to the tree.
+		 */
 		public T put(String key, T value) {
-			try {
+			if (writer != null) {
+				Object staged = stage(key, value);
+				if (staged == null || staged == REMOVED) {
+					return null;
+				}
 				@SuppressWarnings("unchecked")
-				T result = (T) tree.insert(key, value, true);
-				index.insert(key, "", false);
-				wrote();
+				T result = (T) staged;
 				return result;
+			}
+			try {
+				byte[] data = encode(value);
+				synchronized (treeLock) {
+					T result = decode((byte[]) tree.insert(key, data, true));
+					wrote();
+					return result;
+				}
 			} catch (IOException e) {
 				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 			}
@@ -463,32 +632,55 @@ public abstract class AbstractFilesystem implements IFilesystem {
 		}
 
 		public void putAll(Map<? extends String, ? extends T> m) {
+			if (writer != null) {
+				for (Map.Entry<? extends String, ? extends T> entry : m.entrySet()) {
+					stage(entry.getKey(), entry.getValue());
+				}
+				return;
+			}
 			try {
+				Map<String, byte[]> batch = new TreeMap<String, byte[]>();
 				for (Map.Entry<? extends String, ? extends T> entry : m.entrySet()) {
-					tree.insert(entry.getKey(), entry.getValue(), true);
-					index.insert(entry.getKey(), "", true);
+					batch.put(entry.getKey(), encode(entry.getValue()));
+				}
+				synchronized (treeLock) {
+					for (Map.Entry<String, byte[]> entry : batch.entrySet()) {
+						tree.insert(entry.getKey(), entry.getValue(), true);
+					}
+					wrote();
 				}
-				wrote();
 			} catch (IOException e) {
 				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 			}
 		}
 
 		public T remove(Object key) {
-			try {
-				@SuppressWarnings("unchecked")
-				T result = (T) tree.remove(key);
-				index.remove(key);
-				wrote();
+			T result = get(key);
+			if (writer != null) {
+				stage((String) key, REMOVED);
 				return result;
+			}
+			try {
+				synchronized (treeLock) {
+					if (tree.find(key) != null) {
+						tree.remove(key);
+						wrote();
+					}
+				}
 			} catch (IOException e) {
 				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 			}
-			return null;
+			return result;
 		}
 
+		/**
+		 * Staged changes are applied before the tree is counted.
+		 */
 		public int size() {
-			return index.size();
+			flush();
+			synchronized (treeLock) {
+				return tree.size();
+			}
 		}
 
 		public void clear() {
@@ -509,6 +701,179 @@ public abstract class AbstractFilesystem implements IFilesystem {
 
 		// Private
 
+		/**
+		 * Take an exclusive lock on the database files, so that no other process (sharing the workspace) can open them.
+		 *
+		 * @throws IOException if the files are locked by another process
+		 */
+		private void lock() throws IOException {
+			File f = new File(session.getWorkspace(), LOCK_PREFIX + dbkey);
+			synchronized (LOCKED) {
+				if (!LOCKED.add(f.getCanonicalPath())) {
+					throw new IOException(Message.getMessage(Message.ERROR_FS_CACHE_LOCKED, dbkey));
+				}
+			}
+			lockPath = f.getCanonicalPath();
+			try {
+				lockFile = new RandomAccessFile(f, "rw");
+				lock = lockFile.getChannel().tryLock();
+			} catch (OverlappingFileLockException e) {
+				// locked through some other channel in this JVM
+			} finally {
+				if (lock == null) {
+					unlock();
+				}
+			}
+			if (lock == null) {
+				throw new IOException(Message.getMessage(Message.ERROR_FS_CACHE_LOCKED, dbkey));
+			}
+		}
+
+		/**
+		 * Release the lock taken by lock(), if any.
+		 */
+		private void unlock() {
+			try {
+				if (lock != null) {
+					lock.release();
+				}
+				if (lockFile != null) {
+					lockFile.close();
+				}
+			} catch (IOException e) {
+				logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+			}
+			lock = null;
+			lockFile = null;
+			if (lockPath != null) {
+				synchronized (LOCKED) {
+					LOCKED.remove(lockPath);
+				}
+				lockPath = null;
+			}
+		}
+
+		/**
+		 * Open the named tree in an existing database, or create it.
+		 */
+		private void open() throws IOException {
+			String basename = new File(session.getWorkspace(), dbkey).toString();
+			Properties props = new Properties();
+			props.setProperty(RecordManagerOptions.CACHE_TYPE, RecordManagerOptions.NORMAL_CACHE);
+			props.setProperty(RecordManagerOptions.DISABLE_TRANSACTIONS, "true");
+			recman = RecordManagerFactory.createRecordManager(basename, props);
+			long recid = persistent ? recman.getNamedObject(TREE_NAME) : 0;
+			if (recid == 0) {
+				tree = BTree.createInstance(recman, new StringComparator(), null, new ByteArraySerializer());
+				if (persistent) {
+					recman.setNamedObject(TREE_NAME, tree.getRecid());
+				}
+			} else {
+				tree = BTree.load(recman, recid);
+			}
+			recman.commit();
+		}
+
+		/**
+		 * Start the writer thread, if write-behind mode is configured.
+		 */
+		private void startWriter() {
+			if (props.getBooleanProperty(IFilesystem.PROP_CACHE_WRITE_BEHIND)) {
+				staging = new HashMap<String, Object>();
+				writer = new Writer();
+				writer.start();
+			}
+		}
+
+		/**
+		 * Find a staged value (or REMOVED), in either the staging map or the batch being flushed. Must be called while
+		 * synchronized on this.
+		 */
+		private Object getStaged(Object key) {
+			if (writer == null) {
+				return null;
+			}
+			Object staged = staging.get(key);
+			if (staged == null && flushing != null) {
+				staged = flushing.get(key);
+			}
+			return staged;
+		}
+
+		/**
+		 * Stage a change, waiting for the writer if too many changes are already staged. Returns the change that was
+		 * previously staged for the key, if any.
+		 */
+		private synchronized Object stage(String key, Object value) {
+			while (staging.size() >= MAX_STAGED && writer.isAlive()) {
+				notifyAll();
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+			Object staged = staging.put(key, value);
+			if (staging.size() >= commitThreshold) {
+				notifyAll();
+			}
+			return staged;
+		}
+
+		/**
+		 * Synchronously apply all the staged changes to the tree.
+		 */
+		private void flush() {
+			if (writer != null) {
+				writer.flush();
+			}
+		}
+
+		/**
+		 * Find the stored data for a key, discarding it if it has expired. Must be called while synchronized on the tree
+		 * lock.
+		 */
+		private byte[] findLive(Object key) throws IOException {
+			byte[] data = (byte[]) tree.find(key);
+			if (data != null && ttl > 0 && (System.currentTimeMillis() - getLong(data)) > ttl) {
+				tree.remove(key);
+				wrote();
+				data = null;
+			}
+			return data;
+		}
+
+		private byte[] encode(T value) throws IOException {
+			byte[] serialized = serializer.serialize(value);
+			byte[] data = new byte[8 + serialized.length];
+			long now = System.currentTimeMillis();
+			for (int i = 0; i < 8; i++) {
+				data[i] = (byte) (now >>> (56 - 8 * i));
+			}
+			System.arraycopy(serialized, 0, data, 8, serialized.length);
+			return data;
+		}
+
+		private T decode(byte[] data) throws IOException {
+			if (data == null) {
+				return null;
+			}
+			byte[] serialized = new byte[data.length - 8];
+			System.arraycopy(data, 8, serialized, 0, serialized.length);
+			@SuppressWarnings("unchecked")
+			T result = (T) serializer.deserialize(serialized);
+			return result;
+		}
+
+		private long getLong(byte[] data) {
+			long l = 0;
+			for (int i = 0; i < 8; i++) {
+				l = (l << 8) | (data[i] & 0xFF);
+			}
+			return l;
+		}
+
 		private void cleanFiles() throws IOException {
 			for (File f : session.getWorkspace().listFiles()) {
 				if (f.getName().startsWith(dbkey)) {
@@ -528,6 +893,124 @@ public abstract class AbstractFilesystem implements IFilesystem {
 				writes = 0;
 			}
 		}
+
+		/**
+		 * The write-behind thread, which periodically takes the staged changes and applies them to the tree.
+		 */
+		class Writer extends Thread {
+			private boolean running = true;
+			private Object flushLock = new Object();
+
+			Writer() {
+				super("jSAF cache writer " + dbkey);
+				setDaemon(true);
+			}
+
+			/**
+			 * Stop the thread, after it has applied all the staged changes.
+			 */
+			void shutdown() {
+				synchronized (JDBMCache.this) {
+					running = false;
+					JDBMCache.this.notifyAll();
+				}
+				try {
+					join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				flush();
+			}
+
+			/**
+			 * Apply the staged changes on the calling thread.
+			 */
+			void flush() {
+				synchronized (flushLock) {
+					Map<String, Object> batch = null;
+					synchronized (JDBMCache.this) {
+						if (staging.size() == 0) {
+							return;
+						}
+						batch = new TreeMap<String, Object>(staging);
+						flushing = staging;
+						staging = new HashMap<String, Object>();
+						JDBMCache.this.notifyAll();
+					}
+					try {
+						apply(batch);
+					} finally {
+						synchronized (JDBMCache.this) {
+							flushing = null;
+						}
+					}
+				}
+			}
+
+			@Override
+			public void run() {
+				while (true) {
+					synchronized (JDBMCache.this) {
+						if (running && staging.size() < commitThreshold) {
+							try {
+								JDBMCache.this.wait(FLUSH_INTERVAL);
+							} catch (InterruptedException e) {
+								running = false;
+							}
+						}
+						if (!running) {
+							break;
+						}
+					}
+					flush();
+				}
+			}
+
+			/**
+			 * Serialize a sorted batch of changes, then apply it to the tree in chunks, and commit.
+			 */
+			private void apply(Map<String, Object> batch) {
+				List<String> keys = new ArrayList<String>(batch.size());
+				List<byte[]> values = new ArrayList<byte[]>(batch.size());
+				for (Map.Entry<String, Object> entry : batch.entrySet()) {
+					byte[] data = null;
+					if (entry.getValue() != REMOVED) {
+						try {
+							@SuppressWarnings("unchecked")
+							T value = (T) entry.getValue();
+							data = encode(value);
+						} catch (IOException e) {
+							logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+							continue;
+						}
+					}
+					keys.add(entry.getKey());
+					values.add(data);
+				}
+				try {
+					for (int i = 0; i < keys.size(); i += APPLY_CHUNK) {
+						synchronized (treeLock) {
+							int end = Math.min(keys.size(), i + APPLY_CHUNK);
+							for (int j = i; j < end; j++) {
+								String key = keys.get(j);
+								byte[] data = values.get(j);
+								if (data != null) {
+									tree.insert(key, data, true);
+								} else if (tree.find(key) != null) {
+									tree.remove(key);
+								}
+							}
+						}
+					}
+					synchronized (treeLock) {
+						recman.commit();
+						writes = 0;
+					}
+				} catch (IOException e) {
+					logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+				}
+			}
+		}
 	}
 
 	/**
@@ -719,7 +1202,16 @@ public abstract class AbstractFilesystem implements IFilesystem {
 			if ("rw".equals(mode) && flags != IFile.Flags.READWRITE) {
 				throw new AccessControlException("Method: getRandomAccess, Mode: " + mode + ", Flags: " + flags);
 			}
-			return getAccessor().getRandomAccess(mode);
+			IRandomAccess ra = getAccessor().getRandomAccess(mode);
+			if ("r".equals(mode)) {
+				int pageSize = props.getIntProperty(PROP_RA_PAGE_SIZE);
+				if (pageSize == 0) {
+					return new BufferedRandomAccess(ra);
+				} else if (pageSize > 0) {
+					return new BufferedRandomAccess(ra, pageSize);
+				}
+			}
+			return ra;
 		}
 
 		public String[] list() throws IOException {
@@ -953,10 +1445,76 @@ public abstract class AbstractFilesystem implements IFilesystem {
 	private Map<String, IFile> fscache;
 	private Map<String, String[]> searchcache;
 
+	/**
+	 * Default maximum number of entries in a memory-backed cache.
+	 */
+	private static final int DEFAULT_MAX_ENTRIES = 250000;
+
+	/**
+	 * Estimated memory used by an IFile and its metadata, apart from its path.
+	 */
+	private static final int FILE_OVERHEAD = 400;
+
+	/**
+	 * Open the persistent JDBM caches. Entries that outlive the session must expire, so this is only done if a positive
+	 * PROP_CACHE_TTL is configured. If the caches are unavailable (e.g., because another process has them open), the
+	 * caches are left null.
+	 */
+	private void createPersistentCaches(String dbkey) {
+		long ttl = props.getLongProperty(IFilesystem.PROP_CACHE_TTL);
+		if (ttl <= 0) {
+			logger.warn(Message.ERROR_FS_CACHE_TTL, IFilesystem.PROP_CACHE_TTL);
+			return;
+		}
+		String prefix = PERSISTENT_PREFIX + session.getHostname().replaceAll("[^A-Za-z0-9.-]", "_") + "_";
+		JDBMCache<IFile> files = null;
+		try {
+			files = new JDBMCache<IFile>(prefix + dbkey + "_files", 10000, getFileSerializer(this), ttl);
+			searchcache = new JDBMCache<String[]>(prefix + dbkey + "_searches", 5, null, ttl);
+			fscache = files;
+		} catch (IOException e) {
+			logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+			if (files != null) {
+				try {
+					files.dispose();
+				} catch (IOException e2) {
+					logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e2);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create the bounded memory-backed caches, configured by the session properties.
+	 */
+	private void createMemoryCaches() {
+		int maxEntries = props.getIntProperty(PROP_CACHE_MAX_ENTRIES);
+		if (maxEntries == 0) {
+			maxEntries = DEFAULT_MAX_ENTRIES;
+		} else if (maxEntries < 0) {
+			maxEntries = 0;
+		}
+		long maxAge = props.getLongProperty(PROP_CACHE_TTL);
+		long maxMemory = props.getLongProperty(PROP_CACHE_MAX_MEMORY);
+		fscache = new BoundedCache<String, IFile>(maxEntries, maxAge, maxMemory, new BoundedCache.IWeigher<String, IFile>() {
+			public long weigh(String path, IFile file) {
+				return FILE_OVERHEAD + 2 * path.length();
+			}
+		});
+		searchcache = new BoundedCache<String, String[]>(maxEntries, maxAge, maxMemory,
+				new BoundedCache.IWeigher<String, String[]>() {
+			public long weigh(String key, String[] paths) {
+				long weight = 2 * key.length() + 16 + 4 * paths.length;
+				for (String path : paths) {
+					weight += 40 + 2 * path.length();
+				}
+				return weight;
+			}
+		});
+	}
+
 	/**
 	 * Attempt to retrieve an IFile from the cache.
-	 *
-	 * TBD: expire objects that get too old
 	 */
 	private IFile getCache(String path) throws NoSuchElementException {
 		IFile f = fscache.get(path);
@@ -7,10 +7,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Date;
 import java.util.List;
-import java.util.TimerTask;
 import java.util.Vector;
+import java.util.concurrent.ScheduledFuture;
 
 import jsaf.JSAFSystem;
 import jsaf.Message;
@@ -103,6 +102,17 @@ public abstract class AbstractSession extends AbstractBaseSession {
 		return new JavaProcess(command, env, dir);
 	}
 
+	/**
+	 * Create a process for a command that is never given any input (i.e., whose stdin is not used), as for SafeCLI. A
+	 * session may run such commands more cheaply than the processes returned by createProcess. By default, this is the
+	 * same as createProcess.
+	 *
+	 * @since 1.1
+	 */
+	public IProcess createCommandProcess(String command, String[] env, String dir) throws Exception {
+		return createProcess(command, env, dir);
+	}
+
 	// Internal
 
 	private static final char NULL = (char) 0;
@@ -225,17 +235,14 @@ public abstract class AbstractSession extends AbstractBaseSession {
 			if (millis == 0) {
 				p.waitFor();
 			} else {
-				TimerTask task = new InterruptTask(Thread.currentThread());
-				long expires = System.currentTimeMillis() + millis;
-				JSAFSystem.getTimer().schedule(task, new Date(expires));
+				ScheduledFuture<?> task = JSAFSystem.getScheduler().schedule(new InterruptTask(Thread.currentThread()), millis);
 				InterruptedException ie = null;
 				try {
 					p.waitFor();
 				} catch (InterruptedException e) {
 					ie = e;
 				}
-				if (task.cancel()) {
-					JSAFSystem.getTimer().purge();
+				if (task.cancel(false)) {
 					if (ie != null) {
 						throw ie;
 					}
@@ -274,7 +281,7 @@ public abstract class AbstractSession extends AbstractBaseSession {
 		}
 	}
 
-	class InterruptTask extends TimerTask {
+	class InterruptTask implements Runnable {
 		Thread t;
 
 		InterruptTask(Thread t) {
@@ -0,0 +1,240 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.provider.unix.io;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jsaf.intf.io.IReader;
+import jsaf.intf.io.IReaderGobbler;
+import jsaf.intf.system.ISession;
+import jsaf.intf.unix.io.IUnixFilesystemDriver;
+import jsaf.intf.unix.system.IUnixSession;
+import jsaf.util.SafeCLI;
+import jsaf.util.StringTools;
+
+/**
+ * Retrieves Unix file information for a large number of paths, using the driver's batch stat command.
+ *
+ * The paths are divided into chunks, each of which is fed to one invocation of the command through a here-document (so
+ * the paths are read from stdin, rather than being subject to the limits on the size of a command-line). The command is
+ * run in a sub-shell, so that the here-document is the stdin of the whole pipeline. A few chunks are run concurrently, by
+ * the calling thread and threads from a shared pool.
+ *
+ * The here-document is still part of the command string, so every path is checked before it is added: it must be a single
+ * line that cannot be mistaken for the end of the here-document.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+class BatchStat {
+    /**
+     * The maximum number of paths in a chunk.
+     */
+    static final int CHUNK_PATHS = 2000;
+
+    /**
+     * The maximum size of the paths in a chunk, which keeps the command well below the (128KB, on Linux) limit on the size
+     * of a single command-line argument, in case the command is run using /bin/sh -c.
+     */
+    static final int CHUNK_BYTES = 65536;
+
+    /**
+     * The maximum number of chunks in flight at any one time.
+     */
+    static final int MAX_IN_FLIGHT = 4;
+
+    private static final String EOF = "JSAF_STAT_EOF";
+
+    private static ExecutorService pool;
+
+    private IUnixSession session;
+    private IUnixFilesystemDriver driver;
+    private ConcurrentLinkedQueue<String> chunks;
+    private Map<String, UnixFileInfo> results;
+    private Exception error;
+
+    BatchStat(IUnixSession session, IUnixFilesystemDriver driver) {
+	this.session = session;
+	this.driver = driver;
+    }
+
+    /**
+     * Verify that a path can be expressed as a line of the here-document.
+     *
+     * @throws IllegalArgumentException if the path is empty, spans more than one line, or contains a NUL character, or
+     *                                  is the here-document delimiter
+     */
+    static String checkPath(String path) throws IllegalArgumentException {
+	if (path.length() == 0 || path.indexOf('\n') != -1 || path.indexOf('\r') != -1 || path.indexOf('\0') != -1 ||
+	    path.equals(EOF)) {
+	    throw new IllegalArgumentException(path);
+	}
+	return path;
+    }
+
+    /**
+     * Stat the specified paths. Returns a Map of the file information for the paths that exist, indexed by the lower-case
+     * path.
+     *
+     * @throws IllegalArgumentException if any of the paths fails checkPath
+     */
+    synchronized Map<String, UnixFileInfo> stat(Collection<String> paths) throws Exception {
+	chunks = new ConcurrentLinkedQueue<String>();
+	results = new ConcurrentHashMap<String, UnixFileInfo>();
+	error = null;
+
+	String statCommand = driver.getStatCommand();
+	StringBuffer chunk = null;
+	int count = 0;
+	for (String path : paths) {
+	    checkPath(path);
+	    if (chunk != null && (count == CHUNK_PATHS || chunk.length() + path.length() > CHUNK_BYTES)) {
+		chunks.add(chunk.append(EOF).append("\n").toString());
+		chunk = null;
+	    }
+	    if (chunk == null) {
+		chunk = new StringBuffer("(").append(statCommand).append(") <<'").append(EOF).append("'\n");
+		count = 0;
+	    }
+	    chunk.append(path).append("\n");
+	    count++;
+	}
+	if (chunk != null) {
+	    chunks.add(chunk.append(EOF).append("\n").toString());
+	}
+
+	int n = Math.min(MAX_IN_FLIGHT, chunks.size());
+	List<Future<?>> futures = new ArrayList<Future<?>>();
+	for (int i=1; i < n; i++) {
+	    futures.add(getPool().submit(new Runner()));
+	}
+	if (n > 0) {
+	    new Runner().run();
+	}
+	for (Future<?> future : futures) {
+	    future.get();
+	}
+	if (error != null) {
+	    throw error;
+	}
+	return results;
+    }
+
+    // Private
+
+    /**
+     * The runners spend their time waiting for commands, so the pool grows as needed, and idle threads are retired.
+     */
+    private static synchronized ExecutorService getPool() {
+	if (pool == null) {
+	    pool = Executors.newCachedThreadPool(new ThreadFactory() {
+		private AtomicInteger counter = new AtomicInteger(0);
+
+		public Thread newThread(Runnable r) {
+		    Thread thread = new Thread(r, "jSAF stat " + counter.incrementAndGet());
+		    thread.setDaemon(true);
+		    return thread;
+		}
+	    });
+	}
+	return pool;
+    }
+
+    private synchronized void setError(Exception e) {
+	if (error == null) {
+	    error = e;
+	}
+    }
+
+    private synchronized boolean failed() {
+	return error != null;
+    }
+
+    /**
+     * Runs chunks until there are none left, or one of the runners has failed.
+     */
+    class Runner implements Runnable, IReaderGobbler {
+	public void run() {
+	    long timeout = session.getTimeout(ISession.Timeout.L);
+	    String cmd = null;
+	    while (!failed() && (cmd = chunks.poll()) != null) {
+		try {
+		    SafeCLI.exec(cmd, null, null, session, timeout, this, null);
+		} catch (Exception e) {
+		    setError(e);
+		}
+	    }
+	}
+
+	// Implement IReaderGobbler
+
+	/**
+	 * A retry simply stores the same results again.
+	 */
+	public void gobble(IReader reader) throws IOException {
+	    LineIterator iter = new LineIterator(reader);
+	    UnixFileInfo info = null;
+	    while ((info = (UnixFileInfo)driver.nextFileInfo(iter)) != null) {
+		if (info.getPath() != null) {
+		    results.put(info.getPath().toLowerCase(), info);
+		}
+	    }
+	    if (iter.error != null) {
+		throw iter.error;
+	    }
+	}
+    }
+
+    /**
+     * Adapts an IReader to the Iterator<String> consumed by the driver. An IOException ends the iteration, and is kept so
+     * that it can be re-thrown.
+     */
+    static class LineIterator implements Iterator<String> {
+	private IReader reader;
+	private String next;
+	IOException error;
+
+	LineIterator(IReader reader) {
+	    this.reader = reader;
+	}
+
+	public boolean hasNext() {
+	    if (next == null && error == null) {
+		try {
+		    next = reader.readLine(StringTools.UTF8);
+		} catch (IOException e) {
+		    error = e;
+		}
+	    }
+	    return next != null;
+	}
+
+	public String next() throws NoSuchElementException {
+	    if (hasNext()) {
+		String temp = next;
+		next = null;
+		return temp;
+	    } else {
+		throw new NoSuchElementException();
+	    }
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
@@ -0,0 +1,56 @@
+// Copyright (C) 2012 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.provider.unix.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the paths of the results of a search, for the search cache. The results of a streaming search are consumed by
+ * its handler as they are found, and there may be any number of them, so only up to a limit are retained. The results of
+ * a search that exceeds the limit are not cached.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+class CachedPaths {
+    /**
+     * The maximum number of paths retained for a streaming search.
+     */
+    static final int MAX_STREAMED = 10000;
+
+    private int limit, count;
+    private List<String> paths;
+
+    CachedPaths(int limit) {
+	this.limit = limit;
+	count = 0;
+	paths = new ArrayList<String>();
+    }
+
+    synchronized void add(String path) {
+	count++;
+	if (paths != null) {
+	    if (paths.size() < limit) {
+		paths.add(path);
+	    } else {
+		paths = null;
+	    }
+	}
+    }
+
+    /**
+     * Get the number of results, including any that were not retained.
+     */
+    synchronized int size() {
+	return count;
+    }
+
+    /**
+     * Get the paths of all the results, or null if there were too many to retain.
+     */
+    synchronized String[] toArray() {
+	return paths == null ? null : paths.toArray(new String[paths.size()]);
+    }
+}
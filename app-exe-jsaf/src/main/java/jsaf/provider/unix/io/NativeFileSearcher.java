@@ -0,0 +1,464 @@
+// Copyright (C) 2012 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.provider.unix.io;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+import org.slf4j.cal10n.LocLogger;
+
+import jsaf.Message;
+import jsaf.intf.io.IFile;
+import jsaf.intf.io.IFilesystem;
+import jsaf.intf.unix.io.IUnixFilesystem;
+import jsaf.intf.unix.io.IUnixFilesystemDriver;
+import jsaf.intf.unix.system.IUnixSession;
+import jsaf.intf.util.ILoggable;
+import jsaf.intf.util.ISearchable;
+import jsaf.intf.util.IStreamingSearchable;
+import jsaf.io.fs.AbstractFilesystem;
+
+/**
+ * ISearchable implementation for files on the local machine, which walks the filesystem in-process rather than running
+ * find. Each directory is listed by a separate fork-join task, so a search fans out across all the available processors.
+ *
+ * The conditions are interpreted exactly as they are by the LinuxDriver's find command, and the search cache is keyed by
+ * that command, so results are interchangeable with those of a UnixFileSearcher.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+public class NativeFileSearcher implements IStreamingSearchable<IFile>, ILoggable {
+    private static final String WILDCARD = ".*";
+    private static ForkJoinPool pool;
+
+    private IUnixFilesystemDriver driver;
+    private AbstractFilesystem fs;
+    private LocLogger logger;
+    private Map<String, String[]> cache;
+
+    public NativeFileSearcher(IUnixSession session, IUnixFilesystemDriver driver, Map<String, String[]> cache) {
+	this.driver = driver;
+	logger = session.getLogger();
+	fs = (AbstractFilesystem)session.getFilesystem();
+	this.cache = cache;
+    }
+
+    // Implement ILogger
+
+    public void setLogger(LocLogger logger) {
+	this.logger = logger;
+    }
+
+    public LocLogger getLogger() {
+	return logger;
+    }
+
+    // Implement ISearchable<IFile>
+
+    public ICondition condition(int field, int type, Object value) {
+	return new GenericCondition(field, type, value);
+    }
+
+    public String[] guessParent(Pattern p, Object... args) {
+	int index = 0;
+	for (Object arg : args) {
+	    if (index == 0) {
+		if (arg instanceof Boolean) {
+		    return fs.guessParent(p, ((Boolean)arg).booleanValue());
+		}
+	    }
+	    index++;
+	}
+	return fs.guessParent(p, false);
+    }
+
+    public Collection<IFile> search(List<ISearchable.ICondition> conditions) throws Exception {
+	final Collection<IFile> results = new ArrayList<IFile>();
+	try {
+	    search(conditions, new IResultHandler<IFile>() {
+		public boolean handle(IFile file) {
+		    results.add(file);
+		    return true;
+		}
+	    }, Integer.MAX_VALUE);
+	} catch (Exception e) {
+	    logger.warn(Message.ERROR_FS_SEARCH);
+	    logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
+	}
+	return results;
+    }
+
+    // Implement IStreamingSearchable<IFile>
+
+    /**
+     * Results are passed to the handler as the walker threads find them. Cancelling the search stops the walk. Results of
+     * a completed search are added to the search cache, unless there are more than CachedPaths.MAX_STREAMED of them.
+     */
+    public boolean search(List<ISearchable.ICondition> conditions, IResultHandler<IFile> handler) throws Exception {
+	return search(conditions, handler, CachedPaths.MAX_STREAMED);
+    }
+
+    // Private
+
+    private boolean search(List<ISearchable.ICondition> conditions, final IResultHandler<IFile> handler, int cacheLimit)
+		throws Exception {
+
+	String cmd = driver.getFindCommand(conditions);
+	String[] cached = cache.get(cmd);
+	if (cached != null) {
+	    logger.debug(Message.STATUS_FS_SEARCH_CACHED, cmd);
+	    for (String path : cached) {
+		if (!handler.handle(fs.getFile(path))) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+	logger.debug(Message.STATUS_FS_SEARCH_START, cmd);
+	final CachedPaths paths = new CachedPaths(cacheLimit);
+	boolean complete = walk(new Query(conditions), new IMatchHandler() {
+	    public synchronized boolean match(UnixFileInfo info) {
+		String path = info.getPath();
+		logger.debug(Message.STATUS_FS_SEARCH_MATCH, path);
+		paths.add(path);
+		return handler.handle(fs.createFileFromInfo(info));
+	    }
+	});
+	if (complete) {
+	    String[] results = paths.toArray();
+	    if (results != null) {
+		cache.put(cmd, results);
+	    }
+	    logger.debug(Message.STATUS_FS_SEARCH_DONE, paths.size(), cmd);
+	}
+	return complete;
+    }
+
+    /**
+     * Receives the matches of a walk. Invoked concurrently by the walker threads. Returns false to stop the walk.
+     */
+    interface IMatchHandler {
+	boolean match(UnixFileInfo info);
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+	if (pool == null) {
+	    pool = new ForkJoinPool();
+	}
+	return pool;
+    }
+
+    /**
+     * Walk the filesystem from the query's starting point, passing every match to the handler. Returns false if the walk
+     * was stopped by the handler.
+     */
+    private boolean walk(Query query, IMatchHandler handler) throws IOException {
+	Path start = Paths.get(query.from);
+	BasicFileAttributes attrs = NativeStat.readBasicAttributes(start, query.followLinks);
+	Object dev = query.xdev ? NativeStat.getDevice(start, query.followLinks) : null;
+	Walker walker = new Walker(query, handler, dev);
+	Walker.Entry root = walker.new Entry(query.from, start, attrs, 0, null);
+	walker.consider(root);
+	int descent = walker.getDescent(root);
+	if (descent != Walker.NONE && !walker.cancelled) {
+	    getPool().invoke(walker.new DirTask(root, descent == Walker.FILES));
+	}
+	return !walker.cancelled;
+    }
+
+    /**
+     * The search conditions, decoded the same way as by LinuxDriver.getFindCommand.
+     */
+    static class Query {
+	String from;
+	boolean dirOnly, followLinks, xdev;
+	Pattern path, dirname, basename;
+	String literalBasename, antiBasename, fsType;
+	int depth = ISearchable.DEPTH_UNLIMITED;
+
+	Query(List<ISearchable.ICondition> conditions) {
+	    for (ISearchable.ICondition condition : conditions) {
+		switch(condition.getField()) {
+		  case IUnixFilesystem.FIELD_FOLLOW_LINKS:
+		    followLinks = true;
+		    break;
+		  case IUnixFilesystem.FIELD_XDEV:
+		    xdev = true;
+		    break;
+		  case IFilesystem.FIELD_FILETYPE:
+		    if (IFilesystem.FILETYPE_DIR.equals(condition.getValue())) {
+			dirOnly = true;
+		    }
+		    break;
+		  case IFilesystem.FIELD_PATH:
+		    path = (Pattern)condition.getValue();
+		    break;
+		  case IFilesystem.FIELD_DIRNAME:
+		    dirname = (Pattern)condition.getValue();
+		    break;
+		  case IFilesystem.FIELD_BASENAME:
+		    switch(condition.getType()) {
+		      case ISearchable.TYPE_EQUALITY:
+			literalBasename = (String)condition.getValue();
+			break;
+		      case ISearchable.TYPE_INEQUALITY:
+			antiBasename = (String)condition.getValue();
+			break;
+		      case ISearchable.TYPE_PATTERN:
+			basename = (Pattern)condition.getValue();
+			break;
+		    }
+		    break;
+		  case IFilesystem.FIELD_FSTYPE:
+		    fsType = (String)condition.getValue();
+		    break;
+		  case ISearchable.FIELD_DEPTH:
+		    depth = ((Integer)condition.getValue()).intValue();
+		    break;
+		  case ISearchable.FIELD_FROM:
+		    from = (String)condition.getValue();
+		    break;
+		}
+	    }
+	    if (dirOnly) {
+		path = null;
+		if (dirname != null && dirname.pattern().equals(WILDCARD)) {
+		    dirname = null;
+		}
+	    }
+	}
+
+	/**
+	 * In this mode, matching files are only sought directly within directories whose paths match the dirname pattern.
+	 */
+	boolean isDirnameMode() {
+	    return !dirOnly && path == null && dirname != null;
+	}
+
+	boolean matchBasename(String name) {
+	    if (basename != null) {
+		return basename.pattern().equals(WILDCARD) || basename.matcher(name).find();
+	    } else if (antiBasename != null) {
+		return !antiBasename.equals(name);
+	    } else if (literalBasename != null) {
+		return literalBasename.equals(name);
+	    } else {
+		return true;
+	    }
+	}
+    }
+
+    /**
+     * The state of a single walk.
+     */
+    class Walker {
+	private Query query;
+	private IMatchHandler handler;
+	private Object rootDev;
+	private Map<Object, String> fsTypes;
+	volatile boolean cancelled = false;
+
+	Walker(Query query, IMatchHandler handler, Object rootDev) {
+	    this.query = query;
+	    this.handler = handler;
+	    this.rootDev = rootDev;
+	    fsTypes = new ConcurrentHashMap<Object, String>();
+	}
+
+	/**
+	 * Test an entry against the query, and pass it to the handler if it matches.
+	 */
+	void consider(Entry entry) throws IOException {
+	    if (query.dirOnly) {
+		if (entry.isDirectory() && checkFsType(entry) &&
+		    (query.dirname == null || query.dirname.matcher(entry.path).matches())) {
+		    emit(entry);
+		}
+	    } else if (query.path != null) {
+		if (checkFsType(entry) &&
+		    (query.path.pattern().equals(WILDCARD) || query.path.matcher(entry.path).matches())) {
+		    emit(entry);
+		}
+	    } else if (query.isDirnameMode()) {
+		if (entry.isDirectory()) {
+		    entry.dirMatched = checkFsType(entry) && query.dirname.matcher(entry.path).find();
+		} else if (entry.parent != null && entry.parent.dirMatched && entry.attrs.isRegularFile() &&
+			   query.matchBasename(entry.getName())) {
+		    emit(entry);
+		}
+	    } else if (entry.attrs.isRegularFile() && checkFsType(entry) &&
+		       query.matchBasename(entry.getName())) {
+		emit(entry);
+	    }
+	}
+
+	static final int NONE	= 0;
+	static final int FILES	= 1;
+	static final int ALL	= 2;
+
+	/**
+	 * Determine whether the walk should list the children of an entry: NONE, FILES (only to consider the files directly
+	 * within a matching directory) or ALL.
+	 */
+	int getDescent(Entry entry) throws IOException {
+	    if (!entry.isDirectory()) {
+		return NONE;
+	    } else if ((query.depth == ISearchable.DEPTH_UNLIMITED || entry.depth < query.depth) &&
+		       !(query.xdev && !rootDev.equals(entry.getDevice()))) {
+		return ALL;
+	    } else if (entry.dirMatched) {
+		//
+		// The depth and mount restrictions apply to the directory search, not to the search for files within the
+		// matching directories.
+		//
+		return FILES;
+	    } else {
+		return NONE;
+	    }
+	}
+
+	// Private
+
+	private void emit(Entry entry) throws IOException {
+	    if (!cancelled && !handler.match(NativeStat.stat(entry.path, entry.file, query.followLinks))) {
+		cancelled = true;
+	    }
+	}
+
+	private boolean checkFsType(Entry entry) throws IOException {
+	    if (query.fsType == null) {
+		return true;
+	    }
+	    Object dev = entry.getDevice();
+	    String type = fsTypes.get(dev);
+	    if (type == null) {
+		type = Files.getFileStore(entry.file).type();
+		fsTypes.put(dev, type);
+	    }
+	    return query.fsType.equals(type);
+	}
+
+	/**
+	 * A file encountered during the walk.
+	 */
+	class Entry {
+	    String path;
+	    Path file;
+	    BasicFileAttributes attrs;
+	    int depth;
+	    Entry parent;
+	    boolean dirMatched = false;
+	    private Object dev;
+
+	    Entry(String path, Path file, BasicFileAttributes attrs, int depth, Entry parent) {
+		this.path = path;
+		this.file = file;
+		this.attrs = attrs;
+		this.depth = depth;
+		this.parent = parent;
+	    }
+
+	    boolean isDirectory() {
+		return attrs.isDirectory();
+	    }
+
+	    Object getDevice() throws IOException {
+		if (dev == null) {
+		    dev = NativeStat.getDevice(file, query.followLinks);
+		}
+		return dev;
+	    }
+
+	    String getName() {
+		return file.getFileName() == null ? path : file.getFileName().toString();
+	    }
+
+	    /**
+	     * When following links, a directory that is also an ancestor of itself would lead to an infinite walk.
+	     */
+	    boolean isLoop() {
+		Object key = attrs.fileKey();
+		for (Entry e = parent; key != null && e != null; e = e.parent) {
+		    if (key.equals(e.attrs.fileKey())) {
+			return true;
+		    }
+		}
+		return false;
+	    }
+	}
+
+	/**
+	 * Lists a directory, considering each of its children, and forking a new task for each subdirectory.
+	 */
+	class DirTask extends RecursiveAction {
+	    private static final long serialVersionUID = 1L;
+
+	    private Entry dir;
+	    private boolean filesOnly;
+
+	    DirTask(Entry dir, boolean filesOnly) {
+		this.dir = dir;
+		this.filesOnly = filesOnly;
+	    }
+
+	    protected void compute() {
+		List<DirTask> subtasks = new ArrayList<DirTask>();
+		DirectoryStream<Path> stream = null;
+		try {
+		    stream = Files.newDirectoryStream(dir.file);
+		    String prefix = dir.path.endsWith(IUnixFilesystem.DELIM_STR) ? dir.path : dir.path + IUnixFilesystem.DELIM_STR;
+		    for (Path child : stream) {
+			if (cancelled) {
+			    return;
+			}
+			String childPath = prefix + child.getFileName().toString();
+			try {
+			    BasicFileAttributes attrs = NativeStat.readBasicAttributes(child, query.followLinks);
+			    Entry entry = new Entry(childPath, child, attrs, dir.depth + 1, dir);
+			    if (filesOnly && entry.isDirectory()) {
+				continue;
+			    }
+			    consider(entry);
+			    int descent = filesOnly ? NONE : getDescent(entry);
+			    if (descent != NONE) {
+				if (query.followLinks && entry.isLoop()) {
+				    logger.debug(Message.ERROR_FS_SEARCH_LOOP, childPath);
+				} else {
+				    subtasks.add(new DirTask(entry, descent == FILES));
+				}
+			    }
+			} catch (IOException e) {
+			    logger.debug(Message.ERROR_FS_SEARCH_ENTRY, childPath, e.getMessage());
+			}
+		    }
+		} catch (IOException e) {
+		    logger.debug(Message.ERROR_FS_SEARCH_ENTRY, dir.path, e.getMessage());
+		} finally {
+		    if (stream != null) {
+			try {
+			    stream.close();
+			} catch (IOException e) {
+			}
+		    }
+		}
+		if (!cancelled) {
+		    invokeAll(subtasks);
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,197 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.provider.unix.io;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Date;
+import java.util.Map;
+
+import jsaf.intf.io.IFileMetadata;
+import jsaf.intf.unix.io.IUnixFileInfo;
+
+/**
+ * Reads Unix file metadata in-process, using the "unix" attribute view of java.nio.file, instead of forking a find command
+ * for every file. The resulting UnixFileInfo is identical to what the LinuxDriver produces from find -printf output: the
+ * type and permissions are taken from the lstat mode, the link target is the raw (unresolved) contents of the link, and
+ * times have millisecond precision.
+ *
+ * The "unix" view is only provided by JVMs running on Unix platforms, so isAvailable() should be checked before use.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+class NativeStat {
+    private static final String ATTRIBUTES = "unix:mode,uid,gid,size,lastAccessTime,lastModifiedTime,ctime";
+    private static final LinkOption[] NOFOLLOW = {LinkOption.NOFOLLOW_LINKS};
+
+    private static final int S_IFMT	= 0170000;
+    private static final int S_IFSOCK	= 0140000;
+    private static final int S_IFLNK	= 0120000;
+    private static final int S_IFBLK	= 0060000;
+    private static final int S_IFDIR	= 0040000;
+    private static final int S_IFCHR	= 0020000;
+    private static final int S_IFIFO	= 0010000;
+    private static final int S_ISUID	= 04000;
+    private static final int S_ISGID	= 02000;
+    private static final int S_ISVTX	= 01000;
+
+    private static Boolean available = null;
+
+    /**
+     * Determine whether the JVM supports the unix attribute view.
+     */
+    static synchronized boolean isAvailable() {
+	if (available == null) {
+	    try {
+		available = Boolean.valueOf(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+	    } catch (Exception e) {
+		available = Boolean.FALSE;
+	    }
+	}
+	return available.booleanValue();
+    }
+
+    /**
+     * Stat a file, without following links.
+     *
+     * @throws FileNotFoundException if there is no file at the path
+     */
+    static UnixFileInfo stat(String path) throws IOException {
+	Path p = Paths.get(path);
+	try {
+	    return toInfo(path, p, Files.readAttributes(p, ATTRIBUTES, NOFOLLOW));
+	} catch (NoSuchFileException e) {
+	    throw new FileNotFoundException(path);
+	}
+    }
+
+    /**
+     * Stat a file. If follow is true, the target of a link is examined, unless the link is broken, in which case the link
+     * itself is examined (as with find -L).
+     */
+    static UnixFileInfo stat(String path, Path p, boolean follow) throws IOException {
+	if (follow) {
+	    try {
+		return toInfo(path, p, Files.readAttributes(p, ATTRIBUTES));
+	    } catch (NoSuchFileException e) {
+	    }
+	}
+	return toInfo(path, p, Files.readAttributes(p, ATTRIBUTES, NOFOLLOW));
+    }
+
+    /**
+     * Read the basic attributes of a file, which are considerably cheaper to obtain than the unix attributes. Links are
+     * treated the same way as by stat(String, Path, boolean).
+     */
+    static BasicFileAttributes readBasicAttributes(Path p, boolean follow) throws IOException {
+	if (follow) {
+	    try {
+		return Files.readAttributes(p, BasicFileAttributes.class);
+	    } catch (NoSuchFileException e) {
+	    }
+	}
+	return Files.readAttributes(p, BasicFileAttributes.class, NOFOLLOW);
+    }
+
+    /**
+     * Get the ID of the device containing the file.
+     */
+    static Object getDevice(Path p, boolean follow) throws IOException {
+	if (follow) {
+	    try {
+		return Files.getAttribute(p, "unix:dev");
+	    } catch (NoSuchFileException e) {
+	    }
+	}
+	return Files.getAttribute(p, "unix:dev", NOFOLLOW);
+    }
+
+    // Private
+
+    private static UnixFileInfo toInfo(String path, Path p, Map<String, Object> attrs) throws IOException {
+	int mode = ((Integer)attrs.get("mode")).intValue();
+	char unixType = getUnixType(mode);
+	IFileMetadata.Type type = IFileMetadata.Type.FILE;
+	String linkPath = null;
+	switch(unixType) {
+	  case IUnixFileInfo.DIR_TYPE:
+	    type = IFileMetadata.Type.DIRECTORY;
+	    break;
+
+	  case IUnixFileInfo.LINK_TYPE:
+	    type = IFileMetadata.Type.LINK;
+	    linkPath = Files.readSymbolicLink(p).toString();
+	    break;
+	}
+
+	//
+	// find prints IDs as unsigned values; the LinuxDriver maps those that overflow an int (e.g., 4294967294) to -1.
+	//
+	int uid = ((Integer)attrs.get("uid")).intValue();
+	int gid = ((Integer)attrs.get("gid")).intValue();
+	long length = ((Long)attrs.get("size")).longValue();
+	Date atime = toDate(attrs.get("lastAccessTime"));
+	Date mtime = toDate(attrs.get("lastModifiedTime"));
+	Date ctime = toDate(attrs.get("ctime"));
+	return new UnixFileInfo(type, path, linkPath, ctime, mtime, atime, length, unixType, getPermissions(mode),
+				uid < 0 ? -1 : uid, gid < 0 ? -1 : gid, null, null);
+    }
+
+    private static Date toDate(Object obj) {
+	return obj == null ? null : new Date(((FileTime)obj).toMillis());
+    }
+
+    private static char getUnixType(int mode) {
+	switch(mode & S_IFMT) {
+	  case S_IFDIR:
+	    return IUnixFileInfo.DIR_TYPE;
+	  case S_IFLNK:
+	    return IUnixFileInfo.LINK_TYPE;
+	  case S_IFIFO:
+	    return IUnixFileInfo.FIFO_TYPE;
+	  case S_IFBLK:
+	    return IUnixFileInfo.BLOCK_TYPE;
+	  case S_IFCHR:
+	    return IUnixFileInfo.CHAR_TYPE;
+	  case S_IFSOCK:
+	    return IUnixFileInfo.SOCK_TYPE;
+	  default:
+	    return IUnixFileInfo.FILE_TYPE;
+	}
+    }
+
+    /**
+     * Format the permission bits of the mode the way ls (and find %M) does, less the leading file type character.
+     */
+    private static String getPermissions(int mode) {
+	char[] perms = new char[9];
+	perms[0] = (mode & 0400) == 0 ? '-' : 'r';
+	perms[1] = (mode & 0200) == 0 ? '-' : 'w';
+	perms[2] = special(mode & 0100, mode & S_ISUID, 's');
+	perms[3] = (mode & 040) == 0 ? '-' : 'r';
+	perms[4] = (mode & 020) == 0 ? '-' : 'w';
+	perms[5] = special(mode & 010, mode & S_ISGID, 's');
+	perms[6] = (mode & 04) == 0 ? '-' : 'r';
+	perms[7] = (mode & 02) == 0 ? '-' : 'w';
+	perms[8] = special(mode & 01, mode & S_ISVTX, 't');
+	return new String(perms);
+    }
+
+    private static char special(int exec, int flag, char ch) {
+	if (flag == 0) {
+	    return exec == 0 ? '-' : 'x';
+	} else {
+	    return exec == 0 ? Character.toUpperCase(ch) : ch;
+	}
+    }
+}
@@ -19,6 +19,13 @@ import jsaf.util.StringTools;
  * @version %I% %G%
  */
 public class UnixFileInfo extends DefaultMetadata implements IUnixFileInfo {
+    /**
+     * The value of a primitive timestamp that is not known.
+     *
+     * @since 1.1
+     */
+    public static final long UNKNOWN_TIME = Long.MIN_VALUE;
+
     static final String DELIM = "/";
 
     private String path;
@@ -29,11 +36,15 @@ public class UnixFileInfo extends DefaultMetadata implements IUnixFileInfo {
     private int uid, gid;
     private char unixType = FILE_TYPE;
     private Properties extended;
+    private long ctimeMillis, mtimeMillis, atimeMillis;
 
     public UnixFileInfo(Type type, String path, String linkTarget, Date ctime, Date mtime, Date atime, long length,
 			char unixType, String permissions, int uid, int gid, Boolean hasPosixAcl, Properties extended) {
 
 	super(type, path, linkTarget, linkTarget == null ? path : resolvePath(path, linkTarget), ctime, mtime, atime, length);
+	ctimeMillis = ctime == null ? UNKNOWN_TIME : ctime.getTime();
+	mtimeMillis = mtime == null ? UNKNOWN_TIME : mtime.getTime();
+	atimeMillis = atime == null ? UNKNOWN_TIME : atime.getTime();
 	this.unixType = unixType;
 	this.permissions = permissions;
 	this.uid = uid;
@@ -42,6 +53,80 @@ public class UnixFileInfo extends DefaultMetadata implements IUnixFileInfo {
 	this.extended = extended; // extended data
     }
 
+    /**
+     * Create file information with primitive timestamps (in milliseconds since the epoch, or UNKNOWN_TIME). The
+     * corresponding Date objects are only created if they are requested.
+     *
+     * @since 1.1
+     */
+    public UnixFileInfo(Type type, String path, String linkTarget, long ctime, long mtime, long atime, long length,
+			char unixType, String permissions, int uid, int gid, Boolean hasPosixAcl, Properties extended) {
+
+	super(type, path, linkTarget, linkTarget == null ? path : resolvePath(path, linkTarget), null, null, null, length);
+	ctimeMillis = ctime;
+	mtimeMillis = mtime;
+	atimeMillis = atime;
+	this.unixType = unixType;
+	this.permissions = permissions;
+	this.uid = uid;
+	this.gid = gid;
+	this.hasPosixAcl = hasPosixAcl;
+	this.extended = extended; // extended data
+    }
+
+    /**
+     * Get the create (i.e., inode change) time in milliseconds since the epoch, or UNKNOWN_TIME.
+     *
+     * @since 1.1
+     */
+    public long getCreateTimeMillis() {
+	return ctimeMillis;
+    }
+
+    /**
+     * Get the last modified time in milliseconds since the epoch, or UNKNOWN_TIME.
+     *
+     * @since 1.1
+     */
+    public long getLastModifiedMillis() {
+	return mtimeMillis;
+    }
+
+    /**
+     * Get the last access time in milliseconds since the epoch, or UNKNOWN_TIME.
+     *
+     * @since 1.1
+     */
+    public long getAccessTimeMillis() {
+	return atimeMillis;
+    }
+
+    // Implement IFileMetadata
+
+    @Override
+    public Date getCreateTime() {
+	if (ctime == null && ctimeMillis != UNKNOWN_TIME) {
+	    ctime = new Date(ctimeMillis);
+	}
+	return ctime;
+    }
+
+    @Override
+    public Date getLastModified() {
+	if (mtime == null && mtimeMillis != UNKNOWN_TIME) {
+	    mtime = new Date(mtimeMillis);
+	}
+	return mtime;
+    }
+
+    @Override
+    public Date getAccessTime() {
+	if (atime == null && atimeMillis != UNKNOWN_TIME) {
+	    atime = new Date(atimeMillis);
+	}
+	return atime;
+    }
+
     // Implement IUnixFileInfo
 
     public String getUnixFileType() {
@@ -150,6 +235,13 @@ public class UnixFileInfo extends DefaultMetadata implements IUnixFileInfo {
 
     // Internal
 
+    /**
+     * Get the Unix file type character (e.g., DIR_TYPE).
+     */
+    char getUnixType() {
+	return unixType;
+    }
+
     /**
      * Resolve an absolute path from a relative path from a base file path.
      *
@@ -18,6 +18,7 @@ import jsaf.intf.unix.io.IUnixFilesystemDriver;
 import jsaf.intf.unix.system.IUnixSession;
 import jsaf.intf.util.ILoggable;
 import jsaf.intf.util.ISearchable;
+import jsaf.intf.util.IStreamingSearchable;
 import jsaf.io.fs.AbstractFilesystem;
 import jsaf.util.SafeCLI;
 
@@ -27,7 +28,7 @@ import jsaf.util.SafeCLI;
  * @author David A. Solin
  * @version %I% %G%
  */
-public class UnixFileSearcher implements ISearchable<IFile>, ILoggable {
+public class UnixFileSearcher implements IStreamingSearchable<IFile>, ILoggable {
     private IUnixSession session;
     private IUnixFilesystemDriver driver;
     private AbstractFilesystem fs;
@@ -72,37 +73,76 @@ public class UnixFileSearcher implements ISearchable<IFile>, ILoggable {
     }
 
     public Collection<IFile> search(List<ISearchable.ICondition> conditions) throws Exception {
-	String cmd = driver.getFindCommand(conditions);
-	Collection<IFile> results = new ArrayList<IFile>();
-	if (cache.containsKey(cmd)) {
-	    logger.debug(Message.STATUS_FS_SEARCH_CACHED, cmd);
-	    for (String path : cache.get(cmd)) {
-		results.add(fs.getFile(path));
-	    }
-	} else {
-	    logger.debug(Message.STATUS_FS_SEARCH_START, cmd);
-	    try {
-		List<String> paths = new ArrayList<String>();
-		Iterator<String> iter = SafeCLI.manyLines(cmd, null, session);
-		IFile file = null;
-		while ((file = createObject(iter)) != null) {
-		    String path = file.getPath();
-		    logger.debug(Message.STATUS_FS_SEARCH_MATCH, path);
-		    paths.add(path);
+	final Collection<IFile> results = new ArrayList<IFile>();
+	try {
+	    search(conditions, new IResultHandler<IFile>() {
+		public boolean handle(IFile file) {
 		    results.add(file);
+		    return true;
 		}
-		cache.put(cmd, paths.toArray(new String[paths.size()]));
-		logger.debug(Message.STATUS_FS_SEARCH_DONE, results.size(), cmd);
-	    } catch (Exception e) {
-		logger.warn(Message.ERROR_FS_SEARCH);
-		logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
-	    }
+	    }, Integer.MAX_VALUE);
+	} catch (Exception e) {
+	    logger.warn(Message.ERROR_FS_SEARCH);
+	    logger.warn(Message.getMessage(Message.ERROR_EXCEPTION), e);
 	}
 	return results;
     }
 
+    // Implement IStreamingSearchable<IFile>
+
+    /**
+     * The output of find is parsed as it is produced, so the handler receives the first result while the search is still
+     * running. The output is buffered by a SafeCLI.LineStream, so a slow handler never holds up the reading of the output
+     * (which would trip the read timeout). Results of a completed search are added to the search cache, unless there are
+     * more than CachedPaths.MAX_STREAMED of them.
+     */
+    public boolean search(List<ISearchable.ICondition> conditions, IResultHandler<IFile> handler) throws Exception {
+	return search(conditions, handler, CachedPaths.MAX_STREAMED);
+    }
+
     // Private
 
+    private boolean search(List<ISearchable.ICondition> conditions, IResultHandler<IFile> handler, int cacheLimit)
+		throws Exception {
+
+	String cmd = driver.getFindCommand(conditions);
+	String[] cached = cache.get(cmd);
+	if (cached != null) {
+	    logger.debug(Message.STATUS_FS_SEARCH_CACHED, cmd);
+	    for (String path : cached) {
+		if (!handler.handle(fs.getFile(path))) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+	logger.debug(Message.STATUS_FS_SEARCH_START, cmd);
+	CachedPaths paths = new CachedPaths(cacheLimit);
+	SafeCLI.LineStream lines = SafeCLI.streamLines(cmd, null, session, session.getTimeout(IUnixSession.Timeout.XL));
+	try {
+	    IFile file = null;
+	    while ((file = createObject(lines)) != null) {
+		String path = file.getPath();
+		logger.debug(Message.STATUS_FS_SEARCH_MATCH, path);
+		paths.add(path);
+		if (!handler.handle(file)) {
+		    return false;
+		}
+	    }
+	} finally {
+	    lines.close();
+	}
+	if (lines.getError() != null) {
+	    throw lines.getError();
+	}
+	String[] results = paths.toArray();
+	if (results != null) {
+	    cache.put(cmd, results);
+	}
+	logger.debug(Message.STATUS_FS_SEARCH_DONE, paths.size(), cmd);
+	return true;
+    }
+
     private IFile createObject(Iterator<String> input) {
 	UnixFileInfo info = (UnixFileInfo)driver.nextFileInfo(input);
 	if (info == null) {
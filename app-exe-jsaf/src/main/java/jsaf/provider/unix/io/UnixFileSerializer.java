@@ -8,6 +8,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Date;
@@ -15,13 +16,22 @@ import java.util.Properties;
 
 import jdbm.helper.Serializer;
 
+import jsaf.Message;
 import jsaf.intf.io.IFile;
 import jsaf.intf.io.IFileMetadata;
 import jsaf.intf.unix.io.IUnixFileInfo;
 import jsaf.io.fs.AbstractFilesystem;
 
 /**
- * JDBM Serilizer implementation for Unix IFiles
+ * JDBM Serilizer implementation for Unix IFiles.
+ *
+ * Records are written in a compact, versioned format: a MAGIC byte and a VERSION byte, followed by variable-length
+ * integers and strings. Timestamps are stored relative to the last modified time, a link target is stored relative to the
+ * path of the link, and permission strings are encoded using a fixed dictionary of their possible characters. Records
+ * written in the original (unversioned) format can still be read.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
  */
 public class UnixFileSerializer implements Serializer, Serializable {
     static final long UNKNOWN_TIME = -1;
@@ -30,11 +40,43 @@ public class UnixFileSerializer implements Serializer, Serializable {
     static final int SER_DIRECTORY = 1;
     static final int SER_LINK = 2;
 
+    /**
+     * The first byte of a versioned record. A record in the original format begins with the (big-endian) length of the
+     * path, which could only begin with this byte if the path were longer than 65279 characters.
+     *
+     * @since 1.1
+     */
+    public static final byte MAGIC = (byte)0xFF;
+
+    /**
+     * The current record format version.
+     *
+     * @since 1.1
+     */
+    public static final byte VERSION = 1;
+
+    static final int FLAG_TYPE		= 0x03;
+    static final int FLAG_ACL		= 0x0C;
+    static final int FLAG_CTIME		= 0x10;
+    static final int FLAG_MTIME		= 0x20;
+    static final int FLAG_ATIME		= 0x40;
+    static final int FLAG_EXTENDED	= 0x80;
+    static final int FLAG_PERMS_LITERAL	= 0x100;
+
+    static final int ACL_UNKNOWN	= 0x00;
+    static final int ACL_FALSE		= 0x04;
+    static final int ACL_TRUE		= 0x08;
+
+    /**
+     * Extended data keys that are encoded by their (index + 1).
+     */
+    static final String[] EXTENDED_KEYS = {IUnixFileInfo.SELINUX_DATA};
+
     private transient AbstractFilesystem fs;
 
     /**
      * The serializer relies on an active IFilesystem, which cannot be serialized, so we serialize the hashcode
-     * of the IFilesystem, and maintain a static Map in the parent class. 
+     * of the IFilesystem, and maintain a static Map in the parent class.
      */
     public UnixFileSerializer(AbstractFilesystem fs) {
 	this.fs = fs;
@@ -43,55 +85,210 @@ public class UnixFileSerializer implements Serializer, Serializable {
     // Implement Serializer
 
     public Object deserialize(byte[] serialized) throws IOException {
-	DataInput in = new DataInputStream(new ByteArrayInputStream(serialized));
-	String path = in.readUTF();
+	UnixFileInfo info = null;
+	if (serialized.length > 1 && serialized[0] == MAGIC) {
+	    if (serialized[1] == VERSION) {
+		info = decode(new Input(serialized, 2));
+	    } else {
+		throw new IOException(Message.getMessage(Message.ERROR_SERIALIZER_VERSION, Integer.toString(serialized[1])));
+	    }
+	} else {
+	    info = decodeLegacy(serialized);
+	}
+	return fs.createFileFromInfo(info);
+    }
+
+    /**
+     * Records are encoded straight from the UnixFileInfo of the IFile, so the encoding never has to go back to the IFile
+     * (which, for a link, could mean looking up its target). An IFile whose metadata has not been resolved, or is not a
+     * UnixFileInfo, is written in the original format instead.
+     */
+    public byte[] serialize(Object obj) throws IOException {
+	IFile f = (IFile)obj;
+	IFileMetadata info = null;
+	if (f instanceof UnixFilesystem.UnixFile) {
+	    info = ((UnixFilesystem.UnixFile)f).getResolvedInfo();
+	}
+	if (info instanceof UnixFileInfo) {
+	    return encode((UnixFileInfo)info);
+	} else {
+	    return encodeLegacy(f);
+	}
+    }
+
+    // Private
+
+    private byte[] encode(UnixFileInfo info) throws IOException {
+	Output out = new Output();
+	out.writeByte(MAGIC);
+	out.writeByte(VERSION);
+
+	int flags = 0;
+	String path = info.getPath();
 	String link = null;
-	long temp = in.readLong();
-	Date ctime = temp == UNKNOWN_TIME ? null : new Date(temp);
-	temp = in.readLong();
-	Date mtime = temp == UNKNOWN_TIME ? null : new Date(temp);
-	temp = in.readLong();
-	Date atime = temp == UNKNOWN_TIME ? null : new Date(temp);
+	switch(info.getType()) {
+	  case LINK:
+	    flags |= SER_LINK;
+	    link = info.getLinkPath();
+	    if (link == null) {
+		link = "";
+	    }
+	    break;
+	  case DIRECTORY:
+	    flags |= SER_DIRECTORY;
+	    break;
+	  default:
+	    flags |= SER_FILE;
+	    break;
+	}
+	Boolean hasAcl = info.hasPosixAcl();
+	if (hasAcl == null) {
+	    flags |= ACL_UNKNOWN;
+	} else if (hasAcl.booleanValue()) {
+	    flags |= ACL_TRUE;
+	} else {
+	    flags |= ACL_FALSE;
+	}
+	long ctime = info.getCreateTimeMillis();
+	long mtime = info.getLastModifiedMillis();
+	long atime = info.getAccessTimeMillis();
+	if (ctime != UnixFileInfo.UNKNOWN_TIME) {
+	    flags |= FLAG_CTIME;
+	}
+	if (mtime != UnixFileInfo.UNKNOWN_TIME) {
+	    flags |= FLAG_MTIME;
+	}
+	if (atime != UnixFileInfo.UNKNOWN_TIME) {
+	    flags |= FLAG_ATIME;
+	}
+	String[] extendedKeys = info.getExtendedKeys();
+	if (extendedKeys != null) {
+	    flags |= FLAG_EXTENDED;
+	}
+	String perms = info.getPermissions();
+	int permsCode = encodePermissions(perms);
+	if (permsCode == -1) {
+	    flags |= FLAG_PERMS_LITERAL;
+	}
+	out.writeVarLong(flags);
+
+	out.writeString(path, 0);
+	if (link != null) {
+	    int prefix = commonPrefix(path, link);
+	    out.writeVarLong(prefix);
+	    out.writeString(link, prefix);
+	}
+	out.writeVarLong(zigzag(info.length()));
+	out.writeVarLong(info.getUnixType());
+	if (permsCode == -1) {
+	    out.writeString(perms, 0);
+	} else {
+	    out.writeVarLong(permsCode);
+	}
+	out.writeVarLong(zigzag(info.getUserId()));
+	out.writeVarLong(zigzag(info.getGroupId()));
+
+	long base = 0;
+	if (mtime != UnixFileInfo.UNKNOWN_TIME) {
+	    out.writeVarLong(zigzag(mtime));
+	    base = mtime;
+	}
+	if (ctime != UnixFileInfo.UNKNOWN_TIME) {
+	    out.writeVarLong(zigzag(ctime - base));
+	}
+	if (atime != UnixFileInfo.UNKNOWN_TIME) {
+	    out.writeVarLong(zigzag(atime - base));
+	}
+
+	if (extendedKeys != null) {
+	    out.writeVarLong(extendedKeys.length);
+	    for (String key : extendedKeys) {
+		int index = 0;
+		for (int i=0; i < EXTENDED_KEYS.length; i++) {
+		    if (EXTENDED_KEYS[i].equals(key)) {
+			index = i + 1;
+			break;
+		    }
+		}
+		out.writeVarLong(index);
+		if (index == 0) {
+		    out.writeString(key, 0);
+		}
+		out.writeString(info.getExtendedData(key), 0);
+	    }
+	}
+	return out.toByteArray();
+    }
+
+    private UnixFileInfo decode(Input in) throws IOException {
+	int flags = (int)in.readVarLong();
 	IFileMetadata.Type type = IFileMetadata.Type.FILE;
-	switch(in.readInt()) {
+	switch(flags & FLAG_TYPE) {
 	  case SER_DIRECTORY:
 	    type = IFileMetadata.Type.DIRECTORY;
 	    break;
 	  case SER_LINK:
 	    type = IFileMetadata.Type.LINK;
-	    link = in.readUTF();
 	    break;
 	}
-	long len = in.readLong();
-	char uType = in.readChar();
-	String perms = in.readUTF();
-	int uid = in.readInt();
-	int gid = in.readInt();
 	Boolean hasAcl = null;
-	switch(in.readShort()) {
-	  case 0:
+	switch(flags & FLAG_ACL) {
+	  case ACL_FALSE:
 	    hasAcl = Boolean.FALSE;
 	    break;
-	  case 1:
-	    hasAcl = Boolean.FALSE;
+	  case ACL_TRUE:
+	    hasAcl = Boolean.TRUE;
 	    break;
 	}
+
+	String path = in.readString(null, 0);
+	String link = null;
+	if (type == IFileMetadata.Type.LINK) {
+	    link = in.readString(path, in.readVarLong());
+	}
+	long len = unzigzag(in.readVarLong());
+	char uType = (char)in.readVarLong();
+	String perms = null;
+	if ((flags & FLAG_PERMS_LITERAL) == FLAG_PERMS_LITERAL) {
+	    perms = in.readString(null, 0);
+	} else {
+	    perms = decodePermissions((int)in.readVarLong());
+	}
+	int uid = (int)unzigzag(in.readVarLong());
+	int gid = (int)unzigzag(in.readVarLong());
+
+	long base = 0;
+	long ctime = UnixFileInfo.UNKNOWN_TIME, mtime = UnixFileInfo.UNKNOWN_TIME, atime = UnixFileInfo.UNKNOWN_TIME;
+	if ((flags & FLAG_MTIME) == FLAG_MTIME) {
+	    mtime = unzigzag(in.readVarLong());
+	    base = mtime;
+	}
+	if ((flags & FLAG_CTIME) == FLAG_CTIME) {
+	    ctime = base + unzigzag(in.readVarLong());
+	}
+	if ((flags & FLAG_ATIME) == FLAG_ATIME) {
+	    atime = base + unzigzag(in.readVarLong());
+	}
+
 	Properties ext = null;
-	if (in.readBoolean()) {
+	if ((flags & FLAG_EXTENDED) == FLAG_EXTENDED) {
 	    ext = new Properties();
-	    int propertyCount = in.readInt();
+	    int propertyCount = (int)in.readVarLong();
 	    for (int i=0; i < propertyCount; i++) {
-		ext.setProperty(in.readUTF(), in.readUTF());
+		int index = (int)in.readVarLong();
+		String key = index == 0 ? in.readString(null, 0) : EXTENDED_KEYS[index - 1];
+		ext.setProperty(key, in.readString(null, 0));
 	    }
 	}
-	UnixFileInfo info = new UnixFileInfo(type, path, link, ctime, mtime, atime, len, uType, perms, uid, gid, hasAcl, ext);
-	return fs.createFileFromInfo(info);
+	return new UnixFileInfo(type, path, link, ctime, mtime, atime, len, uType, perms, uid, gid, hasAcl, ext);
     }
 
-    public byte[] serialize(Object obj) throws IOException {
+    /**
+     * Encode a record in the original format, through the IFile.
+     */
+    private byte[] encodeLegacy(IFile f) throws IOException {
 	ByteArrayOutputStream buff = new ByteArrayOutputStream();
 	DataOutputStream out = new DataOutputStream(buff);
-	IFile f = (IFile)obj;
 	out.writeUTF(f.getPath());
 	out.writeLong(f.getCreateTime() == null ? UNKNOWN_TIME : f.getCreateTime().getTime());
 	out.writeLong(f.getLastModified() == null ? UNKNOWN_TIME : f.getLastModified().getTime());
@@ -150,4 +347,259 @@ public class UnixFileSerializer implements Serializer, Serializable {
 	out.close();
 	return buff.toByteArray();
     }
+
+    /**
+     * Decode a record in the original format.
+     */
+    private UnixFileInfo decodeLegacy(byte[] serialized) throws IOException {
+	DataInput in = new DataInputStream(new ByteArrayInputStream(serialized));
+	String path = in.readUTF();
+	String link = null;
+	long temp = in.readLong();
+	Date ctime = temp == UNKNOWN_TIME ? null : new Date(temp);
+	temp = in.readLong();
+	Date mtime = temp == UNKNOWN_TIME ? null : new Date(temp);
+	temp = in.readLong();
+	Date atime = temp == UNKNOWN_TIME ? null : new Date(temp);
+	IFileMetadata.Type type = IFileMetadata.Type.FILE;
+	switch(in.readInt()) {
+	  case SER_DIRECTORY:
+	    type = IFileMetadata.Type.DIRECTORY;
+	    break;
+	  case SER_LINK:
+	    type = IFileMetadata.Type.LINK;
+	    link = in.readUTF();
+	    break;
+	}
+	long len = in.readLong();
+	char uType = in.readChar();
+	String perms = in.readUTF();
+	int uid = in.readInt();
+	int gid = in.readInt();
+	Boolean hasAcl = null;
+	switch(in.readShort()) {
+	  case 0:
+	    hasAcl = Boolean.FALSE;
+	    break;
+	  case 1:
+	    hasAcl = Boolean.TRUE;
+	    break;
+	}
+	Properties ext = null;
+	if (in.readBoolean()) {
+	    ext = new Properties();
+	    int propertyCount = in.readInt();
+	    for (int i=0; i < propertyCount; i++) {
+		ext.setProperty(in.readUTF(), in.readUTF());
+	    }
+	}
+	return new UnixFileInfo(type, path, link, ctime, mtime, atime, len, uType, perms, uid, gid, hasAcl, ext);
+    }
+
+    /**
+     * Encode a 9-character permission string (e.g., "rwsr-xr-t") into 12 bits: for each of the owner, group and other
+     * triplets, one bit for read, one bit for write and two bits for the execute character ('-', 'x', or the lower- or
+     * upper-case special character, 's' for the owner and group, and 't' for other). Returns -1 if the string cannot be
+     * encoded.
+     */
+    static int encodePermissions(String perms) {
+	if (perms == null || perms.length() != 9) {
+	    return -1;
+	}
+	int code = 0;
+	for (int i=0; i < 3; i++) {
+	    char r = perms.charAt(i * 3);
+	    char w = perms.charAt(i * 3 + 1);
+	    char x = perms.charAt(i * 3 + 2);
+	    char special = i == 2 ? 't' : 's';
+	    int bits = 0;
+	    if (r == 'r') {
+		bits |= 0x8;
+	    } else if (r != '-') {
+		return -1;
+	    }
+	    if (w == 'w') {
+		bits |= 0x4;
+	    } else if (w != '-') {
+		return -1;
+	    }
+	    if (x == 'x') {
+		bits |= 0x1;
+	    } else if (x == special) {
+		bits |= 0x2;
+	    } else if (x == Character.toUpperCase(special)) {
+		bits |= 0x3;
+	    } else if (x != '-') {
+		return -1;
+	    }
+	    code = (code << 4) | bits;
+	}
+	return code;
+    }
+
+    static String decodePermissions(int code) {
+	char[] perms = new char[9];
+	for (int i=0; i < 3; i++) {
+	    int bits = (code >> ((2 - i) * 4)) & 0xF;
+	    char special = i == 2 ? 't' : 's';
+	    perms[i * 3] = (bits & 0x8) == 0 ? '-' : 'r';
+	    perms[i * 3 + 1] = (bits & 0x4) == 0 ? '-' : 'w';
+	    switch(bits & 0x3) {
+	      case 0:
+		perms[i * 3 + 2] = '-';
+		break;
+	      case 1:
+		perms[i * 3 + 2] = 'x';
+		break;
+	      case 2:
+		perms[i * 3 + 2] = special;
+		break;
+	      default:
+		perms[i * 3 + 2] = Character.toUpperCase(special);
+		break;
+	    }
+	}
+	return new String(perms);
+    }
+
+    private static int commonPrefix(String a, String b) {
+	int len = Math.min(a.length(), b.length());
+	int i = 0;
+	while (i < len && a.charAt(i) == b.charAt(i)) {
+	    i++;
+	}
+	return i;
+    }
+
+    private static long zigzag(long n) {
+	return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+	return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * A growable output buffer for the compact format.
+     */
+    static class Output {
+	private byte[] buff = new byte[128];
+	private int len = 0;
+
+	void writeByte(int b) {
+	    ensure(1);
+	    buff[len++] = (byte)b;
+	}
+
+	/**
+	 * Write an unsigned variable-length integer, 7 bits per byte, least significant first.
+	 */
+	void writeVarLong(long n) {
+	    ensure(10);
+	    while ((n & ~0x7FL) != 0) {
+		buff[len++] = (byte)((n & 0x7F) | 0x80);
+		n >>>= 7;
+	    }
+	    buff[len++] = (byte)n;
+	}
+
+	/**
+	 * Write the characters of s from offset, preceded by their count, in the same (modified UTF-8) encoding as
+	 * DataOutput.writeUTF.
+	 */
+	void writeString(String s, int offset) {
+	    int count = s.length() - offset;
+	    writeVarLong(count);
+	    ensure(count * 3);
+	    for (int i=offset; i < s.length(); i++) {
+		char ch = s.charAt(i);
+		if (ch > 0 && ch < 0x80) {
+		    buff[len++] = (byte)ch;
+		} else if (ch < 0x800) {
+		    buff[len++] = (byte)(0xC0 | (ch >> 6));
+		    buff[len++] = (byte)(0x80 | (ch & 0x3F));
+		} else {
+		    buff[len++] = (byte)(0xE0 | (ch >> 12));
+		    buff[len++] = (byte)(0x80 | ((ch >> 6) & 0x3F));
+		    buff[len++] = (byte)(0x80 | (ch & 0x3F));
+		}
+	    }
+	}
+
+	byte[] toByteArray() {
+	    byte[] result = new byte[len];
+	    System.arraycopy(buff, 0, result, 0, len);
+	    return result;
+	}
+
+	private void ensure(int n) {
+	    if (len + n > buff.length) {
+		byte[] temp = new byte[Math.max(buff.length * 2, len + n)];
+		System.arraycopy(buff, 0, temp, 0, len);
+		buff = temp;
+	    }
+	}
+    }
+
+    /**
+     * A reader for the compact format.
+     */
+    static class Input {
+	private byte[] buff;
+	private int pos;
+
+	Input(byte[] buff, int pos) {
+	    this.buff = buff;
+	    this.pos = pos;
+	}
+
+	long readVarLong() throws IOException {
+	    long n = 0;
+	    for (int shift=0; shift < 64; shift += 7) {
+		int b = readByte();
+		n |= (long)(b & 0x7F) << shift;
+		if ((b & 0x80) == 0) {
+		    return n;
+		}
+	    }
+	    throw new IOException(Message.getMessage(Message.ERROR_EOS));
+	}
+
+	/**
+	 * Read a string written by Output.writeString, appending it to the first prefix characters of base. Every character
+	 * takes at least one byte, so a count larger than the remaining data (like a prefix longer than base) means that the
+	 * record is corrupt.
+	 */
+	String readString(String base, long prefix) throws IOException {
+	    long count = readVarLong();
+	    int baseLen = base == null ? 0 : base.length();
+	    if (prefix < 0 || prefix > baseLen || count < 0 || count > buff.length - pos) {
+		String s = Message.getMessage(Message.ERROR_SERIALIZER_STRING, Long.toString(prefix), Long.toString(count));
+		throw new IOException(s);
+	    }
+	    char[] chars = new char[(int)(prefix + count)];
+	    if (prefix > 0) {
+		base.getChars(0, (int)prefix, chars, 0);
+	    }
+	    for (int i=(int)prefix; i < chars.length; i++) {
+		int b = readByte();
+		if (b < 0x80) {
+		    chars[i] = (char)b;
+		} else if ((b & 0xE0) == 0xC0) {
+		    chars[i] = (char)(((b & 0x1F) << 6) | (readByte() & 0x3F));
+		} else {
+		    int b2 = readByte();
+		    chars[i] = (char)(((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (readByte() & 0x3F));
+		}
+	    }
+	    return new String(chars);
+	}
+
+	private int readByte() throws IOException {
+	    if (pos >= buff.length) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOS));
+	    }
+	    return buff[pos++] & 0xFF;
+	}
+    }
 }
@@ -8,7 +8,6 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -17,10 +16,11 @@ import jdbm.helper.Serializer;
 import jsaf.Message;
 import jsaf.intf.io.IFile;
 import jsaf.intf.io.IFileMetadata;
-import jsaf.intf.unix.io.IUnixFileInfo;
 import jsaf.intf.unix.io.IUnixFilesystem;
 import jsaf.intf.unix.io.IUnixFilesystemDriver;
+import jsaf.intf.system.ISession;
 import jsaf.intf.unix.system.IUnixSession;
+import jsaf.intf.util.ILoggable;
 import jsaf.intf.util.ISearchable;
 import jsaf.io.fs.AbstractFilesystem;
 import jsaf.io.fs.DefaultMetadata;
@@ -43,8 +43,9 @@ import org.slf4j.cal10n.LocLogger;
 public class UnixFilesystem extends AbstractFilesystem implements IUnixFilesystem {
 	protected long S, M, L, XL;
 
-	private UnixFileSearcher searcher;
+	private ISearchable<IFile> searcher;
 	private IUnixFilesystemDriver driver;
+	private Boolean nativeStat;
 
 	public UnixFilesystem(IUnixSession session) {
 		super(session, DELIM_STR, "fs");
@@ -56,7 +57,11 @@ public class UnixFilesystem extends AbstractFilesystem implements IUnixFilesyste
 
 	public ISearchable<IFile> getSearcher() {
 		if (searcher == null) {
-			searcher = new UnixFileSearcher((IUnixSession) session, getDriver(), getSearchCache());
+			if (useNativeStat()) {
+				searcher = new NativeFileSearcher((IUnixSession) session, getDriver(), getSearchCache());
+			} else {
+				searcher = new UnixFileSearcher((IUnixSession) session, getDriver(), getSearchCache());
+			}
 		}
 		return searcher;
 	}
@@ -65,7 +70,7 @@ public class UnixFilesystem extends AbstractFilesystem implements IUnixFilesyste
 	public void setLogger(LocLogger logger) {
 		super.setLogger(logger);
 		if (searcher != null) {
-			searcher.setLogger(logger);
+			((ILoggable) searcher).setLogger(logger);
 		}
 		if (driver != null) {
 			driver.setLogger(logger);
@@ -101,26 +106,25 @@ public class UnixFilesystem extends AbstractFilesystem implements IUnixFilesyste
 			for (String path : paths) {
 				uniquePaths.add(path);
 			}
-			StringBuffer sb = new StringBuffer();
-			for (String path : uniquePaths) {
-				SafeCLI.checkArgument(path, session);
-				if (sb.length() > 0) {
-					sb.append("\\n");
+			Map<String, UnixFileInfo> infoMap = null;
+			if (useNativeStat()) {
+				infoMap = new HashMap<String, UnixFileInfo>();
+				for (String path : uniquePaths) {
+					try {
+						infoMap.put(path.toLowerCase(), NativeStat.stat(path));
+					} catch (IOException e) {
+						// as with the stat command, a path that cannot be read is simply omitted
+					}
 				}
-				sb.append(path);
-			}
-			StringBuffer cmd = new StringBuffer("printf \"").append(sb.toString()).append("\\n\"");
-			cmd.append(" | xargs -I{} ").append(getDriver().getStatCommand("{}"));
-			Map<String, IFile> fileMap = new HashMap<String, IFile>();
-			Iterator<String> iter = SafeCLI.manyLines(cmd.toString(), null, (IUnixSession) session);
-			IUnixFileInfo info = null;
-			while ((info = getDriver().nextFileInfo(iter)) != null) {
-				IFile f = createFileFromInfo((IFileMetadata) info, flags);
-				fileMap.put(f.getPath().toLowerCase(), f);
+			} else {
+				infoMap = new BatchStat((IUnixSession) session, getDriver()).stat(uniquePaths);
 			}
 			IFile[] files = new IFile[paths.length];
 			for (int i = 0; i < paths.length; i++) {
-				files[i] = fileMap.get(paths[i].toLowerCase());
+				UnixFileInfo info = infoMap.get(paths[i].toLowerCase());
+				if (info != null) {
+					files[i] = createFileFromInfo(info, flags);
+				}
 			}
 			return files;
 		} catch (IOException e) {
@@ -162,7 +166,25 @@ public class UnixFilesystem extends AbstractFilesystem implements IUnixFilesyste
 
 	// Internal
 
+	/**
+	 * Determine whether file metadata can be read, and searches performed, in-process rather than by running the driver's
+	 * stat and find commands. This is only the case for a local Linux session (other flavors report ACL information that
+	 * is only available from ls), when SELinux is not enabled (the security context is not available from java.nio.file).
+	 */
+	protected boolean useNativeStat() {
+		if (nativeStat == null) {
+			IUnixSession us = (IUnixSession) session;
+			nativeStat = Boolean.valueOf(ISession.LOCALHOST.equals(us.getHostname()) &&
+					us.getFlavor() == IUnixSession.Flavor.LINUX && NativeStat.isAvailable() &&
+					!((LinuxDriver) getDriver()).isSelinuxEnabled());
+		}
+		return nativeStat.booleanValue();
+	}
+
 	protected UnixFileInfo getUnixFileInfo(String path) throws IOException {
+		if (useNativeStat()) {
+			return NativeStat.stat(path);
+		}
 		int exitCode = -1;
 		String data = null;
 		try {
@@ -228,6 +250,13 @@ public class UnixFilesystem extends AbstractFilesystem implements IUnixFilesyste
 			super(info, flags);
 		}
 
+		/**
+		 * Get the metadata of this file, if it has already been resolved (otherwise, null).
+		 */
+		IFileMetadata getResolvedInfo() {
+			return info;
+		}
+
 		@Override
 		protected IAccessor getAccessor() throws IOException {
 			if (accessor == null) {
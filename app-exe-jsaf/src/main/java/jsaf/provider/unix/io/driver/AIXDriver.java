@@ -203,7 +203,7 @@ public class AIXDriver extends AbstractDriver {
     }
 
     public String getStatCommand() {
-	throw new UnsupportedOperationException();
+	return new StringBuffer(QUOTE_LINES).append(" | xargs ").append(STAT).toString();
     }
 
     public UnixFileInfo nextFileInfo(Iterator<String> lines) {
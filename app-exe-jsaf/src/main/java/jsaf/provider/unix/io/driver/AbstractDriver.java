@@ -46,14 +46,16 @@ abstract class AbstractDriver implements IUnixFilesystemDriver {
 	}
     }
 
+    /**
+     * A filter that single-quotes every line of its input, so that xargs will pass each line as a single argument, no
+     * matter what whitespace or quote characters it contains.
+     */
+    protected static final String QUOTE_LINES = "sed -e \"s/'/'\\\\\\\\''/g\" -e \"s/^/'/\" -e \"s/\\$/'/\"";
+
     abstract void getMounts() throws Exception;
 
     // Implement IUnixFilesystemDriver
 
-    public String getStatCommand() {
-	throw new UnsupportedOperationException();
-    }
-
     public Collection<IFilesystem.IMount> getMounts(Pattern typeFilter) throws Exception {
 	return getMounts(typeFilter, false);
     }
@@ -3,12 +3,10 @@
 
 package jsaf.provider.unix.io.driver;
 
-import java.math.BigDecimal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
@@ -30,7 +28,6 @@ import jsaf.intf.util.ISearchable;
 import jsaf.io.PerishableReader;
 import jsaf.provider.unix.io.UnixFileInfo;
 import jsaf.util.SafeCLI;
-import jsaf.util.StringTools;
 
 /**
  * IUnixFilesystemDriver implementation for Linux.
@@ -42,6 +39,17 @@ public class LinuxDriver extends AbstractDriver {
     private boolean selinuxEnabled = false;
     private String printf = " -printf \"%M\\0%U\\0%G\\0%s\\0%A@\\0%C@\\0%T@\\0%p\\0%l\\n\"";
 
+    /**
+     * Permission and SELinux context strings repeat across most files. The driver may be used to parse the output of
+     * several commands at once (e.g., by BatchStat), so each thread gets its own pool.
+     */
+    private ThreadLocal<StringPool> pools = new ThreadLocal<StringPool>() {
+	@Override
+	protected StringPool initialValue() {
+	    return new StringPool();
+	}
+    };
+
     public LinuxDriver(IUnixSession session) {
 	super(session);
 	try {
@@ -55,6 +63,14 @@ public class LinuxDriver extends AbstractDriver {
 	}
     }
 
+    /**
+     * Returns true if SELinux is enabled, in which case the security context of every file is included in its extended
+     * data.
+     */
+    public boolean isSelinuxEnabled() {
+	return selinuxEnabled;
+    }
+
     void getMounts() throws Exception {
 	mounts = new ArrayList<IFilesystem.IMount>();
 	String command = "mount | awk '{print $3}' | xargs -I{} find {} -prune -printf \"%p %F\\n\" 2>/dev/null";
@@ -183,84 +199,193 @@ public class LinuxDriver extends AbstractDriver {
 	return new StringBuffer("find '").append(path).append("'").append(printf).append(" -prune").toString();
     }
 
-    private static final String NULL = new String(new byte[] {0x00}, StringTools.ASCII);
+    /**
+     * find takes its paths before its expression, so xargs hands them to a shell that places them there.
+     */
+    public String getStatCommand() {
+	StringBuffer sb = new StringBuffer(QUOTE_LINES).append(" | xargs sh -c 'find \"$@\"");
+	return sb.append(printf).append(" -prune' sh").toString();
+    }
 
     public UnixFileInfo nextFileInfo(Iterator<String> lines) {
-	String line = null;
 	while (lines.hasNext()) {
-	    line = lines.next().trim();
+	    String line = lines.next().trim();
 	    if (line.length() > 0) {
-		break;
+		UnixFileInfo info = parse(line);
+		if (info != null) {
+		    return info;
+		}
 	    }
 	}
-	if (line == null || line.length() == 0) {
+	return null;
+    }
+
+    // Private
+
+    /**
+     * Parse a line of the printf output, whose fields are delimited by NUL characters, in place. Returns null if the line
+     * is malformed.
+     */
+    private UnixFileInfo parse(String line) {
+	int end = line.length();
+	int pos = 0;
+	int next = line.indexOf('\0', pos);
+	if (next < 2) {
 	    return null;
 	}
-	StringTokenizer tok = new StringTokenizer(line, NULL);
-	if (tok.countTokens() < (selinuxEnabled ? 9 : 8)) {
-	    return nextFileInfo(lines);
-	} else {
-	    String perms = tok.nextToken();
-	    char unixType = perms.charAt(0);
-	    perms = perms.substring(1);
+	char unixType = line.charAt(0);
+	StringPool pool = pools.get();
+	String perms = pool.get(line, 1, next);
 
-	    Properties ext = null; // extended properties
-	    if (selinuxEnabled) {
-		ext = new Properties();
-		ext.setProperty(IUnixFileInfo.SELINUX_DATA, tok.nextToken());
+	Properties ext = null; // extended properties
+	if (selinuxEnabled) {
+	    pos = next + 1;
+	    if ((next = line.indexOf('\0', pos)) == -1) {
+		return null;
 	    }
+	    ext = new Properties();
+	    ext.setProperty(IUnixFileInfo.SELINUX_DATA, pool.get(line, pos, next));
+	}
 
-	    int uid = -1;
-	    try {
-		uid = Integer.parseInt(tok.nextToken());
-	    } catch (NumberFormatException e) {
-		//DAS -- could be, e.g., 4294967294 (illegal "nobody" value)
-	    }
-	    int gid = -1;
-	    try {
-		gid = Integer.parseInt(tok.nextToken());
-	    } catch (NumberFormatException e) {
-		//DAS -- could be, e.g., 4294967294 (illegal "nobody" value)
-	    }
+	//
+	// IDs that overflow an int (e.g., 4294967294, the illegal "nobody" value) are mapped to -1.
+	//
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    return null;
+	}
+	long uid = parseLong(line, pos, next);
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    return null;
+	}
+	long gid = parseLong(line, pos, next);
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    return null;
+	}
+	long length = parseLong(line, pos, next);
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    return null;
+	}
+	long atime = parseEpochMillis(line, pos, next);
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    return null;
+	}
+	long ctime = parseEpochMillis(line, pos, next);
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    return null;
+	}
+	long mtime = parseEpochMillis(line, pos, next);
 
-	    IFileMetadata.Type type = IFileMetadata.Type.FILE;
-	    switch(unixType) {
-	      case IUnixFileInfo.DIR_TYPE:
-		type = IFileMetadata.Type.DIRECTORY;
-		break;
+	//
+	// The trailing NUL is trimmed from the line when there is no link target.
+	//
+	pos = next + 1;
+	if ((next = line.indexOf('\0', pos)) == -1) {
+	    next = end;
+	}
+	if (next == pos) {
+	    return null;
+	}
+	String path = line.substring(pos, next);
+	String linkPath = null;
+	if (next + 1 < end) {
+	    linkPath = line.substring(next + 1);
+	}
 
-	      case IUnixFileInfo.LINK_TYPE:
-		type = IFileMetadata.Type.LINK;
-		break;
-	    }
+	IFileMetadata.Type type = IFileMetadata.Type.FILE;
+	switch(unixType) {
+	  case IUnixFileInfo.DIR_TYPE:
+	    type = IFileMetadata.Type.DIRECTORY;
+	    break;
 
-	    long length = 0;
-	    try {
-		length = Long.parseLong(tok.nextToken());
-	    } catch (NumberFormatException e) {
-	    }
+	  case IUnixFileInfo.LINK_TYPE:
+	    type = IFileMetadata.Type.LINK;
+	    break;
+	}
+	return new UnixFileInfo(type, path, linkPath, ctime, mtime, atime, length < 0 ? 0 : length, unixType, perms,
+				toId(uid), toId(gid), null, ext);
+    }
 
-	    Date atime=null, ctime=null, mtime=null;
-	    try {
-		 atime = new Date(new BigDecimal(tok.nextToken()).movePointRight(3).longValue());
-	    } catch (NumberFormatException e) {
-	    }
-	    try {
-		 ctime = new Date(new BigDecimal(tok.nextToken()).movePointRight(3).longValue());
-	    } catch (NumberFormatException e) {
-	    }
-	    try {
-		 mtime = new Date(new BigDecimal(tok.nextToken()).movePointRight(3).longValue());
-	    } catch (NumberFormatException e) {
+    private static int toId(long id) {
+	return id < 0 || id > Integer.MAX_VALUE ? -1 : (int)id;
+    }
+
+    /**
+     * Parse the decimal digits of s between begin and end, or return -1 if they are not a (non-negative) long.
+     */
+    private static long parseLong(String s, int begin, int end) {
+	if (begin == end || end - begin > 18) {
+	    return -1L;
+	}
+	long val = 0;
+	for (int i=begin; i < end; i++) {
+	    char ch = s.charAt(i);
+	    if (ch < '0' || ch > '9') {
+		return -1L;
 	    }
+	    val = val * 10 + (ch - '0');
+	}
+	return val;
+    }
 
-	    String path = tok.nextToken();
-	    String linkPath = null;
-	    if (tok.hasMoreTokens()) {
-		linkPath = tok.nextToken();
+    /**
+     * Parse an epoch time in seconds with a fractional part (i.e., the output of %A@, %C@ and %T@) between begin and end,
+     * into milliseconds. Like BigDecimal.longValue, the value is truncated towards zero. Returns UNKNOWN_TIME if the field
+     * is not a number.
+     */
+    private static long parseEpochMillis(String s, int begin, int end) {
+	boolean negative = false;
+	if (begin < end && s.charAt(begin) == '-') {
+	    negative = true;
+	    begin++;
+	}
+	int dot = begin;
+	while (dot < end && s.charAt(dot) != '.') {
+	    dot++;
+	}
+	long secs = parseLong(s, begin, dot);
+	if (secs == -1L || secs > Long.MAX_VALUE / 1000) {
+	    return UnixFileInfo.UNKNOWN_TIME;
+	}
+	long millis = 0;
+	for (int i=dot+1, scale=100; i < end; i++, scale /= 10) {
+	    char ch = s.charAt(i);
+	    if (ch < '0' || ch > '9') {
+		return UnixFileInfo.UNKNOWN_TIME;
 	    }
+	    millis += (ch - '0') * scale;
+	}
+	millis += secs * 1000;
+	return negative ? -millis : millis;
+    }
+
+    /**
+     * A small, direct-mapped cache of strings, which can be looked up by a region of another string without creating a
+     * substring. Collisions simply replace the cached entry. Not thread-safe.
+     */
+    private static class StringPool {
+	private static final int SIZE = 256;
 
-	    return new UnixFileInfo(type, path, linkPath, ctime, mtime, atime, length, unixType, perms, uid, gid, null, ext);
+	private String[] entries = new String[SIZE];
+
+	String get(String s, int begin, int end) {
+	    int len = end - begin;
+	    int hash = len;
+	    for (int i=begin; i < end; i++) {
+		hash = 31 * hash + s.charAt(i);
+	    }
+	    int index = (hash ^ (hash >>> 8)) & (SIZE - 1);
+	    String entry = entries[index];
+	    if (entry == null || entry.length() != len || !s.regionMatches(begin, entry, 0, len)) {
+		entry = s.substring(begin, end);
+		entries[index] = entry;
+	    }
+	    return entry;
 	}
     }
 }
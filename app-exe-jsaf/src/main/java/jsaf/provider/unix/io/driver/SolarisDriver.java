@@ -194,6 +194,10 @@ public class SolarisDriver extends AbstractDriver {
 	return new StringBuffer(STAT).append(" '").append(path).append("'").toString();
     }
 
+    public String getStatCommand() {
+	return new StringBuffer(QUOTE_LINES).append(" | xargs ").append(STAT).toString();
+    }
+
     public UnixFileInfo nextFileInfo(Iterator<String> lines) {
 	String line = null;
 	if (lines.hasNext()) {
@@ -7,6 +7,7 @@ import java.util.Arrays;
 import java.util.List;
 
 import jsaf.Message;
+import jsaf.intf.system.IProcess;
 import jsaf.intf.unix.system.IUnixSession;
 import jsaf.provider.AbstractSession;
 import jsaf.util.SafeCLI;
@@ -18,8 +19,15 @@ import jsaf.util.SafeCLI;
  * @version %I% %G%
  */
 public abstract class BaseUnixSession extends AbstractSession implements IUnixSession {
+    /**
+     * The number of shell workers used when PROP_SHELL_WORKERS is not set.
+     */
+    static final int DEFAULT_SHELL_WORKERS = 2;
+
     protected Flavor flavor = Flavor.UNKNOWN;
 
+    private ShellWorkerPool workers;
+
     protected BaseUnixSession() {
 	super();
     }
@@ -63,9 +71,63 @@ public abstract class BaseUnixSession extends AbstractSession implements IUnixSe
 	return getHostname();
     }
 
+    /**
+     * Commands are run by persistent shell workers when one is available, except in debug mode (so that the output of
+     * every process can be logged). Processes returned by createProcess always run by themselves, so that their stdin
+     * can be written.
+     */
+    @Override
+    public IProcess createCommandProcess(String command, String[] env, String dir) throws Exception {
+	ShellWorkerPool pool = getWorkerPool();
+	if (pool != null) {
+	    return new ShellProcess(pool, logger, command, env, dir);
+	}
+	return createProcess(command, env, dir);
+    }
+
+    @Override
+    public void dispose() {
+	stopWorkers();
+	super.dispose();
+    }
+
     // Implement IUnixSession
 
     public Flavor getFlavor() {
 	return flavor;
     }
+
+    // Internal
+
+    /**
+     * Stop all the shell workers. New workers will be started if the session is used again.
+     */
+    protected synchronized void stopWorkers() {
+	if (workers != null) {
+	    workers.shutdown();
+	    workers = null;
+	}
+    }
+
+    /**
+     * Start a new worker shell process.
+     */
+    IProcess createWorkerProcess() throws Exception {
+	return createProcess(ShellWorkerPool.WORKER_COMMAND, null, null);
+    }
+
+    // Private
+
+    private synchronized ShellWorkerPool getWorkerPool() {
+	if (workers == null && !isDebug()) {
+	    int capacity = internalProps.getIntProperty(PROP_SHELL_WORKERS);
+	    if (capacity == 0) {
+		capacity = DEFAULT_SHELL_WORKERS;
+	    }
+	    if (capacity > 0) {
+		workers = new ShellWorkerPool(this, capacity);
+	    }
+	}
+	return workers;
+    }
 }
@@ -0,0 +1,397 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.provider.unix.system;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.slf4j.cal10n.LocLogger;
+
+import jsaf.Message;
+import jsaf.intf.system.IProcess;
+import jsaf.util.StringTools;
+
+/**
+ * An IProcess that runs its command on a ShellWorkerPool worker, rather than in a new process. The command does not
+ * read from stdin, and the caller should read both stdout and stderr to the end (as SafeCLI does), since the worker is
+ * only returned to the pool once both markers have been read.
+ *
+ * The worker is only taken from the pool when the process is started, so a process that is never started does not hold
+ * one. If all the workers are busy at that point, the command is run in a new process instead, to which the ShellProcess
+ * delegates.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+class ShellProcess implements IProcess {
+    private ShellWorkerPool pool;
+    private ShellWorkerPool.Worker worker;
+    private volatile IProcess direct;
+    private LocLogger logger;
+    private String command, dir;
+    private String[] env;
+    private byte[] outMarker, errMarker;
+    private OutputFrame out;
+    private ErrorFrame err;
+    private Integer ec;
+    private boolean started, outDone, errDone;
+    private volatile boolean destroyed;
+
+    ShellProcess(ShellWorkerPool pool, LocLogger logger, String command, String[] env, String dir) {
+	this.pool = pool;
+	this.logger = logger;
+	this.command = command;
+	this.env = env;
+	this.dir = dir;
+	String marker = pool.nextMarker();
+	outMarker = new StringBuffer().append((char)ShellWorkerPool.RS).append(marker).append(" ").toString().getBytes();
+	errMarker = new StringBuffer().append((char)ShellWorkerPool.RS).append(marker).append("\n").toString().getBytes();
+	started = false;
+	outDone = false;
+	errDone = false;
+	destroyed = false;
+	out = new OutputFrame();
+	err = new ErrorFrame();
+    }
+
+    // Implement IProcess
+
+    public String getCommand() {
+	return command;
+    }
+
+    public synchronized void start() throws Exception {
+	if (started) {
+	    throw new IllegalStateException(Message.getMessage(Message.ERROR_PROCESS_RUNNING));
+	}
+	worker = pool.acquire();
+	if (worker == null) {
+	    IProcess p = pool.createDirectProcess(command, env, dir);
+	    p.start();
+	    started = true;
+	    direct = p;
+	    return;
+	}
+	if (dir != null && !new File(dir).isDirectory()) {
+	    pool.release(worker);
+	    worker = null;
+	    String reason = Message.getMessage(Message.ERROR_IO_NOT_DIR);
+	    throw new IOException(Message.getMessage(Message.ERROR_IO, dir, reason));
+	}
+	logger.debug(Message.STATUS_PROCESS_START, command);
+	started = true;
+	try {
+	    worker.send(this, getFrame());
+	} catch (IOException e) {
+	    destroy();
+	    throw e;
+	}
+    }
+
+    public InputStream getInputStream() throws IOException {
+	if (direct != null) {
+	    return direct.getInputStream();
+	}
+	return started ? out : null;
+    }
+
+    public InputStream getErrorStream() throws IOException {
+	if (direct != null) {
+	    return direct.getErrorStream();
+	}
+	return started ? err : null;
+    }
+
+    /**
+     * The command cannot read from stdin (unless it was run in a new process).
+     */
+    public OutputStream getOutputStream() throws IOException {
+	return direct == null ? null : direct.getOutputStream();
+    }
+
+    public void waitFor(long millis) throws InterruptedException {
+	if (direct != null) {
+	    direct.waitFor(millis);
+	} else {
+	    waitForWorker(millis);
+	}
+    }
+
+    private synchronized void waitForWorker(long millis) throws InterruptedException {
+	long end = System.currentTimeMillis() + millis;
+	while (isRunning()) {
+	    if (millis == 0) {
+		wait();
+	    } else {
+		long remaining = end - System.currentTimeMillis();
+		if (remaining <= 0) {
+		    break;
+		}
+		wait(remaining);
+	    }
+	}
+    }
+
+    public synchronized int exitValue() throws IllegalThreadStateException {
+	if (direct != null) {
+	    return direct.exitValue();
+	} else if (!started || destroyed) {
+	    throw new IllegalStateException(Message.getMessage(Message.ERROR_PROCESS_STOPPED));
+	} else if (!(outDone && errDone)) {
+	    throw new IllegalThreadStateException(Message.getMessage(Message.ERROR_PROCESS_RUNNING));
+	}
+	return ec.intValue();
+    }
+
+    /**
+     * Kill the worker, if the command has not completed.
+     */
+    public synchronized void destroy() {
+	if (direct != null) {
+	    direct.destroy();
+	} else if (isRunning()) {
+	    destroyed = true;
+	    pool.discard(worker, "destroyed");
+	    notifyAll();
+	}
+    }
+
+    public synchronized boolean isRunning() {
+	if (direct != null) {
+	    return direct.isRunning();
+	}
+	return started && !destroyed && !(outDone && errDone);
+    }
+
+    // Internal
+
+    byte[] getErrorMarker() {
+	return errMarker;
+    }
+
+    void errorData(byte[] data, int offset, int len) {
+	err.write(data, offset, len);
+    }
+
+    synchronized void errorDone() {
+	err.finish();
+	errDone = true;
+	completed();
+    }
+
+    // Private
+
+    /**
+     * The command runs in a sub-shell, so that it cannot affect the state of the worker, with its stdin redirected so that
+     * it cannot consume the worker's input. The command string is passed to eval, so that even a syntax error in the command
+     * is confined to the sub-shell.
+     */
+    private String getFrame() {
+	StringBuffer sb = new StringBuffer("(");
+	if (dir != null) {
+	    sb.append(" cd ").append(quote(dir)).append(" || exit 1;");
+	}
+	if (env != null) {
+	    for (String s : env) {
+		if (s.indexOf("=") > 0) {
+		    sb.append(" export ").append(quote(s)).append(";");
+		}
+	    }
+	}
+	sb.append(" eval ").append(quote(command)).append(" ) </dev/null & jsaf_job=$!; ");
+	sb.append("wait $jsaf_job; jsaf_rc=$?; jsaf_job=; ");
+	sb.append("printf '\\036").append(new String(outMarker).substring(1)).append("%d\\n' $jsaf_rc; ");
+	sb.append("printf '\\036").append(new String(errMarker, 1, errMarker.length - 2)).append("\\n' >&2\n");
+	return sb.toString();
+    }
+
+    private static String quote(String s) {
+	return new StringBuffer("'").append(s.replace("'", "'\\''")).append("'").toString();
+    }
+
+    /**
+     * Called when both markers have been read.
+     */
+    private void completed() {
+	if (outDone && errDone) {
+	    if (!destroyed) {
+		logger.debug(Message.STATUS_PROCESS_END, command, ec);
+		pool.release(worker);
+	    }
+	    notifyAll();
+	}
+    }
+
+    private synchronized void outputDone(int exitCode) {
+	ec = Integer.valueOf(exitCode);
+	outDone = true;
+	completed();
+    }
+
+    /**
+     * The stdout of the command, read directly from the worker, up to the marker.
+     */
+    class OutputFrame extends InputStream {
+	private boolean eof = false;
+	private int clean = 0; // the data in the worker buffer before this index is known to precede the marker
+
+	@Override
+	public int read() throws IOException {
+	    byte[] b = new byte[1];
+	    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int offset, int len) throws IOException {
+	    if (eof) {
+		return -1;
+	    } else if (len == 0) {
+		return 0;
+	    }
+	    try {
+		while (true) {
+		    if (destroyed) {
+			throw new EOFException(Message.getMessage(Message.ERROR_EOS));
+		    }
+		    if (worker.pos < clean) {
+			int n = Math.min(clean - worker.pos, len);
+			System.arraycopy(worker.buff, worker.pos, b, offset, n);
+			worker.pos += n;
+			return n;
+		    }
+		    int index = ShellWorkerPool.indexOf(worker.buff, worker.pos, worker.len, outMarker);
+		    if (index == worker.pos) {
+			eof = true;
+			readExitCode();
+			return -1;
+		    } else if (index == -1) {
+			clean = ShellWorkerPool.partialIndex(worker.buff, worker.pos, worker.len, outMarker);
+		    } else {
+			clean = index;
+		    }
+		    if (clean == worker.pos) {
+			worker.fill();
+			clean = worker.pos;
+		    }
+		}
+	    } catch (IOException e) {
+		destroy();
+		throw e;
+	    }
+	}
+
+	@Override
+	public int available() {
+	    return eof ? 0 : Math.max(0, clean - worker.pos);
+	}
+
+	/**
+	 * If the stream is closed before the marker has been read, the worker is in an unknown state, so it is destroyed.
+	 */
+	@Override
+	public void close() {
+	    if (!eof) {
+		eof = true;
+		destroy();
+	    }
+	}
+
+	/**
+	 * Read the exit code, which follows the marker on the same line.
+	 */
+	private void readExitCode() throws IOException {
+	    worker.pos += outMarker.length;
+	    int end = -1;
+	    while (true) {
+		for (int i=worker.pos; i < worker.len; i++) {
+		    if (worker.buff[i] == '\n') {
+			end = i;
+			break;
+		    }
+		}
+		if (end == -1) {
+		    worker.fill();
+		} else {
+		    break;
+		}
+	    }
+	    String s = new String(worker.buff, worker.pos, end - worker.pos, StringTools.ASCII).trim();
+	    worker.pos = end + 1;
+	    int exitCode = -1;
+	    try {
+		exitCode = Integer.parseInt(s);
+	    } catch (NumberFormatException e) {
+	    }
+	    outputDone(exitCode);
+	}
+    }
+
+    /**
+     * The stderr of the command, as received from the worker's stderr pump.
+     */
+    class ErrorFrame extends InputStream {
+	private byte[] data = new byte[256];
+	private int pos = 0, end = 0;
+	private boolean finished = false;
+
+	synchronized void write(byte[] b, int offset, int len) {
+	    if (len > 0) {
+		if (end + len > data.length) {
+		    int size = end - pos;
+		    byte[] temp = data;
+		    if (size + len > data.length) {
+			temp = new byte[Math.max(data.length * 2, size + len)];
+		    }
+		    System.arraycopy(data, pos, temp, 0, size);
+		    data = temp;
+		    pos = 0;
+		    end = size;
+		}
+		System.arraycopy(b, offset, data, end, len);
+		end += len;
+		notifyAll();
+	    }
+	}
+
+	synchronized void finish() {
+	    finished = true;
+	    notifyAll();
+	}
+
+	@Override
+	public synchronized int read() throws IOException {
+	    byte[] b = new byte[1];
+	    return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public synchronized int read(byte[] b, int offset, int len) throws IOException {
+	    if (len == 0) {
+		return 0;
+	    }
+	    while (pos == end) {
+		if (finished) {
+		    return -1;
+		}
+		try {
+		    wait();
+		} catch (InterruptedException e) {
+		    throw new IOException(e);
+		}
+	    }
+	    int n = Math.min(len, end - pos);
+	    System.arraycopy(data, pos, b, offset, n);
+	    pos += n;
+	    return n;
+	}
+
+	@Override
+	public synchronized int available() {
+	    return end - pos;
+	}
+    }
+}
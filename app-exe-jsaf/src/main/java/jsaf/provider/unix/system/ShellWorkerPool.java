@@ -0,0 +1,313 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.provider.unix.system;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.Random;
+
+import org.slf4j.cal10n.LocLogger;
+
+import jsaf.Message;
+import jsaf.intf.system.IProcess;
+import jsaf.util.StringTools;
+
+/**
+ * A pool of long-lived /bin/sh processes ("workers"), which run commands on behalf of a BaseUnixSession.
+ *
+ * Each command is written to a worker's stdin as a single framed statement, which runs the command in a background
+ * sub-shell, waits for it, and then prints a marker, unique to the command, to stdout (followed by the exit code) and to
+ * stderr. The output of the command is everything that precedes the markers. A worker that is destroyed while running a
+ * command (e.g., because the command hung) is killed and replaced by a new worker on demand. When it is killed, the
+ * worker's TERM trap first kills the sub-shell and all of its descendants, so that nothing is left running.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ */
+class ShellWorkerPool {
+    static final String WORKER_COMMAND = "exec /bin/sh";
+
+    /**
+     * Sent to every worker when it is started. While a command is running, its sub-shell's PID is in jsaf_job; on TERM or
+     * HUP, the worker stops and kills that sub-shell and its descendants (found using ps), and then exits.
+     */
+    static final String WORKER_INIT = "jsaf_job=; " +
+	"jsaf_kill() { kill -STOP $1 2>/dev/null; " +
+	"for jsaf_c in `ps -e -o pid= -o ppid= | awk '$2 == '$1' { print $1 }'`; do jsaf_kill $jsaf_c; done; " +
+	"kill -9 $1 2>/dev/null; }; " +
+	"trap '[ -n \"$jsaf_job\" ] && jsaf_kill $jsaf_job; exit 143' TERM HUP\n";
+
+    /**
+     * The ASCII record separator character, which begins every marker.
+     */
+    static final byte RS = 036;
+
+    private BaseUnixSession session;
+    private LocLogger logger;
+    private int capacity, count, nextId;
+    private String nonce;
+    private long sequence;
+    private LinkedList<Worker> idle;
+    private boolean shutdown;
+
+    ShellWorkerPool(BaseUnixSession session, int capacity) {
+	this.session = session;
+	this.capacity = capacity;
+	logger = session.getLogger();
+	nonce = Long.toHexString(new Random().nextLong() & 0x7FFFFFFFFFFFFFFFL);
+	idle = new LinkedList<Worker>();
+	count = 0;
+	nextId = 0;
+	sequence = 0;
+	shutdown = false;
+    }
+
+    /**
+     * Get an idle worker, starting a new one if the pool is not yet full. Returns null if all the workers are busy.
+     */
+    synchronized Worker acquire() throws Exception {
+	while (idle.size() > 0) {
+	    Worker worker = idle.removeFirst();
+	    if (worker.p.isRunning()) {
+		return worker;
+	    } else {
+		discard(worker, "stopped");
+	    }
+	}
+	if (shutdown || count >= capacity) {
+	    return null;
+	}
+	Worker worker = new Worker(Integer.toString(nextId++), session.createWorkerProcess());
+	count++;
+	logger.debug(Message.STATUS_SHELL_WORKER_SPAWN, worker.id);
+	return worker;
+    }
+
+    /**
+     * Create a process that runs a command by itself, for use when all the workers are busy.
+     */
+    IProcess createDirectProcess(String command, String[] env, String dir) throws Exception {
+	return session.createProcess(command, env, dir);
+    }
+
+    /**
+     * Return a worker whose command has completed to the pool.
+     */
+    synchronized void release(Worker worker) {
+	if (shutdown) {
+	    discard(worker, "shutdown");
+	} else {
+	    idle.add(worker);
+	}
+    }
+
+    /**
+     * Kill a worker and remove it from the pool.
+     */
+    synchronized void discard(Worker worker, String reason) {
+	if (!worker.killed) {
+	    logger.debug(Message.STATUS_SHELL_WORKER_EXIT, worker.id, reason);
+	    worker.kill();
+	    count--;
+	}
+    }
+
+    /**
+     * Kill all the idle workers. Busy workers are killed when their commands complete.
+     */
+    synchronized void shutdown() {
+	shutdown = true;
+	while (idle.size() > 0) {
+	    discard(idle.removeFirst(), "shutdown");
+	}
+    }
+
+    /**
+     * Generate a marker that is unique to a command.
+     */
+    synchronized String nextMarker() {
+	return new StringBuffer("jsaf-").append(nonce).append("-").append(Long.toString(sequence++)).toString();
+    }
+
+    /**
+     * Find the first occurrence of the marker in buff between from and to, or return -1.
+     */
+    static int indexOf(byte[] buff, int from, int to, byte[] marker) {
+	for (int i=from; i <= to - marker.length; i++) {
+	    if (buff[i] == RS && startsWith(buff, i, to, marker)) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Return the index of the start of a partial marker at the end of the data in buff between from and to (since the rest
+     * of the marker may yet arrive), or to if there is none.
+     */
+    static int partialIndex(byte[] buff, int from, int to, byte[] marker) {
+	for (int i=Math.max(from, to - marker.length + 1); i < to; i++) {
+	    if (buff[i] == RS && startsWith(buff, i, to, marker)) {
+		return i;
+	    }
+	}
+	return to;
+    }
+
+    // Private
+
+    /**
+     * Test whether the data in buff from offset (up to end) matches the beginning of the marker.
+     */
+    private static boolean startsWith(byte[] buff, int offset, int end, byte[] marker) {
+	int len = Math.min(marker.length, end - offset);
+	for (int i=0; i < len; i++) {
+	    if (buff[offset + i] != marker[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * A worker shell. Its stdout is read directly by the ShellProcess running on it, through a buffer that belongs to the
+     * worker. Its stderr is read continuously by a daemon thread, which hands the data to the current ShellProcess.
+     */
+    class Worker implements Runnable {
+	String id;
+	IProcess p;
+	OutputStream stdin;
+	InputStream stdout, stderr;
+	byte[] buff;
+	int pos, len;
+	boolean killed;
+
+	private ShellProcess current;
+
+	Worker(String id, IProcess p) throws Exception {
+	    this.id = id;
+	    this.p = p;
+	    p.start();
+	    stdin = p.getOutputStream();
+	    stdout = p.getInputStream();
+	    stderr = p.getErrorStream();
+	    buff = new byte[8192];
+	    pos = 0;
+	    len = 0;
+	    killed = false;
+	    Thread pump = new Thread(this, "jSAF shell worker " + id);
+	    pump.setDaemon(true);
+	    pump.start();
+	    try {
+		stdin.write(WORKER_INIT.getBytes(StringTools.UTF8));
+		stdin.flush();
+	    } catch (IOException e) {
+		kill();
+		throw e;
+	    }
+	}
+
+	/**
+	 * Send a framed command to the shell.
+	 */
+	void send(ShellProcess process, String frame) throws IOException {
+	    synchronized(this) {
+		current = process;
+	    }
+	    stdin.write(frame.getBytes(StringTools.UTF8));
+	    stdin.flush();
+	}
+
+	/**
+	 * Read more stdout data into the buffer, which is grown if it is full.
+	 */
+	void fill() throws IOException {
+	    if (pos > 0) {
+		System.arraycopy(buff, pos, buff, 0, len - pos);
+		len -= pos;
+		pos = 0;
+	    }
+	    if (len == buff.length) {
+		byte[] temp = new byte[buff.length * 2];
+		System.arraycopy(buff, 0, temp, 0, len);
+		buff = temp;
+	    }
+	    int n = stdout.read(buff, len, buff.length - len);
+	    if (n == -1) {
+		throw new EOFException(Message.getMessage(Message.ERROR_EOS));
+	    }
+	    len += n;
+	}
+
+	/**
+	 * Kill the shell, which in turn kills any command that it is running.
+	 */
+	void kill() {
+	    killed = true;
+	    p.destroy();
+	    try {
+		stdin.close();
+	    } catch (IOException e) {
+	    }
+	}
+
+	// Implement Runnable
+
+	/**
+	 * Pump the stderr of the shell, splitting it at the markers of the commands.
+	 */
+	public void run() {
+	    byte[] data = new byte[4096];
+	    int offset = 0, end = 0;
+	    try {
+		int n = 0;
+		while ((n = stderr.read(data, end, data.length - end)) != -1) {
+		    end += n;
+		    ShellProcess process = null;
+		    synchronized(this) {
+			process = current;
+		    }
+		    if (process == null) {
+			offset = end = 0; // stray output between commands
+			continue;
+		    }
+		    byte[] marker = process.getErrorMarker();
+		    int index = indexOf(data, offset, end, marker);
+		    if (index == -1) {
+			int partial = partialIndex(data, offset, end, marker);
+			process.errorData(data, offset, partial - offset);
+			offset = partial;
+		    } else {
+			process.errorData(data, offset, index - offset);
+			synchronized(this) {
+			    current = null;
+			}
+			process.errorDone();
+			offset = index + marker.length;
+		    }
+		    System.arraycopy(data, offset, data, 0, end - offset);
+		    end -= offset;
+		    offset = 0;
+		    if (end == data.length) {
+			byte[] temp = new byte[data.length * 2];
+			System.arraycopy(data, 0, temp, 0, end);
+			data = temp;
+		    }
+		}
+	    } catch (IOException e) {
+	    }
+	    ShellProcess process = null;
+	    synchronized(this) {
+		process = current;
+		current = null;
+	    }
+	    if (process != null) {
+		process.errorDone();
+	    }
+	}
+    }
+}
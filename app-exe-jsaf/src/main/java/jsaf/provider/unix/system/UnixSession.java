@@ -34,6 +34,7 @@ public class UnixSession extends BaseUnixSession {
 	}
 
 	public void disconnect() {
+		stopWorkers();
 		connected = false;
 	}
 }
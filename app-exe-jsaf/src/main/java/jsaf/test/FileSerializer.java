@@ -0,0 +1,192 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import jdbm.helper.Serializer;
+
+import jsaf.intf.io.IFile;
+import jsaf.intf.unix.io.IUnixFileInfo;
+import jsaf.io.fs.AbstractFilesystem;
+import jsaf.provider.unix.system.UnixSession;
+
+/**
+ * Round-trip and throughput benchmark for the IFile serializer of the Unix filesystem, which is used by the JDBM file
+ * cache. Every file beneath a directory is serialized and deserialized, and the results are compared with the original.
+ * Records in the original format are also generated, to check that they can still be read, and to compare their size.
+ *
+ * Usage: FileSerializer dir [iterations]
+ */
+public class FileSerializer {
+    public static void main(String[] argv) throws Exception {
+	UnixSession session = new UnixSession(new File(System.getProperty("user.home")));
+	if (session.connect()) {
+	    AbstractFilesystem fs = (AbstractFilesystem)session.getFilesystem();
+	    Serializer serializer = fs.getFileSerializer(fs);
+	    int iterations = argv.length > 1 ? Integer.parseInt(argv[1]) : 10;
+
+	    List<IFile> files = new ArrayList<IFile>();
+	    LinkedList<IFile> dirs = new LinkedList<IFile>();
+	    dirs.add(fs.getFile(argv[0], IFile.Flags.READONLY));
+	    while (dirs.size() > 0) {
+		IFile dir = dirs.removeFirst();
+		try {
+		    for (IFile f : dir.listFiles()) {
+			files.add(f);
+			if (f.isDirectory() && !f.isLink()) {
+			    dirs.add(f);
+			}
+		    }
+		} catch (IOException e) {
+		}
+	    }
+
+	    long compactBytes = 0, legacyBytes = 0;
+	    int errors = 0;
+	    byte[][] compact = new byte[files.size()][];
+	    byte[][] legacy = new byte[files.size()][];
+	    for (int i=0; i < files.size(); i++) {
+		IFile f = files.get(i);
+		compact[i] = serializer.serialize(f);
+		legacy[i] = serializeLegacy(f);
+		compactBytes += compact[i].length;
+		legacyBytes += legacy[i].length;
+		if (!equals(f, (IFile)serializer.deserialize(compact[i]))) {
+		    System.out.println("Compact round-trip mismatch: " + f.getPath());
+		    errors++;
+		}
+		if (!equals(f, (IFile)serializer.deserialize(legacy[i]))) {
+		    System.out.println("Legacy round-trip mismatch: " + f.getPath());
+		    errors++;
+		}
+	    }
+	    System.out.println("Files: " + files.size() + ", errors: " + errors);
+	    System.out.println("Legacy bytes: " + legacyBytes + ", compact bytes: " + compactBytes);
+
+	    for (int n=0; n < iterations; n++) {
+		long start = System.nanoTime();
+		for (IFile f : files) {
+		    serializer.serialize(f);
+		}
+		long serialized = System.nanoTime();
+		for (byte[] record : compact) {
+		    serializer.deserialize(record);
+		}
+		long deserialized = System.nanoTime();
+		for (IFile f : files) {
+		    serializeLegacy(f);
+		}
+		long legacySerialized = System.nanoTime();
+		for (byte[] record : legacy) {
+		    serializer.deserialize(record);
+		}
+		long legacyDeserialized = System.nanoTime();
+		int count = Math.max(1, files.size());
+		System.out.println("Iteration " + n + " (ns/file): compact serialize " + (serialized - start) / count +
+				   ", deserialize " + (deserialized - serialized) / count + "; legacy serialize " +
+				   (legacySerialized - deserialized) / count + ", deserialize " +
+				   (legacyDeserialized - legacySerialized) / count);
+	    }
+	    session.disconnect();
+	}
+	session.dispose();
+	System.exit(0);
+    }
+
+    private static boolean equals(IFile a, IFile b) throws IOException {
+	IUnixFileInfo ia = (IUnixFileInfo)a.getExtended();
+	IUnixFileInfo ib = (IUnixFileInfo)b.getExtended();
+	if (!a.getPath().equals(b.getPath()) || a.isLink() != b.isLink() || a.length() != b.length() ||
+	    !String.valueOf(a.getCreateTime()).equals(String.valueOf(b.getCreateTime())) ||
+	    !String.valueOf(a.getLastModified()).equals(String.valueOf(b.getLastModified())) ||
+	    !String.valueOf(a.getAccessTime()).equals(String.valueOf(b.getAccessTime())) ||
+	    !ia.getUnixFileType().equals(ib.getUnixFileType()) || !ia.getPermissions().equals(ib.getPermissions()) ||
+	    ia.getUserId() != ib.getUserId() || ia.getGroupId() != ib.getGroupId() || ia.hasPosixAcl() != ib.hasPosixAcl()) {
+	    return false;
+	}
+	if (a.isLink() && !a.getLinkPath().equals(b.getLinkPath())) {
+	    return false;
+	}
+	String[] ka = ia.getExtendedKeys(), kb = ib.getExtendedKeys();
+	if (ka == null || kb == null) {
+	    return ka == kb;
+	}
+	Arrays.sort(ka);
+	Arrays.sort(kb);
+	if (!Arrays.equals(ka, kb)) {
+	    return false;
+	}
+	for (String key : ka) {
+	    if (!ia.getExtendedData(key).equals(ib.getExtendedData(key))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Serialize a file in the original record format.
+     */
+    private static byte[] serializeLegacy(IFile f) throws IOException {
+	ByteArrayOutputStream buff = new ByteArrayOutputStream();
+	DataOutputStream out = new DataOutputStream(buff);
+	out.writeUTF(f.getPath());
+	out.writeLong(f.getCreateTime() == null ? -1 : f.getCreateTime().getTime());
+	out.writeLong(f.getLastModified() == null ? -1 : f.getLastModified().getTime());
+	out.writeLong(f.getAccessTime() == null ? -1 : f.getAccessTime().getTime());
+	IUnixFileInfo info = (IUnixFileInfo)f.getExtended();
+	if (f.isLink()) {
+	    out.writeInt(2);
+	    String s = f.getLinkPath();
+	    out.writeUTF(s == null ? "" : s);
+	} else if (f.isDirectory()) {
+	    out.writeInt(1);
+	} else {
+	    out.writeInt(0);
+	}
+	out.writeLong(f.length());
+	String uType = info.getUnixFileType();
+	if (IUnixFileInfo.FILE_TYPE_DIR.equals(uType)) {
+	    out.writeChar(IUnixFileInfo.DIR_TYPE);
+	} else if (IUnixFileInfo.FILE_TYPE_FIFO.equals(uType)) {
+	    out.writeChar(IUnixFileInfo.FIFO_TYPE);
+	} else if (IUnixFileInfo.FILE_TYPE_LINK.equals(uType)) {
+	    out.writeChar(IUnixFileInfo.LINK_TYPE);
+	} else if (IUnixFileInfo.FILE_TYPE_BLOCK.equals(uType)) {
+	    out.writeChar(IUnixFileInfo.BLOCK_TYPE);
+	} else if (IUnixFileInfo.FILE_TYPE_CHAR.equals(uType)) {
+	    out.writeChar(IUnixFileInfo.CHAR_TYPE);
+	} else if (IUnixFileInfo.FILE_TYPE_SOCK.equals(uType)) {
+	    out.writeChar(IUnixFileInfo.SOCK_TYPE);
+	} else {
+	    out.writeChar(IUnixFileInfo.FILE_TYPE);
+	}
+	out.writeUTF(info.getPermissions());
+	out.writeInt(info.getUserId());
+	out.writeInt(info.getGroupId());
+	Boolean hasAcl = info.hasPosixAcl();
+	out.writeShort(hasAcl == null ? 2 : hasAcl.booleanValue() ? 1 : 0);
+	String[] extendedKeys = info.getExtendedKeys();
+	if (extendedKeys == null) {
+	    out.writeBoolean(false);
+	} else {
+	    out.writeBoolean(true);
+	    out.writeInt(extendedKeys.length);
+	    for (int i=0; i < extendedKeys.length; i++) {
+		out.writeUTF(extendedKeys[i]);
+		out.writeUTF(info.getExtendedData(extendedKeys[i]));
+	    }
+	}
+	out.close();
+	return buff.toByteArray();
+    }
+}
@@ -0,0 +1,334 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jsaf.intf.util.ICacheStatistics;
+
+/**
+ * A thread-safe, size-limited Map with least-recently-used eviction and optional expiration of entries.
+ *
+ * The entries are divided among a number of independently-locked segments (by key hash), so that concurrent readers and
+ * writers seldom contend for the same lock. Each segment enforces its share of the entry and weight limits, so the limits
+ * are approximate for the cache as a whole.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class BoundedCache<K, V> implements Map<K, V>, ICacheStatistics {
+    /**
+     * An interface for estimating the memory used by a cache entry.
+     *
+     * @since 1.1
+     */
+    public interface IWeigher<K, V> {
+	/**
+	 * Return the approximate number of bytes used by the entry.
+	 *
+	 * @since 1.1
+	 */
+	long weigh(K key, V value);
+    }
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private Segment[] segments;
+    private long maxAge;
+    private IWeigher<K, V> weigher;
+    private AtomicLong hits, misses, evictions;
+
+    /**
+     * Create a cache limited only by the number of entries.
+     *
+     * @since 1.1
+     */
+    public BoundedCache(int maxEntries) {
+	this(maxEntries, 0, 0, null);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxEntries the maximum number of entries, or 0 for no limit
+     * @param maxAge     the number of milliseconds after which an entry expires, or 0 for no expiration
+     * @param maxWeight  the maximum total weight of the entries, or 0 for no limit
+     * @param weigher    the entry weigher (required if maxWeight is not 0)
+     *
+     * @since 1.1
+     */
+    public BoundedCache(int maxEntries, long maxAge, long maxWeight, IWeigher<K, V> weigher)
+		throws IllegalArgumentException {
+
+	if (maxWeight > 0 && weigher == null) {
+	    throw new IllegalArgumentException("weigher");
+	}
+	this.maxAge = maxAge;
+	this.weigher = maxWeight > 0 ? weigher : null;
+	hits = new AtomicLong(0);
+	misses = new AtomicLong(0);
+	evictions = new AtomicLong(0);
+
+	int n = MAX_SEGMENTS;
+	if (maxEntries > 0) {
+	    n = Math.max(1, Math.min(MAX_SEGMENTS, maxEntries / MAX_SEGMENTS));
+	}
+	segments = newSegments(n);
+	for (int i=0; i < n; i++) {
+	    segments[i] = new Segment(maxEntries > 0 ? Math.max(1, maxEntries / n) : 0, maxWeight > 0 ? maxWeight / n : 0);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return "BoundedCache: size=" + size() + ", hits=" + hits.get() + ", misses=" + misses.get() +
+		", evictions=" + evictions.get();
+    }
+
+    // Implement ICacheStatistics
+
+    public long getHits() {
+	return hits.get();
+    }
+
+    public long getMisses() {
+	return misses.get();
+    }
+
+    public long getEvictions() {
+	return evictions.get();
+    }
+
+    public int size() {
+	int size = 0;
+	for (Segment segment : segments) {
+	    size += segment.size();
+	}
+	return size;
+    }
+
+    // Implement Map
+
+    public boolean isEmpty() {
+	return size() == 0;
+    }
+
+    public boolean containsKey(Object key) {
+	return segmentFor(key).get(key) != null;
+    }
+
+    public boolean containsValue(Object value) {
+	return values().contains(value);
+    }
+
+    public V get(Object key) {
+	V value = segmentFor(key).get(key);
+	if (value == null) {
+	    misses.incrementAndGet();
+	} else {
+	    hits.incrementAndGet();
+	}
+	return value;
+    }
+
+    public V put(K key, V value) {
+	if (key == null || value == null) {
+	    throw new NullPointerException();
+	}
+	return segmentFor(key).put(key, value);
+    }
+
+    public void putAll(Map<? extends K, ? extends V> m) {
+	for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+	    put(entry.getKey(), entry.getValue());
+	}
+    }
+
+    public V remove(Object key) {
+	return segmentFor(key).remove(key);
+    }
+
+    public void clear() {
+	for (Segment segment : segments) {
+	    segment.clear();
+	}
+    }
+
+    /**
+     * Returns a snapshot of the live keys.
+     */
+    public Set<K> keySet() {
+	Set<K> keys = new HashSet<K>();
+	for (Segment segment : segments) {
+	    segment.snapshot(keys, null);
+	}
+	return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Returns a snapshot of the live values.
+     */
+    public Collection<V> values() {
+	List<V> values = new ArrayList<V>();
+	for (Segment segment : segments) {
+	    segment.snapshot(null, values);
+	}
+	return Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Returns a snapshot of the live entries.
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+	Map<K, V> map = new HashMap<K, V>();
+	for (Segment segment : segments) {
+	    segment.snapshot(map);
+	}
+	return Collections.unmodifiableMap(map).entrySet();
+    }
+
+    // Private
+
+    private Segment segmentFor(Object key) {
+	int h = key.hashCode();
+	h ^= (h >>> 20) ^ (h >>> 12);
+	h ^= (h >>> 7) ^ (h >>> 4);
+	return segments[(h & 0x7FFFFFFF) % segments.length];
+    }
+
+    /**
+     * Segment is an inner class of a generic class, so an array of them can only be created raw.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Segment[] newSegments(int n) {
+	return new BoundedCache.Segment[n];
+    }
+
+    static class Node<V> {
+	V value;
+	long created;
+	long weight;
+
+	Node(V value, long created, long weight) {
+	    this.value = value;
+	    this.created = created;
+	    this.weight = weight;
+	}
+    }
+
+    /**
+     * An access-ordered map, whose eldest entry is the least-recently-used.
+     */
+    class Segment {
+	private LinkedHashMap<Object, Node<V>> map;
+	private int maxEntries;
+	private long maxWeight, weight;
+
+	Segment(int maxEntries, long maxWeight) {
+	    this.maxEntries = maxEntries;
+	    this.maxWeight = maxWeight;
+	    map = new LinkedHashMap<Object, Node<V>>(16, 0.75f, true);
+	    weight = 0;
+	}
+
+	synchronized int size() {
+	    return map.size();
+	}
+
+	synchronized V get(Object key) {
+	    Node<V> node = map.get(key);
+	    if (node == null) {
+		return null;
+	    } else if (expired(node, System.currentTimeMillis())) {
+		removeNode(key);
+		evictions.incrementAndGet();
+		return null;
+	    } else {
+		return node.value;
+	    }
+	}
+
+	synchronized V put(K key, V value) {
+	    long w = weigher == null ? 0 : weigher.weigh(key, value);
+	    Node<V> old = map.put(key, new Node<V>(value, System.currentTimeMillis(), w));
+	    weight += w;
+	    if (old != null) {
+		weight -= old.weight;
+	    }
+	    Iterator<Node<V>> iter = map.values().iterator();
+	    while (iter.hasNext() && ((maxEntries > 0 && map.size() > maxEntries) || (maxWeight > 0 && weight > maxWeight))) {
+		if (map.size() == 1) {
+		    break; // never evict the entry just added
+		}
+		Node<V> eldest = iter.next();
+		iter.remove();
+		weight -= eldest.weight;
+		evictions.incrementAndGet();
+	    }
+	    return old == null ? null : old.value;
+	}
+
+	synchronized V remove(Object key) {
+	    Node<V> node = removeNode(key);
+	    return node == null ? null : node.value;
+	}
+
+	synchronized void clear() {
+	    map.clear();
+	    weight = 0;
+	}
+
+	synchronized void snapshot(Set<K> keys, List<V> values) {
+	    long now = System.currentTimeMillis();
+	    for (Map.Entry<Object, Node<V>> entry : map.entrySet()) {
+		if (!expired(entry.getValue(), now)) {
+		    if (keys != null) {
+			@SuppressWarnings("unchecked")
+			K key = (K)entry.getKey();
+			keys.add(key);
+		    }
+		    if (values != null) {
+			values.add(entry.getValue().value);
+		    }
+		}
+	    }
+	}
+
+	synchronized void snapshot(Map<K, V> m) {
+	    long now = System.currentTimeMillis();
+	    for (Map.Entry<Object, Node<V>> entry : map.entrySet()) {
+		if (!expired(entry.getValue(), now)) {
+		    @SuppressWarnings("unchecked")
+		    K key = (K)entry.getKey();
+		    m.put(key, entry.getValue().value);
+		}
+	    }
+	}
+
+	// Private
+
+	private Node<V> removeNode(Object key) {
+	    Node<V> node = map.remove(key);
+	    if (node != null) {
+		weight -= node.weight;
+	    }
+	    return node;
+	}
+
+	private boolean expired(Node<V> node, long now) {
+	    return maxAge > 0 && (now - node.created) > maxAge;
+	}
+    }
+}
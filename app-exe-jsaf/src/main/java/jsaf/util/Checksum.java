@@ -11,6 +11,8 @@ import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * Simple utility for computing checksums.
@@ -78,24 +80,45 @@ public class Checksum {
      * @since 1.0
      */
     public static String getChecksum(InputStream in, Algorithm algorithm) throws IOException {
-        byte[] buff = createChecksum(in, algorithm);
-        String str = "";
-        for (int i=0; i < buff.length; i++) {
-          str += Integer.toString((buff[i]&0xff) + 0x100, 16).substring(1);
-        }
-        return str;
+        return toHex(createChecksum(in, algorithm));
     }
 
     /**
      * @since 1.0
      */
     public static String getChecksum(byte[] buff, Algorithm algorithm) {
-        byte[] cs = createChecksum(buff, algorithm);
-        String str = "";
-        for (int i=0; i < cs.length; i++) {
-          str += Integer.toString((cs[i]&0xff) + 0x100, 16).substring(1);
-        }
-        return str;
+        return toHex(createChecksum(buff, algorithm));
+    }
+
+    /**
+     * Compute several checksums of a file in a single pass.
+     *
+     * @return the lower-case hex checksums, indexed by algorithm
+     *
+     * @since 1.1
+     */
+    public static Map<Algorithm, String> getChecksums(File f, Algorithm... algorithms) throws IOException {
+	MultiDigest digest = new MultiDigest(algorithms);
+	digest.update(f);
+	Map<Algorithm, String> result = new EnumMap<Algorithm, String>(Algorithm.class);
+	for (Map.Entry<Algorithm, byte[]> entry : digest.digest().entrySet()) {
+	    result.put(entry.getKey(), toHex(entry.getValue()));
+	}
+	return result;
+    }
+
+    /**
+     * Encode a checksum as a lower-case hex string.
+     *
+     * @since 1.1
+     */
+    public static String toHex(byte[] buff) {
+	char[] chars = new char[buff.length * 2];
+	for (int i=0, j=0; i < buff.length; i++) {
+	    chars[j++] = HEX[(buff[i] >> 4) & 0x0F];
+	    chars[j++] = HEX[buff[i] & 0x0F];
+	}
+	return new String(chars);
     }
 
     /**
@@ -112,7 +135,7 @@ public class Checksum {
      */
     public static byte[] createChecksum(InputStream in, Algorithm algorithm) throws IOException {
 	MessageDigest digest = getDigest(algorithm);
-        byte[] buff = new byte[512];
+        byte[] buff = new byte[8192];
         int len = 0;
         while ((len = in.read(buff)) > 0) {
        	    digest.update(buff, 0, len);
@@ -121,7 +144,9 @@ public class Checksum {
         return digest.digest();
     }
 
-    // Private
+    // Internal
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
     /**
      * Use the BouncyCastle JCE implementation for algorithms not supplied by the default JCE (e.g., SHA-224).
@@ -129,7 +154,7 @@ public class Checksum {
     private static final String ALT_PROVIDER_NAME = "org.bouncycastle.jce.provider.BouncyCastleProvider";
     private static Provider ALT_PROVIDER;
 
-    private static MessageDigest getDigest(Algorithm algorithm) {
+    static MessageDigest getDigest(Algorithm algorithm) {
         MessageDigest digest = null;
 	try {
             digest = MessageDigest.getInstance(algorithm.value());
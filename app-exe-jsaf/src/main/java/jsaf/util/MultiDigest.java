@@ -0,0 +1,137 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Computes several checksums of the same data in a single pass. Each chunk of the data is copied (at most) once into a
+ * shared array, from which all the digests are updated.
+ *
+ * A MultiDigest is not thread-safe, but it can be re-used: calling digest() resets it.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class MultiDigest {
+    /**
+     * The maximum size of the buffers used to read files and streams.
+     */
+    public static final int BUFFER_SIZE = 256 * 1024;
+
+    private Checksum.Algorithm[] algorithms;
+    private MessageDigest[] digests;
+    private byte[] chunk;
+    private ByteBuffer direct;
+
+    public MultiDigest(Checksum.Algorithm... algorithms) throws IllegalArgumentException {
+	if (algorithms.length == 0) {
+	    throw new IllegalArgumentException();
+	}
+	this.algorithms = algorithms;
+	digests = new MessageDigest[algorithms.length];
+	for (int i=0; i < algorithms.length; i++) {
+	    digests[i] = Checksum.getDigest(algorithms[i]);
+	}
+    }
+
+    public Checksum.Algorithm[] getAlgorithms() {
+	return algorithms;
+    }
+
+    public void update(byte[] buff, int offset, int len) {
+	for (MessageDigest digest : digests) {
+	    digest.update(buff, offset, len);
+	}
+    }
+
+    /**
+     * Update the digests with the remaining contents of the buffer (which may be a direct or memory-mapped buffer). The
+     * position of the buffer argument is not modified.
+     */
+    public void update(ByteBuffer buff) {
+	if (buff.hasArray()) {
+	    update(buff.array(), buff.arrayOffset() + buff.position(), buff.remaining());
+	} else {
+	    ByteBuffer src = buff.duplicate();
+	    byte[] b = getChunk(src.remaining());
+	    while (src.hasRemaining()) {
+		int len = Math.min(b.length, src.remaining());
+		src.get(b, 0, len);
+		update(b, 0, len);
+	    }
+	}
+    }
+
+    /**
+     * Update the digests with the contents of the stream, which is read to the end (but not closed).
+     */
+    public void update(InputStream in) throws IOException {
+	byte[] b = getChunk(BUFFER_SIZE);
+	int len = 0;
+	while ((len = in.read(b)) != -1) {
+	    update(b, 0, len);
+	}
+    }
+
+    /**
+     * Update the digests with the contents of a local file, which is read through a direct buffer.
+     */
+    public void update(File f) throws IOException {
+	FileInputStream in = new FileInputStream(f);
+	try {
+	    FileChannel channel = in.getChannel();
+	    int size = (int)Math.min(BUFFER_SIZE, Math.max(channel.size(), MIN_BUFFER_SIZE));
+	    if (direct == null || direct.capacity() < size) {
+		direct = ByteBuffer.allocateDirect(size);
+	    }
+	    direct.clear();
+	    while (channel.read(direct) != -1) {
+		direct.flip();
+		update(direct);
+		direct.clear();
+	    }
+	} finally {
+	    try {
+		in.close();
+	    } catch (IOException e) {
+	    }
+	}
+    }
+
+    /**
+     * Complete the digests and reset them.
+     */
+    public Map<Checksum.Algorithm, byte[]> digest() {
+	Map<Checksum.Algorithm, byte[]> result = new EnumMap<Checksum.Algorithm, byte[]>(Checksum.Algorithm.class);
+	for (int i=0; i < algorithms.length; i++) {
+	    result.put(algorithms[i], digests[i].digest());
+	}
+	return result;
+    }
+
+    // Private
+
+    private static final int MIN_BUFFER_SIZE = 8192;
+
+    /**
+     * Get the shared array, large enough for the specified amount of data (up to BUFFER_SIZE).
+     */
+    private byte[] getChunk(int size) {
+	size = Math.min(BUFFER_SIZE, Math.max(size, MIN_BUFFER_SIZE));
+	if (chunk == null || chunk.length < size) {
+	    chunk = new byte[size];
+	}
+	return chunk;
+    }
+}
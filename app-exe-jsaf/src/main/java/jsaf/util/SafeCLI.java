@@ -4,6 +4,8 @@
 package jsaf.util;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
@@ -14,12 +16,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.TimerTask;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 import jsaf.JSAFSystem;
@@ -33,6 +40,7 @@ import jsaf.intf.system.ISession;
 import jsaf.intf.unix.system.IUnixSession;
 import jsaf.io.PerishableReader;
 import jsaf.io.StreamTool;
+import jsaf.provider.AbstractSession;
 import jsaf.provider.SessionException;
 
 /**
@@ -207,11 +215,7 @@ public class SafeCLI {
 	//
 	// Modify the command to redirect output to a temp file (compressed)
 	//
-	String unique = null;
-	synchronized(session) {
-	    unique = Long.toString(System.currentTimeMillis());
-	    Thread.sleep(1);
-	}
+	String unique = nextTempId();
 	String tempPath = session.getTempDir();
 	IFilesystem fs = session.getFilesystem();
 	if (!tempPath.endsWith(fs.getDelimiter())) {
@@ -225,12 +229,11 @@ public class SafeCLI {
 	// Execute the command, and monitor the size of the output file
 	//
 	FileMonitor mon = new FileMonitor(fs, tempPath);
-	JSAFSystem.getTimer().schedule(mon, 15000, 15000);
+	ScheduledFuture<?> monitor = JSAFSystem.getScheduler().schedule(mon, 15000, 15000);
 	try {
 	    exec(cmd, null, null, session, session.getTimeout(ISession.Timeout.XL), new DevNull(), new ErrorLogger(session));
 	} finally {
-	    mon.cancel();
-	    JSAFSystem.getTimer().purge();
+	    monitor.cancel(false);
 	}
 
 	//
@@ -258,6 +261,26 @@ public class SafeCLI {
 	}
     }
 
+    /**
+     * Run a command and iterate over the lines of its output as they are produced, rather than waiting for the command to
+     * finish as manyLines does. The command runs on a background thread, which buffers output lines until they are
+     * consumed.  Buffered lines are held in memory up to STREAM_MAX_MEMORY bytes, after which they are spilled to a local
+     * temp file, so the process output is never left unread (which would trip the read timeout) no matter how slowly the
+     * iterator is consumed.
+     *
+     * If the command hangs and is retried, lines that were already buffered are not repeated. The caller should close the
+     * LineStream if it abandons the iteration before the end, and should check getError() after reaching the end.
+     *
+     * @since 1.1
+     */
+    public static final LineStream streamLines(String cmd, String[] env, ISession session, long readTimeout)
+		throws Exception {
+
+	LineStream stream = new LineStream(session, STREAM_MAX_MEMORY);
+	new StreamThread(new SafeCLI(cmd, env, null, session, readTimeout), stream).start();
+	return stream;
+    }
+
     /**
      * Run a command and get the resulting ExecData, using the specified environment.
      *
@@ -358,8 +381,209 @@ public class SafeCLI {
 	}
     }
 
+    /**
+     * The maximum number of bytes (approximately) of buffered output that a LineStream holds in memory.
+     *
+     * @since 1.1
+     */
+    public static final long STREAM_MAX_MEMORY = 4194304L;
+
+    /**
+     * An Iterator over the output lines of a command, which is running in the background.
+     *
+     * @since 1.1
+     */
+    public static class LineStream implements Iterator<String>, Closeable {
+	private ISession session;
+	private LinkedList<String> memory;
+	private long memoryBytes, maxMemory;
+	private File spillFile;
+	private Writer spillOut;
+	private BufferedReader spillIn;
+	private long spilled, unspilled;
+	private boolean dirty, done, closed;
+	private Exception error;
+	private String next;
+
+	LineStream(ISession session, long maxMemory) {
+	    this.session = session;
+	    this.maxMemory = maxMemory;
+	    memory = new LinkedList<String>();
+	    memoryBytes = 0;
+	    spilled = 0;
+	    unspilled = 0;
+	    dirty = false;
+	    done = false;
+	    closed = false;
+	}
+
+	/**
+	 * If the command failed, get the cause. This should be checked once hasNext() has returned false.
+	 *
+	 * @since 1.1
+	 */
+	public synchronized Exception getError() {
+	    return error;
+	}
+
+	// Implement Iterator<String>
+
+	public synchronized boolean hasNext() {
+	    if (next == null) {
+		try {
+		    while (next == null && !closed) {
+			if (memory.size() > 0) {
+			    next = memory.removeFirst();
+			    memoryBytes -= weigh(next);
+			} else if (unspilled < spilled) {
+			    if (dirty) {
+				spillOut.flush();
+				dirty = false;
+			    }
+			    next = spillIn.readLine();
+			    unspilled++;
+			} else if (done) {
+			    break;
+			} else {
+			    wait();
+			}
+		    }
+		} catch (InterruptedException e) {
+		    error = e;
+		} catch (IOException e) {
+		    error = e;
+		}
+		if (next == null) {
+		    if (done) {
+			cleanup();
+		    } else {
+			close(); // interrupted, so stop the command
+		    }
+		}
+	    }
+	    return next != null;
+	}
+
+	public synchronized String next() throws NoSuchElementException {
+	    if (hasNext()) {
+		String temp = next;
+		next = null;
+		return temp;
+	    } else {
+		throw new NoSuchElementException();
+	    }
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+
+	// Implement Closeable
+
+	/**
+	 * Stop the command (if it is still running) and discard any unread output.
+	 */
+	public synchronized void close() {
+	    if (!closed) {
+		closed = true;
+		next = null;
+		memory.clear();
+		cleanup();
+		notifyAll();
+	    }
+	}
+
+	// Internal
+
+	/**
+	 * Add a line of command output. Throws a CancelledException if the stream has been closed.
+	 */
+	synchronized void add(String line) throws IOException {
+	    if (closed) {
+		throw new CancelledException();
+	    }
+	    long weight = weigh(line);
+	    if (spillOut == null && memoryBytes + weight <= maxMemory) {
+		memory.add(line);
+		memoryBytes += weight;
+	    } else {
+		//
+		// Once spilling starts, all subsequent lines go to the spill file, so that they are read back in order.
+		//
+		if (spillOut == null) {
+		    File tempDir = session.getWorkspace() == null ? new File(System.getProperty("user.home")) : session.getWorkspace();
+		    spillFile = File.createTempFile("stream", null, tempDir);
+		    spillOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), StringTools.UTF8));
+		    spillIn = new BufferedReader(new InputStreamReader(new FileInputStream(spillFile), StringTools.UTF8));
+		}
+		spillOut.write(line);
+		spillOut.write('\n');
+		spilled++;
+		dirty = true;
+	    }
+	    notifyAll();
+	}
+
+	/**
+	 * Signal that the command has finished, with or without an error.
+	 */
+	synchronized void finish(Exception error) {
+	    if (error != null && !(error instanceof CancelledException)) {
+		this.error = error;
+	    }
+	    done = true;
+	    notifyAll();
+	}
+
+	// Private
+
+	private long weigh(String line) {
+	    return 40 + 2 * line.length();
+	}
+
+	private void cleanup() {
+	    if (spillFile != null) {
+		try {
+		    spillOut.close();
+		} catch (IOException e) {
+		}
+		try {
+		    spillIn.close();
+		} catch (IOException e) {
+		}
+		if (!spillFile.delete()) {
+		    spillFile.deleteOnExit();
+		}
+		spillFile = null;
+		spillOut = null;
+		spillIn = null;
+		unspilled = spilled;
+	    }
+	}
+    }
+
     // Private
 
+    /**
+     * Temp output names are made unique by a nonce, chosen once per JVM, combined with a counter. The nonce includes the
+     * JVM start time, so names are not reused by later JVMs sharing the same temp directory, and a random component, so
+     * they do not collide with those of other JVMs started at the same moment.
+     */
+    private static final String TEMP_NONCE;
+    static {
+	StringBuffer sb = new StringBuffer(Long.toString(System.currentTimeMillis(), 36));
+	sb.append("-").append(Integer.toString(new Random().nextInt() & 0x7FFFFFFF, 36));
+	TEMP_NONCE = sb.toString();
+    }
+    private static final AtomicLong TEMP_COUNTER = new AtomicLong(0);
+
+    /**
+     * Generate an ID for a temp output file, which is unique across all sessions and JVMs.
+     */
+    private static String nextTempId() {
+	return new StringBuffer(TEMP_NONCE).append(".").append(Long.toString(TEMP_COUNTER.incrementAndGet(), 36)).toString();
+    }
+
     private String cmd, dir;
     private String[] env;
     private ISession session;
@@ -387,7 +611,11 @@ public class SafeCLI {
 	    IProcess p = null;
 	    PerishableReader reader = null;
 	    try {
-		p = session.createProcess(cmd, env, dir);
+		if (session instanceof AbstractSession) {
+		    p = ((AbstractSession)session).createCommandProcess(cmd, env, dir);
+		} else {
+		    p = session.createProcess(cmd, env, dir);
+		}
 		p.start();
 		reader = PerishableReader.newInstance(p.getInputStream(), readTimeout);
 		reader.setLogger(session.getLogger());
@@ -471,6 +699,66 @@ public class SafeCLI {
 	}
     }
 
+    /**
+     * Runs a command in the background, feeding its output lines into a LineStream.
+     */
+    static class StreamThread extends Thread implements IReaderGobbler {
+	private SafeCLI cli;
+	private LineStream stream;
+	private long count;
+
+	StreamThread(SafeCLI cli, LineStream stream) {
+	    super("jSAF stream: " + cli.cmd);
+	    setDaemon(true);
+	    this.cli = cli;
+	    this.stream = stream;
+	    count = 0;
+	}
+
+	// Implement Runnable
+
+	@Override
+	public void run() {
+	    Exception error = null;
+	    try {
+		cli.exec(this, new ErrorLogger(cli.session));
+	    } catch (Exception e) {
+		error = e;
+	    } finally {
+		stream.finish(error);
+	    }
+	}
+
+	// Implement IReaderGobbler
+
+	public void gobble(IReader reader) throws IOException {
+	    //
+	    // If the command is being retried, skip the lines that have already been delivered.
+	    //
+	    long skip = count;
+	    String line = null;
+	    while((line = reader.readLine(StringTools.UTF8)) != null) {
+		if (skip > 0) {
+		    skip--;
+		} else {
+		    stream.add(line);
+		    count++;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Thrown by a StreamThread to stop the command when its LineStream has been closed.
+     */
+    static class CancelledException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	CancelledException() {
+	    super();
+	}
+    }
+
     class GobblerThread implements Runnable {
 	Thread thread;
 	IReader reader;
@@ -529,7 +817,7 @@ public class SafeCLI {
 	}
     }
 
-    static class FileMonitor extends TimerTask {
+    static class FileMonitor implements Runnable {
 	private IFilesystem fs;
 	private String path;
 
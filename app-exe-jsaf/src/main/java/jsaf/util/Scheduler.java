@@ -0,0 +1,205 @@
+// Copyright (C) 2011 jOVAL.org.  All rights reserved.
+// This software is licensed under the LGPL 3.0 license available at http://www.gnu.org/licenses/lgpl.txt
+
+package jsaf.util;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jsaf.intf.util.ISchedulerStatistics;
+
+/**
+ * A scheduler for short, timed tasks (like timeouts and progress monitors), backed by a pool of daemon threads.
+ *
+ * Unlike a java.util.Timer, a cancelled task is removed from the queue immediately (in logarithmic time), so there is no
+ * need to purge the queue, and one slow task does not delay all the others.
+ *
+ * @author David A. Solin
+ * @version %I% %G%
+ * @since 1.1
+ */
+public class Scheduler implements ISchedulerStatistics {
+    private ScheduledThreadPoolExecutor executor;
+    private AtomicLong cancelled, late, maxLateness;
+
+    /**
+     * Create a scheduler.
+     *
+     * @param name    the name prefix for the scheduler's threads
+     * @param threads the number of threads in the pool
+     *
+     * @since 1.1
+     */
+    public Scheduler(String name, int threads) throws IllegalArgumentException {
+	if (threads < 1) {
+	    throw new IllegalArgumentException(Integer.toString(threads));
+	}
+	executor = new ScheduledThreadPoolExecutor(threads, new DaemonThreadFactory(name));
+	executor.setRemoveOnCancelPolicy(true);
+	executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+	executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	cancelled = new AtomicLong(0);
+	late = new AtomicLong(0);
+	maxLateness = new AtomicLong(0);
+    }
+
+    /**
+     * Schedule a task to run once, after the specified delay.
+     *
+     * @param delay the delay in milliseconds
+     *
+     * @return a ScheduledFuture that can be used to cancel the task
+     *
+     * @since 1.1
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+	Task t = new Task(task, delay, 0);
+	t.future = executor.schedule(t, delay, TimeUnit.MILLISECONDS);
+	return t;
+    }
+
+    /**
+     * Schedule a task to run repeatedly, beginning after the specified delay, with the specified period between the end of
+     * one execution and the start of the next (i.e., with the same fixed-delay semantics as java.util.Timer.schedule).
+     *
+     * @param delay  the delay before the first execution, in milliseconds
+     * @param period the delay between executions, in milliseconds
+     *
+     * @return a ScheduledFuture that can be used to cancel the task
+     *
+     * @since 1.1
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay, long period) {
+	Task t = new Task(task, delay, period);
+	t.future = executor.scheduleWithFixedDelay(t, delay, period, TimeUnit.MILLISECONDS);
+	return t;
+    }
+
+    /**
+     * Cancel all the pending tasks, and stop the scheduler's threads.
+     *
+     * @since 1.1
+     */
+    public void shutdown() {
+	executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+	return "Scheduler: queue=" + getQueueDepth() + ", cancelled=" + cancelled.get() + ", late=" + late.get() +
+		", maxLateness=" + maxLateness.get() + "ms";
+    }
+
+    // Implement ISchedulerStatistics
+
+    public int getQueueDepth() {
+	return executor.getQueue().size();
+    }
+
+    public long getCancelledTasks() {
+	return cancelled.get();
+    }
+
+    public long getLateFirings() {
+	return late.get();
+    }
+
+    public long getMaxLateness() {
+	return maxLateness.get();
+    }
+
+    // Private
+
+    /**
+     * Wraps a scheduled task in order to measure how late each execution begins, and to count cancellations. The
+     * wrapper is never itself queued, so cancelling it still removes the underlying task from the queue efficiently.
+     */
+    class Task implements Runnable, ScheduledFuture<Object> {
+	private Runnable task;
+	private long period;
+	private volatile long due;
+	ScheduledFuture<?> future;
+
+	Task(Runnable task, long delay, long period) {
+	    this.task = task;
+	    this.period = period;
+	    due = System.currentTimeMillis() + delay;
+	}
+
+	// Implement Runnable
+
+	public void run() {
+	    long lateness = System.currentTimeMillis() - due;
+	    if (lateness > LATE_THRESHOLD) {
+		late.incrementAndGet();
+	    }
+	    long max = maxLateness.get();
+	    while (lateness > max && !maxLateness.compareAndSet(max, lateness)) {
+		max = maxLateness.get();
+	    }
+	    try {
+		task.run();
+	    } finally {
+		due = System.currentTimeMillis() + period;
+	    }
+	}
+
+	// Implement ScheduledFuture
+
+	public boolean cancel(boolean mayInterruptIfRunning) {
+	    if (future.cancel(mayInterruptIfRunning)) {
+		cancelled.incrementAndGet();
+		return true;
+	    } else {
+		return false;
+	    }
+	}
+
+	public boolean isCancelled() {
+	    return future.isCancelled();
+	}
+
+	public boolean isDone() {
+	    return future.isDone();
+	}
+
+	public Object get() throws InterruptedException, ExecutionException {
+	    return future.get();
+	}
+
+	public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+	    return future.get(timeout, unit);
+	}
+
+	public long getDelay(TimeUnit unit) {
+	    return future.getDelay(unit);
+	}
+
+	public int compareTo(Delayed other) {
+	    return future.compareTo(other);
+	}
+    }
+
+    static class DaemonThreadFactory implements ThreadFactory {
+	private String name;
+	private AtomicInteger counter;
+
+	DaemonThreadFactory(String name) {
+	    this.name = name;
+	    counter = new AtomicInteger(0);
+	}
+
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, name + " " + counter.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    }
+}